@@ -0,0 +1,82 @@
+package info.examples.batey.async.benchmarks;
+
+import info.examples.batey.async.thirdparty.PermissionDictionary;
+import info.examples.batey.async.thirdparty.Permissions;
+import info.examples.batey.async.thirdparty.PermissionsService;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading permissions out of the off-heap table with the service answering
+ * straight away: the whole Permissions, which users with the same
+ * permissions share, and a single bit read in place.
+ * <p>
+ * Neither should allocate. The gc profiler reports it and
+ * {@link AllocationCheck} fails the run if they do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dthirdparty.delay=0")
+public class PermissionLookups {
+
+    private PermissionsService permissions;
+    private int sports;
+
+    @Setup
+    public void setup() {
+        permissions = PermissionsService.permissionsService();
+        sports = PermissionDictionary.ordinal("SPORTS");
+    }
+
+    @Benchmark
+    public Permissions permissions(AllocationCheck check) {
+        check.calls++;
+        return permissions.permissions(1);
+    }
+
+    @Benchmark
+    public boolean hasPermission(AllocationCheck check) {
+        check.calls++;
+        return permissions.hasPermission(1, sports);
+    }
+
+    /**
+     * Measures what the benchmark thread allocates over each iteration,
+     * failing if it is more than a few bytes a call. Only HotSpot can
+     * report per thread allocation; elsewhere the check is skipped.
+     */
+    @State(Scope.Thread)
+    public static class AllocationCheck {
+        private static final long MAX_BYTES_PER_CALL = 8;
+
+        private final java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        private long allocatedBefore;
+        long calls;
+
+        @Setup(Level.Iteration)
+        public void start() {
+            calls = 0;
+            allocatedBefore = allocated();
+        }
+
+        @TearDown(Level.Iteration)
+        public void check() {
+            long allocated = allocated() - allocatedBefore;
+            if (allocatedBefore >= 0 && calls > 0 && allocated / calls > MAX_BYTES_PER_CALL) {
+                throw new IllegalStateException(allocated / calls + " bytes allocated per call, expected none");
+            }
+        }
+
+        private long allocated() {
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+            return -1;
+        }
+    }
+}
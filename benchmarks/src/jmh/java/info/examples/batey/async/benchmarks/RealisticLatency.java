@@ -0,0 +1,11 @@
+package info.examples.batey.async.benchmarks;
+
+import org.openjdk.jmh.annotations.Fork;
+
+/**
+ * Services take 5ms each, about a round trip to a service in the same data
+ * centre. The talk's 500ms would leave JMH with too few samples.
+ */
+@Fork(value = 1, jvmArgsAppend = "-Dthirdparty.delay=5")
+public class RealisticLatency extends WatchChannelBenchmark {
+}
@@ -0,0 +1,138 @@
+package info.examples.batey.async.benchmarks;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import info.examples.batey.async.Result;
+import info.examples.batey.async.fused.BooleanCallback;
+import info.examples.batey.async.fused.WatchChannelChecker;
+import info.examples.batey.async.thirdparty.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The watch channel scenario from the standalone tests, once per style of
+ * composing it: can chbatey (user, then permissions) watch SkySportsOne
+ * (channel, independent of the other two)?
+ * <p>
+ * Each invocation runs the whole scenario and waits for the answer, so
+ * SampleTime gives the latency distribution of one request and Throughput
+ * how many one caller can push through. Run with the gc profiler for
+ * allocation per request.
+ * <p>
+ * Subclasses pick the simulated latency of the services.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public abstract class WatchChannelBenchmark {
+
+    private static final String USER = "chbatey";
+    private static final String PERMISSION = "SPORTS";
+    private static final String CHANNEL = "SkySportsOne";
+
+    private UserService users;
+    private PermissionsService permissions;
+    private ChannelService channels;
+    private WatchChannelChecker checker;
+
+    @Setup
+    public void setup() {
+        users = UserService.userService();
+        permissions = PermissionsService.permissionsService();
+        channels = ChannelService.channelService();
+        checker = WatchChannelChecker.watchChannelChecker(users, permissions, channels);
+    }
+
+    @Benchmark
+    public boolean synchronous() {
+        User user = users.lookupUser(USER);
+        Permissions p = permissions.permissions(user.getUserId());
+        Channel c = channels.lookupChannel(CHANNEL);
+        return c != null && p.hasPermission(PERMISSION);
+    }
+
+    @Benchmark
+    public boolean vanillaFutures() throws Exception {
+        Future<Channel> fChannel = channels.lookupChannelAsync(CHANNEL);
+        User user = users.lookupUserAsync(USER).get();
+        Permissions p = permissions.permissionsAsync(user.getUserId()).get();
+        Channel c = fChannel.get();
+        return c != null && p.hasPermission(PERMISSION);
+    }
+
+    @Benchmark
+    public boolean listenableFutures() throws Exception {
+        ListenableFuture<Channel> lChannel = channels.lookupChannelListenable(CHANNEL);
+        ListenableFuture<Permissions> lPermissions = Futures.transformAsync(users.lookupUserListenable(USER),
+                user -> permissions.permissionsListenable(user.getUserId()));
+        ListenableFuture<Result> lResult = Futures.transformAsync(lChannel, c ->
+                Futures.transform(lPermissions, (com.google.common.base.Function<Permissions, Result>) p ->
+                        new Result(c, p)));
+        Result result = lResult.get();
+        return result.getChannel() != null && result.getPermissions().hasPermission(PERMISSION);
+    }
+
+    @Benchmark
+    public boolean completableFutures() throws Exception {
+        CompletableFuture<Permissions> cPermissions = users.lookupUserCompletable(USER)
+                .thenCompose(user -> permissions.permissionsCompletable(user.getUserId()));
+        CompletableFuture<Channel> cChannel = channels.lookupChannelCompletable(CHANNEL);
+        Result result = cPermissions.thenCombine(cChannel, (p, c) -> new Result(c, p)).get();
+        return result.getChannel() != null && result.getPermissions().hasPermission(PERMISSION);
+    }
+
+    /**
+     * The fused pipeline, to compare with completableFutures under the gc
+     * profiler: same lookups, no futures, no Result.
+     */
+    @Benchmark
+    public boolean fusedCallbacks(Answer answer) throws Exception {
+        checker.canWatch(USER, PERMISSION, CHANNEL, answer.reset());
+        return answer.await();
+    }
+
+    /**
+     * Waits for a fused check by parking rather than on a future so the
+     * waiting doesn't add to the garbage being measured. One per benchmark
+     * thread.
+     */
+    @State(Scope.Thread)
+    public static class Answer implements BooleanCallback {
+        private Thread waiter;
+        private boolean result;
+        private Throwable error;
+        private volatile boolean done;
+
+        Answer reset() {
+            waiter = Thread.currentThread();
+            error = null;
+            done = false;
+            return this;
+        }
+
+        @Override
+        public void onResult(boolean result, Throwable error) {
+            this.result = result;
+            this.error = error;
+            done = true;
+            LockSupport.unpark(waiter);
+        }
+
+        boolean await() throws ExecutionException {
+            while (!done) {
+                LockSupport.park(this);
+            }
+            if (error != null) {
+                throw new ExecutionException(error);
+            }
+            return result;
+        }
+    }
+}
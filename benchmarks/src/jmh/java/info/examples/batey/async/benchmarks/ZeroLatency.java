@@ -0,0 +1,13 @@
+package info.examples.batey.async.benchmarks;
+
+import org.openjdk.jmh.annotations.Fork;
+
+/**
+ * Services answer straight away, so this is the cost of each style itself.
+ * The asynchronous styles skip the scheduler's wheel for a zero delay but
+ * still hand each answer to its event loop: the thread hop is part of
+ * their cost.
+ */
+@Fork(value = 1, jvmArgsAppend = "-Dthirdparty.delay=0")
+public class ZeroLatency extends WatchChannelBenchmark {
+}
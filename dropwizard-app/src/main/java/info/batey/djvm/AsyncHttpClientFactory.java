@@ -0,0 +1,48 @@
+package info.batey.djvm;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.asynchttpclient.AsyncHttpClient;
+import org.asynchttpclient.DefaultAsyncHttpClient;
+import org.asynchttpclient.DefaultAsyncHttpClientConfig;
+
+import javax.validation.constraints.Min;
+
+/**
+ * The one non-blocking HTTP client for all outbound calls. Connections are
+ * pooled and kept alive so a call to a host we've already talked to skips
+ * the connect.
+ */
+public class AsyncHttpClientFactory {
+
+    @Min(1)
+    @JsonProperty
+    private int maxConnections = 1024;
+
+    @Min(1)
+    @JsonProperty
+    private int maxConnectionsPerHost = 256;
+
+    @Min(1)
+    @JsonProperty
+    private int connectTimeoutMillis = 1000;
+
+    @Min(1)
+    @JsonProperty
+    private int requestTimeoutMillis = 5000;
+
+    @Min(1)
+    @JsonProperty
+    private int pooledConnectionIdleTimeoutMillis = 60000;
+
+    public AsyncHttpClient build(String name) {
+        return new DefaultAsyncHttpClient(new DefaultAsyncHttpClientConfig.Builder()
+                .setThreadPoolName(name)
+                .setKeepAlive(true)
+                .setMaxConnections(maxConnections)
+                .setMaxConnectionsPerHost(maxConnectionsPerHost)
+                .setConnectTimeout(connectTimeoutMillis)
+                .setRequestTimeout(requestTimeoutMillis)
+                .setPooledConnectionIdleTimeout(pooledConnectionIdleTimeoutMillis)
+                .build());
+    }
+}
@@ -1,6 +1,20 @@
 package info.batey.djvm;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import info.examples.batey.async.Result;
+import info.examples.batey.async.batching.BatchLoader;
+import info.examples.batey.async.batching.PermissionsBatcher;
+import info.examples.batey.async.bulkhead.Bulkhead;
+import info.examples.batey.async.circuitbreaker.CircuitBreaker;
+import info.examples.batey.async.circuitbreaker.CircuitBreakerPolicy;
+import info.examples.batey.async.deadline.Deadline;
+import info.examples.batey.async.deadline.DeadlineExceededException;
+import info.examples.batey.async.hedging.HedgingChannelService;
+import info.examples.batey.async.hedging.HedgingPolicy;
+import info.examples.batey.async.metrics.CallMetrics;
+import info.examples.batey.async.scheduling.Scheduler;
+import info.examples.batey.async.singleflight.SingleFlightChannelService;
 import info.examples.batey.async.thirdparty.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,8 +23,8 @@ import javax.ws.rs.*;
 import javax.ws.rs.container.AsyncResponse;
 import javax.ws.rs.container.Suspended;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 
@@ -19,18 +33,82 @@ public class AsyncTvService {
 
     private static final Logger LOG = LoggerFactory.getLogger(AsyncTvService.class);
 
-    private final UserService users = UserService.userService();
-    private final PermissionsService permissions = PermissionsService.permissionsService();
-    private final ChannelService channels = ChannelService.channelService();
+    private static final int USER_BATCH_SIZE = 100;
+    private static final long USER_BATCH_WINDOW_MS = 5;
+    private static final long PERMISSIONS_TICK_MS = 5;
+    private static final long CHANNEL_HEDGE_INITIAL_DELAY_MS = 1000;
+    private static final int DEFAULT_MAX_CONCURRENT = 8192;
+    private static final int DEFAULT_MAX_QUEUED = 1024;
+    private static final long DEFAULT_SLOW_CALL_MS = 1000;
 
-    private final ScheduledExecutorService se = Executors.newScheduledThreadPool(5);
+    private final Scheduler scheduler;
+
+    private final UserService users;
+    private final PermissionsService permissions;
+    private final ChannelService channels;
+
+    private final DependencyGuard userGuard;
+    private final DependencyGuard permissionsGuard;
+    private final DependencyGuard channelGuard;
+
+    private final BatchLoader<String, User> userLoader;
+    private final PermissionsBatcher permissionsBatcher;
+    private final SingleFlightChannelService channelFlights;
+
+    private final CallMetrics watchChannelMetrics;
+    private final Timer userStage;
+    private final Timer lookupsStage;
+
+    public AsyncTvService(Scheduler scheduler) {
+        this(scheduler, new MetricRegistry(), defaultGuard("users", scheduler),
+                defaultGuard("permissions", scheduler), defaultGuard("channels", scheduler));
+    }
+
+    /**
+     * Every call to a dependency goes through its guard: a slow one can only
+     * tie up so many requests and a failing one is stopped being called, in
+     * both cases the rest fail fast with a 503.
+     */
+    public AsyncTvService(Scheduler scheduler, MetricRegistry metrics,
+                          DependencyGuard userGuard, DependencyGuard permissionsGuard, DependencyGuard channelGuard) {
+        this.scheduler = scheduler;
+        this.userGuard = userGuard;
+        this.permissionsGuard = permissionsGuard;
+        this.channelGuard = channelGuard;
+        this.users = UserService.userService(scheduler).instrumented(metrics, "async");
+        this.permissions = PermissionsService.permissionsService(scheduler).instrumented(metrics, "async");
+        this.channels = ChannelService.channelService(scheduler).instrumented(metrics, "async");
+        this.watchChannelMetrics = CallMetrics.callMetrics(metrics, MetricRegistry.name("async", "watch-channel"));
+        this.userStage = CallMetrics.timer(metrics, MetricRegistry.name("async", "watch-channel", "user"));
+        this.lookupsStage = CallMetrics.timer(metrics, MetricRegistry.name("async", "watch-channel", "lookups"));
+
+        // Concurrent requests for users are sent to the user service in bulk
+        this.userLoader = new BatchLoader<>(users::lookupUsers,
+                USER_BATCH_SIZE, USER_BATCH_WINDOW_MS, TimeUnit.MILLISECONDS, scheduler);
+        // and so are the permissions lookups that follow them
+        this.permissionsBatcher = new PermissionsBatcher(
+                userIds -> permissions.permissionsCompletable(userIds),
+                PERMISSIONS_TICK_MS, TimeUnit.MILLISECONDS, scheduler);
+        // Slow channel lookups are hedged, and everyone asking for the same
+        // channel at once shares a single (possibly hedged) lookup
+        HedgingChannelService hedgedChannels = new HedgingChannelService(
+                name -> channelGuard.call(() -> channels.lookupChannelCompletable(name)),
+                HedgingPolicy.defaultPolicy(CHANNEL_HEDGE_INITIAL_DELAY_MS, TimeUnit.MILLISECONDS), scheduler);
+        this.channelFlights = new SingleFlightChannelService(hedgedChannels::lookupChannelCompletable);
+    }
 
     @GET
     @Path("/user/{user}")
     @Produces("text/plain")
     public void user(@Suspended AsyncResponse asyncResponse,
                      @PathParam("user") String userName) {
-        users.lookupUserCompletable(userName).thenAccept(user -> asyncResponse.resume(user.getName()));
+        loadUser(userName).whenComplete((user, error) -> {
+            if (error != null) {
+                resumeWithError(asyncResponse, error);
+            } else {
+                asyncResponse.resume(user.getName());
+            }
+        });
     }
 
     @GET
@@ -38,9 +116,16 @@ public class AsyncTvService {
     public void userPermission(@Suspended AsyncResponse asyncResponse,
                                   @PathParam("user") String userName,
                                   @PathParam("permission") String permission) {
-        users.lookupUserCompletable(userName)
-                .thenCompose(user -> permissions.permissionsCompletable(user.getUserId()))
-                .thenAccept(p -> asyncResponse.resume(p.hasPermission(permission)));
+        int ordinal = PermissionDictionary.ordinal(permission);
+        loadUser(userName)
+                .thenCompose(user -> loadPermissions(user.getUserId()))
+                .whenComplete((p, error) -> {
+                    if (error != null) {
+                        resumeWithError(asyncResponse, error);
+                    } else {
+                        asyncResponse.resume(p.hasPermission(ordinal));
+                    }
+                });
     }
 
     @GET
@@ -49,16 +134,33 @@ public class AsyncTvService {
                                 @PathParam("user") String userName,
                                 @PathParam("permission") String permission,
                                 @PathParam("channel") String channel) {
-        CompletableFuture<Permissions> cPermission = users.lookupUserCompletable(userName)
-                .thenCompose(user -> permissions.permissionsCompletable(user.getUserId()));
-
-        CompletableFuture<Channel> cChannel = channels.lookupChannelCompletable(channel);
-
-        CompletableFuture<Result> cResult = cPermission.thenCombine(cChannel, (p, c) -> new Result(c, p));
-
-        cResult.thenAccept(result -> asyncResponse.resume(
-                result.getChannel() != null && result.getPermissions().hasPermission(permission)
-        ));
+        // Stages are timed from the start of the request in the callbacks
+        // the pipeline already has, so timing adds no allocation. The user
+        // lookup is followed by permissions while the channel lookup runs
+        // alongside: how long each of those took is in the services' metrics
+        long start = watchChannelMetrics.start();
+        int ordinal = PermissionDictionary.ordinal(permission);
+        CompletableFuture<Permissions> cPermission = loadUser(userName)
+                .thenCompose(user -> {
+                    userStage.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    return loadPermissions(user.getUserId());
+                });
+
+        CompletableFuture<Channel> cChannel = channelFlights.lookupChannelCompletable(channel);
+
+        CompletableFuture<Result> cResult = cPermission.thenCombine(cChannel, (p, c) -> {
+            lookupsStage.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return new Result(c, p);
+        });
+
+        cResult.whenComplete((result, error) -> {
+            watchChannelMetrics.completed(start, error);
+            if (error != null) {
+                resumeWithError(asyncResponse, error);
+            } else {
+                asyncResponse.resume(result.getChannel() != null && result.getPermissions().hasPermission(ordinal));
+            }
+        });
     }
 
     @GET
@@ -76,17 +178,51 @@ public class AsyncTvService {
                                     @PathParam("permission") String permission,
                                     @PathParam("channel") String channel) {
 
-         CompletableFuture<Permissions> cPermission = users.lookupUserCompletable(userName)
-                .thenCompose(user -> permissions.permissionsCompletable(user.getUserId()));
+        // Goes straight to the services rather than the batchers so that
+        // when the deadline passes the outstanding lookups are dropped
+        Deadline deadline = Deadline.after(
+                info.examples.batey.async.thirdparty.Config.WATCH_CHANNEL_BUDGET, TimeUnit.MILLISECONDS, scheduler);
+        int ordinal = PermissionDictionary.ordinal(permission);
+
+        CompletableFuture<Permissions> cPermission = userGuard.call(() -> users.lookupUserCompletable(userName, deadline))
+                .thenCompose(user -> permissionsGuard.call(() -> permissions.permissionsCompletable(user.getUserId(), deadline)));
 
-        CompletableFuture<Channel> cChannel = channels.lookupChannelCompletable(channel);
+        CompletableFuture<Channel> cChannel = channelGuard.call(() -> channels.lookupChannelCompletable(channel, deadline));
 
-        CompletableFuture<Result> cResult = cPermission.thenCombine(cChannel, (p, c) -> new Result(c, p));
+        CompletableFuture<Result> cResult = deadline.track(cPermission.thenCombine(cChannel, (p, c) -> new Result(c, p)));
 
-        cResult.thenAccept(result -> asyncResponse.resume(
-                result.getChannel() != null && result.getPermissions().hasPermission(permission)
-        ));
+        cResult.whenComplete((result, error) -> {
+            deadline.complete();
+            if (error != null) {
+                resumeWithError(asyncResponse, error);
+            } else {
+                asyncResponse.resume(result.getChannel() != null && result.getPermissions().hasPermission(ordinal));
+            }
+        });
+    }
+
+    // Guarded per lookup rather than per batch, so beyond the bulkhead's
+    // limits callers are turned away instead of piling up in the batchers
+    private CompletableFuture<User> loadUser(String userName) {
+        return userGuard.call(() -> userLoader.load(userName));
+    }
+
+    private CompletableFuture<Permissions> loadPermissions(int userId) {
+        return permissionsGuard.call(() -> permissionsBatcher.permissionsCompletable(userId));
+    }
+
+    private static DependencyGuard defaultGuard(String name, Scheduler scheduler) {
+        return new DependencyGuard(new Bulkhead(name, DEFAULT_MAX_CONCURRENT, DEFAULT_MAX_QUEUED),
+                new CircuitBreaker(name, CircuitBreakerPolicy.defaultPolicy(DEFAULT_SLOW_CALL_MS, TimeUnit.MILLISECONDS), scheduler));
+    }
 
-        asyncResponse.setTimeout(500, TimeUnit.MILLISECONDS);
+    private static void resumeWithError(AsyncResponse asyncResponse, Throwable error) {
+        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+        // Full bulkheads and open circuits
+        if (cause instanceof DeadlineExceededException || cause instanceof RejectedExecutionException) {
+            asyncResponse.resume(new ServiceUnavailableException(cause.getMessage()));
+        } else {
+            asyncResponse.resume(cause);
+        }
     }
 }
@@ -8,6 +8,9 @@ import info.examples.batey.async.thirdparty.UserService;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.util.EntityUtils;
+import org.asynchttpclient.AsyncCompletionHandler;
+import org.asynchttpclient.AsyncHttpClient;
+import org.asynchttpclient.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,6 +20,7 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.container.AsyncResponse;
 import javax.ws.rs.container.Suspended;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
 @Path("/")
@@ -24,10 +28,20 @@ public class BasicService {
 
     private static final Logger LOG = LoggerFactory.getLogger(BasicService.class);
 
+    private static final String CALLOUT_URL = "http://wiremock:7070/name";
+
     private final HttpClient httpClient;
+    private final AsyncHttpClient asyncHttpClient;
+    private final ExecutorService blockingWork;
 
-    public BasicService(HttpClient httpClient) {
+    /**
+     * @param blockingWork where asyncGet2 does its blocking, rather than a
+     *                     new thread per request
+     */
+    public BasicService(HttpClient httpClient, AsyncHttpClient asyncHttpClient, ExecutorService blockingWork) {
         this.httpClient = httpClient;
+        this.asyncHttpClient = asyncHttpClient;
+        this.blockingWork = blockingWork;
     }
 
     // Synchronous
@@ -52,24 +66,41 @@ public class BasicService {
     @Produces("text/plain")
     public void asyncGet2(@Suspended AsyncResponse asyncResponse) {
         LOG.info("Which thread?? Async");
-        new Thread() {
-            @Override
-            public void run() {
-                LOG.info("Which thread long running io call?");
-                // This counts as blocking!
-                Uninterruptibles.sleepUninterruptibly(1, TimeUnit.SECONDS);
-                asyncResponse.resume("Hello World");
-            }
-        }.start();
+        blockingWork.execute(() -> {
+            LOG.info("Which thread long running io call?");
+            // This counts as blocking!
+            Uninterruptibles.sleepUninterruptibly(1, TimeUnit.SECONDS);
+            asyncResponse.resume("Hello World");
+        });
     }
 
     @GET
     @Path("/callout")
     public String callout() throws IOException {
-        HttpGet httpGet = new HttpGet("http://wiremock:7070/name");
+        HttpGet httpGet = new HttpGet(CALLOUT_URL);
         return EntityUtils.toString(httpClient.execute(httpGet).getEntity());
     }
 
+    // No thread waits for the response: the request thread is handed back
+    // to Jetty straight away and a Netty I/O thread resumes the response
+    @GET
+    @Path("/callout-async")
+    public void calloutAsync(@Suspended AsyncResponse asyncResponse) {
+        asyncHttpClient.prepareGet(CALLOUT_URL).execute(new AsyncCompletionHandler<Response>() {
+            @Override
+            public Response onCompleted(Response response) {
+                asyncResponse.resume(response.getResponseBody());
+                return response;
+            }
+
+            @Override
+            public void onThrowable(Throwable t) {
+                LOG.warn("Callout failed", t);
+                asyncResponse.resume(t);
+            }
+        });
+    }
+
 
     @GET
     @Path("/funky-business-stuff")
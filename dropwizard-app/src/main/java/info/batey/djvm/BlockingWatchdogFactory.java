@@ -0,0 +1,45 @@
+package info.batey.djvm;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import info.examples.batey.async.blocking.BlockingWatchdog;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class BlockingWatchdogFactory {
+
+    @JsonProperty
+    private boolean enabled = true;
+
+    /**
+     * Event loop tasks should take microseconds, so this is generous.
+     */
+    @Min(1)
+    @JsonProperty
+    private long thresholdMillis = 100;
+
+    /**
+     * Other threads that must never block, by name prefix.
+     */
+    @NotNull
+    @JsonProperty
+    private List<String> watchThreads = new ArrayList<>();
+
+    /**
+     * @return null when disabled
+     */
+    public BlockingWatchdog build(MetricRegistry metrics) {
+        if (!enabled) {
+            return null;
+        }
+        BlockingWatchdog watchdog = BlockingWatchdog.start(thresholdMillis, TimeUnit.MILLISECONDS, metrics);
+        for (String prefix : watchThreads) {
+            watchdog.watchThreads(prefix);
+        }
+        return watchdog;
+    }
+}
@@ -0,0 +1,32 @@
+package info.batey.djvm;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import info.examples.batey.async.bulkhead.Bulkhead;
+
+import javax.validation.constraints.Min;
+
+public class BulkheadFactory {
+
+    @Min(1)
+    @JsonProperty
+    private int maxConcurrent = 8192;
+
+    @Min(0)
+    @JsonProperty
+    private int maxQueued = 1024;
+
+    /**
+     * Builds the bulkhead and registers its in-flight, peak, queued and
+     * rejected gauges under bulkhead.{name}.
+     */
+    public Bulkhead build(String name, MetricRegistry metrics) {
+        Bulkhead bulkhead = new Bulkhead(name, maxConcurrent, maxQueued);
+        metrics.register(MetricRegistry.name("bulkhead", name, "in-flight"), (Gauge<Integer>) bulkhead::inFlight);
+        metrics.register(MetricRegistry.name("bulkhead", name, "peak-in-flight"), (Gauge<Integer>) bulkhead::peakInFlight);
+        metrics.register(MetricRegistry.name("bulkhead", name, "queued"), (Gauge<Integer>) bulkhead::queued);
+        metrics.register(MetricRegistry.name("bulkhead", name, "rejected"), (Gauge<Long>) bulkhead::rejected);
+        return bulkhead;
+    }
+}
@@ -0,0 +1,39 @@
+package info.batey.djvm;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+
+/**
+ * One bulkhead per dependency of the async TV service.
+ */
+public class BulkheadsFactory {
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private BulkheadFactory users = new BulkheadFactory();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private BulkheadFactory permissions = new BulkheadFactory();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private BulkheadFactory channels = new BulkheadFactory();
+
+    public BulkheadFactory getUsers() {
+        return users;
+    }
+
+    public BulkheadFactory getPermissions() {
+        return permissions;
+    }
+
+    public BulkheadFactory getChannels() {
+        return channels;
+    }
+}
@@ -0,0 +1,68 @@
+package info.batey.djvm;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import info.examples.batey.async.circuitbreaker.CircuitBreaker;
+import info.examples.batey.async.circuitbreaker.CircuitBreakerPolicy;
+import info.examples.batey.async.scheduling.Scheduler;
+
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One policy shared by the breakers around each dependency.
+ */
+public class CircuitBreakerFactory {
+
+    @Min(1)
+    @JsonProperty
+    private int windowSize = 100;
+
+    @Min(1)
+    @JsonProperty
+    private int minimumCalls = 20;
+
+    @DecimalMin("0.01")
+    @DecimalMax("1.0")
+    @JsonProperty
+    private double failureRateThreshold = 0.5;
+
+    @DecimalMin("0.01")
+    @DecimalMax("1.0")
+    @JsonProperty
+    private double slowCallRateThreshold = 0.8;
+
+    /**
+     * The simulated backends take 500ms, so anything much over that is slow.
+     */
+    @Min(1)
+    @JsonProperty
+    private long slowCallMillis = 1000;
+
+    @Min(1)
+    @JsonProperty
+    private long openMillis = 5000;
+
+    @Min(1)
+    @JsonProperty
+    private int halfOpenCalls = 5;
+
+    /**
+     * Builds a breaker and registers gauges for its state (0 closed, 1 open,
+     * 2 half open), failure rate and rejected calls under circuit-breaker.{name}.
+     * Calls still running after slowCallMillis are timed out as slow on the
+     * scheduler's wheel.
+     */
+    public CircuitBreaker build(String name, Scheduler scheduler, MetricRegistry metrics) {
+        CircuitBreaker breaker = new CircuitBreaker(name, new CircuitBreakerPolicy(windowSize, minimumCalls,
+                failureRateThreshold, slowCallRateThreshold,
+                slowCallMillis, openMillis, TimeUnit.MILLISECONDS, halfOpenCalls), scheduler);
+        metrics.register(MetricRegistry.name("circuit-breaker", name, "state"), (Gauge<Integer>) () -> breaker.state().ordinal());
+        metrics.register(MetricRegistry.name("circuit-breaker", name, "failure-rate"), (Gauge<Double>) breaker::failureRate);
+        metrics.register(MetricRegistry.name("circuit-breaker", name, "not-permitted"), (Gauge<Long>) breaker::notPermitted);
+        return breaker;
+    }
+}
@@ -0,0 +1,71 @@
+package info.batey.djvm;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import info.examples.batey.async.limit.AimdLimiter;
+
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+import java.util.concurrent.TimeUnit;
+
+public class ConcurrencyLimitFactory {
+
+    @JsonProperty
+    private boolean enabled = false;
+
+    @Min(1)
+    @JsonProperty
+    private int initialLimit = 20;
+
+    @Min(1)
+    @JsonProperty
+    private int minLimit = 5;
+
+    @Min(1)
+    @JsonProperty
+    private int maxLimit = 1000;
+
+    @DecimalMin("0.1")
+    @DecimalMax("0.99")
+    @JsonProperty
+    private double backoffRatio = 0.9;
+
+    /**
+     * Responses slower than this count as a sign of overload. Has to be
+     * comfortably above the slowest endpoint's normal latency.
+     */
+    @Min(1)
+    @JsonProperty
+    private long latencyThresholdMillis = 2000;
+
+    /**
+     * A request still holding its permit after this long, e.g. an async one
+     * that was never resumed, gives it back as dropped.
+     */
+    @Min(1)
+    @JsonProperty
+    private long permitTimeoutMillis = 10000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getPermitTimeoutMillis() {
+        return permitTimeoutMillis;
+    }
+
+    /**
+     * Builds a limiter and registers its limit, in-flight and rejected
+     * gauges under concurrency-limit.{name}.
+     */
+    public AimdLimiter build(String name, MetricRegistry metrics) {
+        AimdLimiter limiter = new AimdLimiter(name, initialLimit, minLimit, maxLimit,
+                backoffRatio, latencyThresholdMillis, TimeUnit.MILLISECONDS);
+        metrics.register(MetricRegistry.name("concurrency-limit", name, "limit"), (Gauge<Integer>) limiter::limit);
+        metrics.register(MetricRegistry.name("concurrency-limit", name, "in-flight"), (Gauge<Integer>) limiter::inFlight);
+        metrics.register(MetricRegistry.name("concurrency-limit", name, "rejected"), (Gauge<Long>) limiter::rejected);
+        return limiter;
+    }
+}
@@ -0,0 +1,44 @@
+package info.batey.djvm;
+
+import info.examples.batey.async.limit.AimdLimiter;
+import info.examples.batey.async.scheduling.Scheduler;
+
+import javax.ws.rs.container.DynamicFeature;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.FeatureContext;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binds a {@link ConcurrencyLimitFilter} to every method of the given
+ * resource classes, one limiter per class so the sync and async resources
+ * each find their own limit.
+ */
+public class ConcurrencyLimitFeature implements DynamicFeature {
+
+    private final Map<Class<?>, ConcurrencyLimitFilter> filters = new HashMap<>();
+    private final Scheduler scheduler;
+    private final long permitTimeoutMillis;
+
+    /**
+     * @param scheduler times out permits held longer than permitTimeoutMillis
+     */
+    public ConcurrencyLimitFeature(Scheduler scheduler, long permitTimeoutMillis) {
+        this.scheduler = scheduler;
+        this.permitTimeoutMillis = permitTimeoutMillis;
+    }
+
+    public ConcurrencyLimitFeature limit(Class<?> resource, AimdLimiter limiter) {
+        filters.put(resource, new ConcurrencyLimitFilter(limiter, scheduler, permitTimeoutMillis, TimeUnit.MILLISECONDS));
+        return this;
+    }
+
+    @Override
+    public void configure(ResourceInfo resourceInfo, FeatureContext context) {
+        ConcurrencyLimitFilter filter = filters.get(resourceInfo.getResourceClass());
+        if (filter != null) {
+            context.register(filter);
+        }
+    }
+}
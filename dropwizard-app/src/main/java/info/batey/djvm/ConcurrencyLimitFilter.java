@@ -0,0 +1,59 @@
+package info.batey.djvm;
+
+import info.examples.batey.async.limit.AimdLimiter;
+import info.examples.batey.async.scheduling.Scheduler;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.Response;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Puts a resource behind an {@link AimdLimiter}: requests over the limit get
+ * a 503 without reaching the resource, the rest report their latency when
+ * the response goes out. For async resources that is when the
+ * AsyncResponse is resumed, not when the request thread is given back.
+ * A request whose response never goes out, e.g. an async one that is never
+ * resumed, has its permit timed out as dropped rather than holding it for
+ * good.
+ */
+class ConcurrencyLimitFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static final String PERMIT = ConcurrencyLimitFilter.class.getName() + ".permit";
+
+    private final AimdLimiter limiter;
+    private final Scheduler scheduler;
+    private final long permitTimeout;
+    private final TimeUnit unit;
+
+    ConcurrencyLimitFilter(AimdLimiter limiter, Scheduler scheduler, long permitTimeout, TimeUnit unit) {
+        this.limiter = limiter;
+        this.scheduler = scheduler;
+        this.permitTimeout = permitTimeout;
+        this.unit = unit;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request) {
+        AimdLimiter.Permit permit = limiter.tryAcquire(scheduler, permitTimeout, unit);
+        if (permit != null) {
+            request.setProperty(PERMIT, permit);
+        } else {
+            request.abortWith(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .entity("Concurrency limit reached for " + limiter.name())
+                    .build());
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+        // Aborted requests still pass through here but never held a permit
+        AimdLimiter.Permit permit = (AimdLimiter.Permit) request.getProperty(PERMIT);
+        if (permit != null) {
+            request.removeProperty(PERMIT);
+            permit.release(response.getStatus() == Response.Status.SERVICE_UNAVAILABLE.getStatusCode());
+        }
+    }
+}
@@ -14,7 +14,81 @@ public class Config extends Configuration {
     @JsonProperty
     private HttpClientConfiguration httpClient = new HttpClientConfiguration();
 
+    @Valid
+    @NotNull
+    @JsonProperty
+    private SchedulerFactory scheduler = new SchedulerFactory();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private AsyncHttpClientFactory asyncHttpClient = new AsyncHttpClientFactory();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private RemoteServicesFactory remoteServices = new RemoteServicesFactory();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private BulkheadsFactory bulkheads = new BulkheadsFactory();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private ConcurrencyLimitFactory concurrencyLimit = new ConcurrencyLimitFactory();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private CircuitBreakerFactory circuitBreaker = new CircuitBreakerFactory();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private BlockingWatchdogFactory blockingWatchdog = new BlockingWatchdogFactory();
+
+    /**
+     * Also serve the synchronous resources from /sync-virtual, each request
+     * on a virtual thread.
+     */
+    @JsonProperty
+    private boolean virtualThreads = false;
+
     public HttpClientConfiguration getHttpClientConfiguration() {
         return httpClient;
     }
+
+    public AsyncHttpClientFactory getAsyncHttpClientFactory() {
+        return asyncHttpClient;
+    }
+
+    public RemoteServicesFactory getRemoteServicesFactory() {
+        return remoteServices;
+    }
+
+    public BlockingWatchdogFactory getBlockingWatchdogFactory() {
+        return blockingWatchdog;
+    }
+
+    public BulkheadsFactory getBulkheadsFactory() {
+        return bulkheads;
+    }
+
+    public CircuitBreakerFactory getCircuitBreakerFactory() {
+        return circuitBreaker;
+    }
+
+    public ConcurrencyLimitFactory getConcurrencyLimitFactory() {
+        return concurrencyLimit;
+    }
+
+    public SchedulerFactory getSchedulerFactory() {
+        return scheduler;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
 }
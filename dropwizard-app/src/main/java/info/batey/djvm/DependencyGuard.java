@@ -0,0 +1,28 @@
+package info.batey.djvm;
+
+import info.examples.batey.async.bulkhead.Bulkhead;
+import info.examples.batey.async.circuitbreaker.CircuitBreaker;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * What stands between a resource and one dependency: its bulkhead and its
+ * circuit breaker. The breaker is inside the bulkhead so it only judges the
+ * dependency on calls that actually reached it, a full bulkhead isn't a
+ * backend failure, and an open circuit hands its slot straight back.
+ */
+public class DependencyGuard {
+
+    private final Bulkhead bulkhead;
+    private final CircuitBreaker circuitBreaker;
+
+    public DependencyGuard(Bulkhead bulkhead, CircuitBreaker circuitBreaker) {
+        this.bulkhead = bulkhead;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public <T> CompletableFuture<T> call(Supplier<CompletableFuture<T>> call) {
+        return bulkhead.call(() -> circuitBreaker.call(call));
+    }
+}
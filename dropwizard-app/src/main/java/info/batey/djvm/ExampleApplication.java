@@ -1,9 +1,19 @@
 package info.batey.djvm;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import info.examples.batey.async.blocking.BlockingWatchdog;
+import info.examples.batey.async.metrics.InstrumentedExecutorService;
+import info.examples.batey.async.scheduling.Scheduler;
 import io.dropwizard.Application;
 import io.dropwizard.client.HttpClientBuilder;
+import io.dropwizard.lifecycle.Managed;
 import io.dropwizard.setup.Environment;
 import org.apache.http.client.HttpClient;
+import org.asynchttpclient.AsyncHttpClient;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 public class ExampleApplication extends Application<Config> {
 
@@ -15,8 +25,71 @@ public class ExampleApplication extends Application<Config> {
     public void run(Config config, Environment environment) throws Exception {
         final HttpClient httpClient = new HttpClientBuilder(environment).using(config.getHttpClientConfiguration())
                 .build("http-client");
-        environment.jersey().register(new SyncTvService());
-        environment.jersey().register(new AsyncTvService());
-        environment.jersey().register(new BasicService(httpClient));
+        final AsyncHttpClient asyncHttpClient = config.getAsyncHttpClientFactory().build("async-http-client");
+        closeOnStop(environment, asyncHttpClient);
+        final BlockingWatchdog watchdog = config.getBlockingWatchdogFactory().build(environment.metrics());
+        if (watchdog != null) {
+            closeOnStop(environment, watchdog);
+        }
+        final Scheduler scheduler = config.getSchedulerFactory().build("services", environment.metrics(), watchdog);
+        closeOnStop(environment, scheduler);
+        // Jetty's own pool is already reported, as org.eclipse.jetty.util.thread.QueuedThreadPool.dw.*
+        ExecutorService syncFanOut = instrumentedPool(environment, "sync.fan-out",
+                Executors.newFixedThreadPool(5, daemonThreads("sync-fan-out-%d")));
+        environment.jersey().register(new SyncTvService(scheduler, syncFanOut, environment.metrics(), "sync"));
+        if (config.isVirtualThreads()) {
+            ExecutorService virtualThreads = instrumentedPool(environment, "sync-virtual",
+                    VirtualThreads.perTaskExecutor("sync-virtual"));
+            environment.jersey().register(new VirtualThreadTvService(
+                    new SyncTvService(scheduler, virtualThreads, environment.metrics(), "sync-virtual"), virtualThreads));
+        }
+        BulkheadsFactory bulkheads = config.getBulkheadsFactory();
+        CircuitBreakerFactory circuitBreaker = config.getCircuitBreakerFactory();
+        environment.jersey().register(new AsyncTvService(scheduler, environment.metrics(),
+                new DependencyGuard(bulkheads.getUsers().build("users", environment.metrics()),
+                        circuitBreaker.build("users", scheduler, environment.metrics())),
+                new DependencyGuard(bulkheads.getPermissions().build("permissions", environment.metrics()),
+                        circuitBreaker.build("permissions", scheduler, environment.metrics())),
+                new DependencyGuard(bulkheads.getChannels().build("channels", environment.metrics()),
+                        circuitBreaker.build("channels", scheduler, environment.metrics()))));
+        environment.jersey().register(new BasicService(httpClient, asyncHttpClient,
+                instrumentedPool(environment, "funky-async", Executors.newCachedThreadPool(daemonThreads("funky-async-%d")))));
+        ConcurrencyLimitFactory concurrencyLimit = config.getConcurrencyLimitFactory();
+        if (concurrencyLimit.isEnabled()) {
+            environment.jersey().register(new ConcurrencyLimitFeature(scheduler, concurrencyLimit.getPermitTimeoutMillis())
+                    .limit(SyncTvService.class, concurrencyLimit.build("sync", environment.metrics()))
+                    .limit(AsyncTvService.class, concurrencyLimit.build("async", environment.metrics())));
+        }
+        if (config.getRemoteServicesFactory().isEnabled()) {
+            environment.jersey().register(config.getRemoteServicesFactory()
+                    .build(asyncHttpClient, environment.getObjectMapper()));
+        }
+    }
+
+    /**
+     * Reports the pool's queue, active threads, wait and run times and
+     * rejections under the name, and shuts it down with the app.
+     */
+    private static ExecutorService instrumentedPool(Environment environment, String name, ExecutorService pool) {
+        ExecutorService instrumented = InstrumentedExecutorService.instrument(pool, environment.metrics(), name);
+        closeOnStop(environment, instrumented::shutdown);
+        return instrumented;
+    }
+
+    private static ThreadFactory daemonThreads(String nameFormat) {
+        return new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build();
+    }
+
+    private static void closeOnStop(Environment environment, AutoCloseable resource) {
+        environment.lifecycle().manage(new Managed() {
+            @Override
+            public void start() {
+            }
+
+            @Override
+            public void stop() throws Exception {
+                resource.close();
+            }
+        });
     }
 }
@@ -0,0 +1,62 @@
+package info.batey.djvm;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.net.UrlEscapers;
+import info.examples.batey.async.thirdparty.BackendException;
+import org.asynchttpclient.AsyncCompletionHandler;
+import org.asynchttpclient.AsyncHttpClient;
+import org.asynchttpclient.Response;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * GETs JSON from one of the backends without blocking.
+ * <p>
+ * The response is decoded on the Netty I/O thread that read it, which is
+ * fine for documents this small. A 404 completes with null, the same as
+ * the in memory services do for a missing key; any other error status
+ * fails with a {@link BackendException}.
+ */
+class JsonHttp {
+
+    private final AsyncHttpClient client;
+    private final ObjectMapper mapper;
+    private final String baseUrl;
+
+    JsonHttp(AsyncHttpClient client, ObjectMapper mapper, String baseUrl) {
+        this.client = client;
+        this.mapper = mapper;
+        this.baseUrl = baseUrl;
+    }
+
+    <T> CompletableFuture<T> get(String resource, String key, Function<JsonNode, T> decode) {
+        String url = baseUrl + "/" + resource + "/" + UrlEscapers.urlPathSegmentEscaper().escape(key);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        client.prepareGet(url).execute(new AsyncCompletionHandler<Response>() {
+            @Override
+            public Response onCompleted(Response response) {
+                if (response.getStatusCode() == 404) {
+                    result.complete(null);
+                } else if (response.getStatusCode() >= 300) {
+                    result.completeExceptionally(new BackendException(url + " returned " + response.getStatusCode()));
+                } else {
+                    try {
+                        result.complete(decode.apply(mapper.readTree(response.getResponseBodyAsStream())));
+                    } catch (IOException | RuntimeException e) {
+                        result.completeExceptionally(e);
+                    }
+                }
+                return response;
+            }
+
+            @Override
+            public void onThrowable(Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+        return result;
+    }
+}
@@ -0,0 +1,22 @@
+package info.batey.djvm;
+
+import info.examples.batey.async.thirdparty.Channel;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link info.examples.batey.async.thirdparty.ChannelService} over HTTP:
+ * GET /channels/{name}.
+ */
+public class RemoteChannelService {
+
+    private final JsonHttp http;
+
+    RemoteChannelService(JsonHttp http) {
+        this.http = http;
+    }
+
+    public CompletableFuture<Channel> lookupChannelCompletable(String name) {
+        return http.get("channels", name, json -> new Channel(json.get("name").asText()));
+    }
+}
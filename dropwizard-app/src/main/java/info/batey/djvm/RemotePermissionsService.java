@@ -0,0 +1,30 @@
+package info.batey.djvm;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import info.examples.batey.async.thirdparty.Permissions;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link info.examples.batey.async.thirdparty.PermissionsService} over
+ * HTTP: GET /permissions/{userId}.
+ */
+public class RemotePermissionsService {
+
+    private final JsonHttp http;
+
+    RemotePermissionsService(JsonHttp http) {
+        this.http = http;
+    }
+
+    public CompletableFuture<Permissions> permissionsCompletable(int userId) {
+        return http.get("permissions", Integer.toString(userId), json -> {
+            JsonNode names = json.get("permissions");
+            String[] permissions = new String[names.size()];
+            for (int i = 0; i < permissions.length; i++) {
+                permissions[i] = names.get(i).asText();
+            }
+            return Permissions.permissions(permissions);
+        });
+    }
+}
@@ -0,0 +1,32 @@
+package info.batey.djvm;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.asynchttpclient.AsyncHttpClient;
+import org.hibernate.validator.constraints.NotEmpty;
+
+/**
+ * Where the HTTP versions of the third party services live, by default
+ * the WireMock stand-ins.
+ */
+public class RemoteServicesFactory {
+
+    @JsonProperty
+    private boolean enabled = false;
+
+    @NotEmpty
+    @JsonProperty
+    private String baseUrl = "http://wiremock:7070";
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public RemoteTvService build(AsyncHttpClient client, ObjectMapper mapper) {
+        JsonHttp http = new JsonHttp(client, mapper, baseUrl);
+        return new RemoteTvService(
+                new RemoteUserService(http),
+                new RemotePermissionsService(http),
+                new RemoteChannelService(http));
+    }
+}
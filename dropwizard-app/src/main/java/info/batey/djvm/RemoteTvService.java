@@ -0,0 +1,73 @@
+package info.batey.djvm;
+
+import info.examples.batey.async.Result;
+import info.examples.batey.async.thirdparty.*;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The async TV service against real HTTP backends rather than simulated
+ * ones, for measuring what the network adds: connection pooling, I/O
+ * threads and JSON.
+ */
+@Path("/remote")
+public class RemoteTvService {
+
+    private final RemoteUserService users;
+    private final RemotePermissionsService permissions;
+    private final RemoteChannelService channels;
+
+    public RemoteTvService(RemoteUserService users, RemotePermissionsService permissions, RemoteChannelService channels) {
+        this.users = users;
+        this.permissions = permissions;
+        this.channels = channels;
+    }
+
+    @GET
+    @Path("/user/{user}")
+    @Produces("text/plain")
+    public void user(@Suspended AsyncResponse asyncResponse,
+                     @PathParam("user") String userName) {
+        users.lookupUserCompletable(userName).whenComplete((user, error) -> {
+            if (error != null) {
+                asyncResponse.resume(error);
+            } else if (user == null) {
+                asyncResponse.resume(new NotFoundException("No user " + userName));
+            } else {
+                asyncResponse.resume(user.getName());
+            }
+        });
+    }
+
+    @GET
+    @Path("/watch-channel/{user}/{permission}/{channel}")
+    public void watchChannel(@Suspended AsyncResponse asyncResponse,
+                             @PathParam("user") String userName,
+                             @PathParam("permission") String permission,
+                             @PathParam("channel") String channel) {
+        int ordinal = PermissionDictionary.ordinal(permission);
+        CompletableFuture<Permissions> cPermission = users.lookupUserCompletable(userName)
+                .thenCompose(user -> user == null
+                        ? CompletableFuture.completedFuture(null)
+                        : permissions.permissionsCompletable(user.getUserId()));
+
+        CompletableFuture<Channel> cChannel = channels.lookupChannelCompletable(channel);
+
+        cPermission.thenCombine(cChannel, (p, c) -> new Result(c, p)).whenComplete((result, error) -> {
+            if (error != null) {
+                asyncResponse.resume(error);
+            } else {
+                asyncResponse.resume(result.getChannel() != null
+                        && result.getPermissions() != null
+                        && result.getPermissions().hasPermission(ordinal));
+            }
+        });
+    }
+}
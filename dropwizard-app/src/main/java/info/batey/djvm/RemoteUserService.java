@@ -0,0 +1,25 @@
+package info.batey.djvm;
+
+import info.examples.batey.async.thirdparty.User;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link info.examples.batey.async.thirdparty.UserService} over HTTP:
+ * GET /users/{name}.
+ */
+public class RemoteUserService {
+
+    private final JsonHttp http;
+
+    RemoteUserService(JsonHttp http) {
+        this.http = http;
+    }
+
+    public CompletableFuture<User> lookupUserCompletable(String userName) {
+        return http.get("users", userName, json -> new User(
+                json.get("name").asText(),
+                json.get("userName").asText(),
+                json.get("userId").asInt()));
+    }
+}
@@ -0,0 +1,28 @@
+package info.batey.djvm;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import info.examples.batey.async.blocking.BlockingWatchdog;
+import info.examples.batey.async.scheduling.Scheduler;
+
+import javax.validation.constraints.Min;
+import java.util.concurrent.TimeUnit;
+
+public class SchedulerFactory {
+
+    @Min(1)
+    @JsonProperty
+    private long tickMillis = Scheduler.DEFAULT_TICK_MS;
+
+    @Min(1)
+    @JsonProperty
+    private int ticksPerWheel = Scheduler.DEFAULT_TICKS_PER_WHEEL;
+
+    @Min(1)
+    @JsonProperty
+    private int eventLoopThreads = Scheduler.DEFAULT_EVENT_LOOP_THREADS;
+
+    public Scheduler build(String name, MetricRegistry metrics, BlockingWatchdog watchdog) {
+        return new Scheduler(name, tickMillis, TimeUnit.MILLISECONDS, ticksPerWheel, eventLoopThreads, metrics, watchdog);
+    }
+}
@@ -1,6 +1,12 @@
 package info.batey.djvm;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import info.examples.batey.async.Result;
+import info.examples.batey.async.deadline.Deadline;
+import info.examples.batey.async.deadline.DeadlineExceededException;
+import info.examples.batey.async.metrics.CallMetrics;
+import info.examples.batey.async.scheduling.Scheduler;
 import info.examples.batey.async.thirdparty.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -8,19 +14,52 @@ import org.slf4j.LoggerFactory;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import javax.ws.rs.ServiceUnavailableException;
+import java.util.concurrent.*;
 
 @Path("/sync")
 public class SyncTvService {
 
     private static final Logger LOG = LoggerFactory.getLogger(SyncTvService.class);
 
-    private final UserService users = UserService.userService();
-    private final PermissionsService permissions = PermissionsService.permissionsService();
-    private final ChannelService channels = ChannelService.channelService();
+
+    private final Scheduler scheduler;
+    private final UserService users;
+    private final PermissionsService permissions;
+    private final ChannelService channels;
+    private final ExecutorService se;
+
+    private final CallMetrics watchChannelMetrics;
+    private final Timer userStage;
+    private final Timer permissionsStage;
+    private final Timer channelStage;
+
+    public SyncTvService(Scheduler scheduler) {
+        this(scheduler, Executors.newFixedThreadPool(5));
+    }
+
+    public SyncTvService(Scheduler scheduler, ExecutorService fanOut) {
+        this(scheduler, fanOut, new MetricRegistry(), "sync");
+    }
+
+    /**
+     * @param fanOut  runs the lookups that happen alongside the request
+     *                thread's, e.g. the channel lookup in watchChannelFast
+     * @param metrics where the lookups and the stages of watchChannel are
+     *                timed, the lookups under {name} and the stages as
+     *                {name}.watch-channel.*
+     */
+    public SyncTvService(Scheduler scheduler, ExecutorService fanOut, MetricRegistry metrics, String name) {
+        this.scheduler = scheduler;
+        this.se = fanOut;
+        this.users = UserService.userService(scheduler).instrumented(metrics, name);
+        this.permissions = PermissionsService.permissionsService(scheduler).instrumented(metrics, name);
+        this.channels = ChannelService.channelService(scheduler).instrumented(metrics, name);
+        this.watchChannelMetrics = CallMetrics.callMetrics(metrics, MetricRegistry.name(name, "watch-channel"));
+        this.userStage = CallMetrics.timer(metrics, MetricRegistry.name(name, "watch-channel", "user"));
+        this.permissionsStage = CallMetrics.timer(metrics, MetricRegistry.name(name, "watch-channel", "permissions"));
+        this.channelStage = CallMetrics.timer(metrics, MetricRegistry.name(name, "watch-channel", "channel"));
+    }
 
     @GET
     @Path("/user/{user}")
@@ -34,7 +73,7 @@ public class SyncTvService {
     public boolean userPermission(@PathParam("user") String userName,
                                   @PathParam("permission") String permission) {
         User user = users.lookupUser(userName);
-        Permissions p = permissions.permissions(user.getUserName());
+        Permissions p = permissions.permissions(user.getUserId());
         return p.hasPermission(permission);
     }
 
@@ -43,10 +82,23 @@ public class SyncTvService {
     public boolean watchChannel(@PathParam("user") String userName,
                                 @PathParam("permission") String permission,
                                 @PathParam("channel") String channel) {
-        User user = users.lookupUser(userName);
-        Permissions p = permissions.permissions(user.getUserName());
-        Channel c = channels.lookupChannel(channel);
-        return c != null && p.hasPermission(permission);
+        long start = watchChannelMetrics.start();
+        try {
+            User user = users.lookupUser(userName);
+            long userFound = System.nanoTime();
+            userStage.update(userFound - start, TimeUnit.NANOSECONDS);
+            Permissions p = permissions.permissions(user.getUserId());
+            long permissionsFound = System.nanoTime();
+            permissionsStage.update(permissionsFound - userFound, TimeUnit.NANOSECONDS);
+            Channel c = channels.lookupChannel(channel);
+            channelStage.update(System.nanoTime() - permissionsFound, TimeUnit.NANOSECONDS);
+            boolean allowed = c != null && p.hasPermission(permission);
+            watchChannelMetrics.success(start);
+            return allowed;
+        } catch (RuntimeException e) {
+            watchChannelMetrics.failure(start);
+            throw e;
+        }
 
     }
 
@@ -57,7 +109,7 @@ public class SyncTvService {
                                     @PathParam("channel") String channel) throws Exception {
         Future<Channel> fChannel = se.submit(() -> channels.lookupChannel(channel));
         User user = users.lookupUser(userName);
-        Permissions p = permissions.permissions(user.getUserName());
+        Permissions p = permissions.permissions(user.getUserId());
         Channel c = fChannel.get();
         return c != null && p.hasPermission(permission);
     }
@@ -68,16 +120,26 @@ public class SyncTvService {
                                        @PathParam("permission") String permission,
                                        @PathParam("channel") String channel) throws Exception {
 
-        Future<Result> fResult = se.submit(() -> {
-            Future<Channel> fChannel = se.submit(() -> channels.lookupChannel(channel));
-            User user = users.lookupUser(userName);
-            Permissions p = permissions.permissions(user.getUserName());
-            Channel c = fChannel.get();
-            return new Result(c, p);
-        });
+        // Only the request thread waits, and when the deadline passes the
+        // lookups still outstanding are dropped rather than left running
+        Deadline deadline = Deadline.after(
+                info.examples.batey.async.thirdparty.Config.WATCH_CHANNEL_BUDGET, TimeUnit.MILLISECONDS, scheduler);
+
+        CompletableFuture<Permissions> cPermission = users.lookupUserCompletable(userName, deadline)
+                .thenCompose(user -> permissions.permissionsCompletable(user.getUserId(), deadline));
+        CompletableFuture<Channel> cChannel = channels.lookupChannelCompletable(channel, deadline);
 
-        Result result = fResult.get(500, TimeUnit.MILLISECONDS);
+        Result result;
+        try {
+            result = deadline.track(cPermission.thenCombine(cChannel, (p, c) -> new Result(c, p))).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DeadlineExceededException) {
+                throw new ServiceUnavailableException(e.getCause().getMessage());
+            }
+            throw e;
+        } finally {
+            deadline.complete();
+        }
         return result.getChannel() != null && result.getPermissions().hasPermission(permission);
     }
-    private final ScheduledExecutorService se = Executors.newScheduledThreadPool(5);
 }
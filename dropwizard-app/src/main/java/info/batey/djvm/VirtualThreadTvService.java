@@ -0,0 +1,93 @@
+package info.batey.djvm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The synchronous service, unchanged, with each request run on its own
+ * virtual thread rather than a Jetty worker.
+ * <p>
+ * The blocking lookups sleep, which parks a virtual thread and frees its
+ * carrier, so the code reads like {@link SyncTvService} but a request
+ * only costs a Jetty thread for as long as it takes to hand it over.
+ */
+@Path("/sync-virtual")
+public class VirtualThreadTvService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadTvService.class);
+
+    private final SyncTvService sync;
+    private final ExecutorService executor;
+
+    public VirtualThreadTvService(SyncTvService sync, ExecutorService executor) {
+        this.sync = sync;
+        this.executor = executor;
+    }
+
+    @GET
+    @Path("/user/{user}")
+    public void user(@Suspended AsyncResponse asyncResponse,
+                     @PathParam("user") String userName) {
+        run(asyncResponse, () -> sync.user(userName));
+    }
+
+    @GET
+    @Path("/user/{user}/{permission}")
+    public void userPermission(@Suspended AsyncResponse asyncResponse,
+                               @PathParam("user") String userName,
+                               @PathParam("permission") String permission) {
+        run(asyncResponse, () -> sync.userPermission(userName, permission));
+    }
+
+    @GET
+    @Path("/watch-channel/{user}/{permission}/{channel}")
+    public void watchChannel(@Suspended AsyncResponse asyncResponse,
+                             @PathParam("user") String userName,
+                             @PathParam("permission") String permission,
+                             @PathParam("channel") String channel) {
+        run(asyncResponse, () -> sync.watchChannel(userName, permission, channel));
+    }
+
+    @GET
+    @Path("/watch-channel-fast/{user}/{permission}/{channel}")
+    public void watchChannelFast(@Suspended AsyncResponse asyncResponse,
+                                 @PathParam("user") String userName,
+                                 @PathParam("permission") String permission,
+                                 @PathParam("channel") String channel) {
+        run(asyncResponse, () -> sync.watchChannelFast(userName, permission, channel));
+    }
+
+    @GET
+    @Path("/watch-channel-timeout/{user}/{permission}/{channel}")
+    public void watchChannelTimeout(@Suspended AsyncResponse asyncResponse,
+                                    @PathParam("user") String userName,
+                                    @PathParam("permission") String permission,
+                                    @PathParam("channel") String channel) {
+        run(asyncResponse, () -> sync.watchChannelTimeout(userName, permission, channel));
+    }
+
+    private void run(AsyncResponse asyncResponse, Callable<?> request) {
+        try {
+            executor.execute(() -> {
+                try {
+                    asyncResponse.resume(request.call());
+                } catch (Exception e) {
+                    asyncResponse.resume(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Rejected request, shutting down?", e);
+            asyncResponse.resume(new ServiceUnavailableException());
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package info.batey.djvm;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Virtual threads when running on a JDK that has them (21+).
+ * <p>
+ * The app is built for Java 8 so the JDK 21 API is looked up reflectively.
+ * On older JDKs there's a fallback to a thread per task from a cached pool,
+ * which keeps the same semantics but not the scalability.
+ */
+final class VirtualThreads {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreads.class);
+
+    private VirtualThreads() {
+    }
+
+    static ExecutorService perTaskExecutor(String name) {
+        ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+        if (virtual != null) {
+            LOG.info("Running {} on virtual threads", name);
+            return virtual;
+        }
+        LOG.warn("Virtual threads need JDK 21+, running {} on platform threads", name);
+        return Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setNameFormat(name + "-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
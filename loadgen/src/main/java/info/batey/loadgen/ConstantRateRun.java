@@ -0,0 +1,138 @@
+package info.batey.loadgen;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.asynchttpclient.AsyncHttpClient;
+import org.asynchttpclient.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+/**
+ * Sends requests at a fixed arrival rate, an open model: the next request
+ * goes when it is due whether or not earlier ones have come back, the way
+ * independent users would.
+ * <p>
+ * Latency is measured from when a request was meant to be sent rather than
+ * when it actually was. If the generator itself falls behind, e.g. the
+ * machine stalls, the requests it couldn't send on time are charged for
+ * the wait, avoiding coordinated omission hiding exactly the latency we
+ * want to see.
+ * <p>
+ * Measured requests still outstanding once the drain timeout is up are
+ * errors, recorded with the latency they had reached by then, a lower
+ * bound on what they'd have taken. Leaving them out would hide the very
+ * slowest requests.
+ */
+public class ConstantRateRun {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConstantRateRun.class);
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(5);
+
+    private final AsyncHttpClient client;
+    private final String url;
+    private final int requestsPerSecond;
+
+    private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_MICROS, 3);
+    private final Set<Request> outstanding = ConcurrentHashMap.newKeySet();
+    private final LongAdder errors = new LongAdder();
+
+    public ConstantRateRun(AsyncHttpClient client, String url, int requestsPerSecond) {
+        this.client = client;
+        this.url = url;
+        this.requestsPerSecond = requestsPerSecond;
+    }
+
+    /**
+     * Runs for warmup then duration, only recording requests due to be sent
+     * after the warm up, then waits up to drainTimeout for the stragglers.
+     */
+    public RunResult run(long warmup, long duration, long drainTimeout, TimeUnit unit) {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / requestsPerSecond;
+        long start = System.nanoTime();
+        long measureFrom = start + unit.toNanos(warmup);
+        long end = measureFrom + unit.toNanos(duration);
+        long sent = 0;
+
+        for (long intended = start; intended < end; intended = start + (sent + 1) * intervalNanos, sent++) {
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            send(intended, intended >= measureFrom);
+        }
+        long elapsed = System.nanoTime() - measureFrom;
+
+        long drainBy = System.nanoTime() + unit.toNanos(drainTimeout);
+        while (!outstanding.isEmpty() && System.nanoTime() < drainBy) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        int stragglers = 0;
+        for (Request request : outstanding) {
+            if (request.finish(true) && request.measured) {
+                stragglers++;
+            }
+        }
+        if (stragglers > 0) {
+            LOG.warn("{} measured requests to {} still outstanding, counting them as errors", stragglers, url);
+        }
+
+        Histogram latencies = recorder.getIntervalHistogram();
+        return new RunResult(url, requestsPerSecond, latencies, errors.sum(), elapsed);
+    }
+
+    private void send(long intended, boolean measured) {
+        Request request = new Request(intended, measured);
+        outstanding.add(request);
+        client.prepareGet(url).execute().toCompletableFuture().whenComplete(request);
+    }
+
+    private static final AtomicIntegerFieldUpdater<Request> FINISHED =
+            AtomicIntegerFieldUpdater.newUpdater(Request.class, "finished");
+
+    /**
+     * One request, finished either by its response or by the drain timeout,
+     * whichever comes first.
+     */
+    private final class Request implements BiConsumer<Response, Throwable> {
+        private final long intended;
+        private final boolean measured;
+        volatile int finished;
+
+        private Request(long intended, boolean measured) {
+            this.intended = intended;
+            this.measured = measured;
+        }
+
+        @Override
+        public void accept(Response response, Throwable error) {
+            finish(error != null || response.getStatusCode() >= 400);
+        }
+
+        /**
+         * @return false if it had already finished
+         */
+        boolean finish(boolean failed) {
+            if (!FINISHED.compareAndSet(this, 0, 1)) {
+                return false;
+            }
+            long latency = System.nanoTime() - intended;
+            outstanding.remove(this);
+            if (measured) {
+                recorder.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(latency), HIGHEST_TRACKABLE_MICROS));
+                if (failed) {
+                    errors.increment();
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package info.batey.loadgen;
+
+import org.asynchttpclient.AsyncHttpClient;
+import org.asynchttpclient.DefaultAsyncHttpClient;
+import org.asynchttpclient.DefaultAsyncHttpClientConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives the ExampleApplication endpoints at increasing arrival rates and
+ * reports how each scenario's latency holds up.
+ * <p>
+ * Expects the app (and WireMock for the callout scenario) to be running
+ * locally. Configured with system properties:
+ * <ul>
+ * <li>loadgen.target: base url, default http://localhost:9080</li>
+ * <li>loadgen.scenarios: comma separated {@link Scenario}s, default sync and async watch channel</li>
+ * <li>loadgen.rates: comma separated requests per second, default 10,50,100,200</li>
+ * <li>loadgen.warmup and loadgen.duration: seconds per rate, default 5 and 30</li>
+ * <li>loadgen.timeout: request timeout in milliseconds, default 10000</li>
+ * <li>loadgen.reports: where to write the report, default build/reports/loadgen</li>
+ * </ul>
+ */
+public class LoadGenerator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoadGenerator.class);
+
+    public static void main(String[] args) throws Exception {
+        String target = System.getProperty("loadgen.target", "http://localhost:9080");
+        List<Scenario> scenarios = scenarios(System.getProperty("loadgen.scenarios", "SYNC_WATCH_CHANNEL,ASYNC_WATCH_CHANNEL"));
+        List<Integer> rates = rates(System.getProperty("loadgen.rates", "10,50,100,200"));
+        long warmup = Long.getLong("loadgen.warmup", 5);
+        long duration = Long.getLong("loadgen.duration", 30);
+        int timeout = Integer.getInteger("loadgen.timeout", 10000);
+        File reports = new File(System.getProperty("loadgen.reports", "build/reports/loadgen"));
+
+        DefaultAsyncHttpClientConfig config = new DefaultAsyncHttpClientConfig.Builder()
+                .setRequestTimeout(timeout)
+                .setKeepAlive(true)
+                .build();
+        Report report = new Report();
+        try (AsyncHttpClient client = new DefaultAsyncHttpClient(config)) {
+            for (int rate : rates) {
+                for (Scenario scenario : scenarios) {
+                    LOG.info("{} at {} requests/s for {}s", scenario, rate, duration);
+                    ConstantRateRun run = new ConstantRateRun(client, target + scenario.path(), rate);
+                    report.add(scenario, run.run(TimeUnit.SECONDS.toMillis(warmup), TimeUnit.SECONDS.toMillis(duration),
+                            timeout, TimeUnit.MILLISECONDS));
+                }
+            }
+        }
+
+        report.print(System.out);
+        report.write(reports);
+        LOG.info("Report written to {}", reports.getAbsolutePath());
+    }
+
+    private static List<Scenario> scenarios(String names) {
+        List<Scenario> scenarios = new ArrayList<>();
+        for (String name : names.split(",")) {
+            scenarios.add(Scenario.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+        }
+        return scenarios;
+    }
+
+    private static List<Integer> rates(String rates) {
+        List<Integer> parsed = new ArrayList<>();
+        for (String rate : rates.split(",")) {
+            parsed.add(Integer.parseInt(rate.trim()));
+        }
+        return parsed;
+    }
+}
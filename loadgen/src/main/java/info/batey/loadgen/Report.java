@@ -0,0 +1,73 @@
+package info.batey.loadgen;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Lines up the runs for each scenario at each rate so sync and async can
+ * be compared side by side as the load goes up.
+ */
+public class Report {
+
+    private static final String HEADER = String.format(Locale.ROOT, "%-22s %7s %9s %8s %7s %9s %9s %9s %9s %9s %11s",
+            "scenario", "rate/s", "achieved", "requests", "errors",
+            "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "concurrency");
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    public void add(Scenario scenario, RunResult result) {
+        entries.add(new Entry(scenario, result));
+    }
+
+    public void print(PrintStream out) {
+        out.println(HEADER);
+        int rate = -1;
+        for (Entry entry : entries) {
+            RunResult result = entry.result;
+            if (rate != -1 && rate != result.getTargetRate()) {
+                out.println();
+            }
+            rate = result.getTargetRate();
+            out.println(String.format(Locale.ROOT, "%-22s %7d %9.1f %8d %7d %9.1f %9.1f %9.1f %9.1f %9.1f %11.1f",
+                    entry.scenario, result.getTargetRate(), result.achievedRate(),
+                    result.getRequests(), result.getErrors(),
+                    result.percentileMillis(50), result.percentileMillis(90),
+                    result.percentileMillis(99), result.percentileMillis(99.9),
+                    result.percentileMillis(100), result.meanConcurrency()));
+        }
+    }
+
+    /**
+     * The summary plus a full percentile distribution per run, in the .hgrm
+     * format the HdrHistogram plotter takes.
+     */
+    public void write(File directory) throws FileNotFoundException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalStateException("Unable to create " + directory);
+        }
+        try (PrintStream summary = new PrintStream(new File(directory, "summary.txt"))) {
+            print(summary);
+        }
+        for (Entry entry : entries) {
+            String name = entry.scenario.name().toLowerCase(Locale.ROOT) + "-" + entry.result.getTargetRate() + ".hgrm";
+            try (PrintStream hgrm = new PrintStream(new File(directory, name))) {
+                // Recorded in micros, reported in millis
+                entry.result.getLatencies().outputPercentileDistribution(hgrm, 1000.0);
+            }
+        }
+    }
+
+    private static class Entry {
+        private final Scenario scenario;
+        private final RunResult result;
+
+        private Entry(Scenario scenario, RunResult result) {
+            this.scenario = scenario;
+            this.result = result;
+        }
+    }
+}
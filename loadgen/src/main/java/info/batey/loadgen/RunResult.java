@@ -0,0 +1,60 @@
+package info.batey.loadgen;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The measured part of one {@link ConstantRateRun}. Latencies are in
+ * microseconds.
+ */
+public class RunResult {
+    private final String url;
+    private final int targetRate;
+    private final Histogram latencies;
+    private final long errors;
+    private final long elapsedNanos;
+
+    public RunResult(String url, int targetRate, Histogram latencies, long errors, long elapsedNanos) {
+        this.url = url;
+        this.targetRate = targetRate;
+        this.latencies = latencies;
+        this.errors = errors;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public int getTargetRate() {
+        return targetRate;
+    }
+
+    public Histogram getLatencies() {
+        return latencies;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public long getRequests() {
+        return latencies.getTotalCount();
+    }
+
+    public double achievedRate() {
+        return getRequests() / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    public double percentileMillis(double percentile) {
+        return latencies.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    /**
+     * Average number of requests in flight, by Little's law.
+     */
+    public double meanConcurrency() {
+        return achievedRate() * latencies.getMean() / TimeUnit.SECONDS.toMicros(1);
+    }
+}
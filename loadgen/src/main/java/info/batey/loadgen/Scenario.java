@@ -0,0 +1,24 @@
+package info.batey.loadgen;
+
+/**
+ * The ExampleApplication endpoints worth comparing under load.
+ */
+public enum Scenario {
+    SYNC_WATCH_CHANNEL("/sync/watch-channel/chbatey/SPORTS/SkySportsOne"),
+    SYNC_VIRTUAL_WATCH_CHANNEL("/sync-virtual/watch-channel/chbatey/SPORTS/SkySportsOne"),
+    ASYNC_WATCH_CHANNEL("/async/watch-channel/chbatey/SPORTS/SkySportsOne"),
+    REMOTE_WATCH_CHANNEL("/remote/watch-channel/chbatey/SPORTS/SkySportsOne"),
+    FUNKY_BUSINESS("/funky-business-stuff"),
+    CALLOUT("/callout"),
+    CALLOUT_ASYNC("/callout-async");
+
+    private final String path;
+
+    Scenario(String path) {
+        this.path = path;
+    }
+
+    public String path() {
+        return path;
+    }
+}
@@ -0,0 +1,114 @@
+package info.examples.batey.async.batching;
+
+import info.examples.batey.async.scheduling.Scheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Collects individual lookups and dispatches them as a single bulk call,
+ * DataLoader style.
+ * <p>
+ * A batch is sent when it reaches maxBatchSize distinct keys or when
+ * the window since the first key was added expires, whichever happens first.
+ * Asking for the same key twice within a window shares the same lookup,
+ * but each caller gets their own dependent future so one caller cancelling
+ * doesn't cancel the lookup for everyone else.
+ * <p>
+ * Keys missing from the bulk result complete with null, the same as
+ * the single lookups do.
+ */
+public class BatchLoader<K, V> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchLoader.class);
+
+    private final Function<Collection<K>, CompletableFuture<Map<K, V>>> bulkLookup;
+    private final int maxBatchSize;
+    private final long windowNanos;
+    private final Scheduler scheduler;
+
+    private final Object lock = new Object();
+    private Batch<K, V> pending;
+
+    public BatchLoader(Function<Collection<K>, CompletableFuture<Map<K, V>>> bulkLookup,
+                       int maxBatchSize,
+                       long window, TimeUnit unit,
+                       Scheduler scheduler) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1: " + maxBatchSize);
+        }
+        this.bulkLookup = bulkLookup;
+        this.maxBatchSize = maxBatchSize;
+        this.windowNanos = unit.toNanos(window);
+        this.scheduler = scheduler;
+    }
+
+    public CompletableFuture<V> load(K key) {
+        CompletableFuture<V> result;
+        Batch<K, V> full = null;
+        synchronized (lock) {
+            if (pending == null) {
+                Batch<K, V> batch = new Batch<>();
+                pending = batch;
+                if (maxBatchSize > 1) {
+                    batch.timer = scheduler.schedule(() -> flush(batch), windowNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+            result = pending.waiting.computeIfAbsent(key, k -> new CompletableFuture<>())
+                    .thenApply(Function.identity());
+            if (pending.waiting.size() >= maxBatchSize) {
+                full = pending;
+                pending = null;
+            }
+        }
+        if (full != null) {
+            if (full.timer != null) {
+                full.timer.cancel(false);
+            }
+            dispatch(full);
+        }
+        return result;
+    }
+
+    private void flush(Batch<K, V> batch) {
+        synchronized (lock) {
+            if (pending != batch) {
+                // Already went out because it filled up
+                return;
+            }
+            pending = null;
+        }
+        dispatch(batch);
+    }
+
+    private void dispatch(Batch<K, V> batch) {
+        LOG.debug("Dispatching batch of {} keys", batch.waiting.size());
+        CompletableFuture<Map<K, V>> bulk;
+        try {
+            bulk = bulkLookup.apply(batch.waiting.keySet());
+        } catch (RuntimeException e) {
+            bulk = new CompletableFuture<>();
+            bulk.completeExceptionally(e);
+        }
+        bulk.whenComplete((values, error) -> {
+            for (Map.Entry<K, CompletableFuture<V>> waiting : batch.waiting.entrySet()) {
+                if (error != null) {
+                    waiting.getValue().completeExceptionally(error);
+                } else {
+                    waiting.getValue().complete(values.get(waiting.getKey()));
+                }
+            }
+        });
+    }
+
+    private static class Batch<K, V> {
+        private final Map<K, CompletableFuture<V>> waiting = new LinkedHashMap<>();
+        private CompletableFuture<Void> timer;
+    }
+}
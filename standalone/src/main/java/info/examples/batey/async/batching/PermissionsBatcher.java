@@ -0,0 +1,91 @@
+package info.examples.batey.async.batching;
+
+import info.examples.batey.async.scheduling.Scheduler;
+import info.examples.batey.async.thirdparty.Permissions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Coalesces concurrent single user id permission lookups into one bulk
+ * call per tick.
+ * <p>
+ * The first request after a flush starts the tick, everything that arrives
+ * before it fires goes in the same bulk call. Ids are kept in a plain int[]
+ * alongside the waiting futures so nothing is boxed on the way in or out.
+ */
+public class PermissionsBatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PermissionsBatcher.class);
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Function<int[], CompletableFuture<Permissions[]>> bulkLookup;
+    private final long tickNanos;
+    private final Scheduler scheduler;
+
+    private final Object lock = new Object();
+    private int[] userIds = new int[INITIAL_CAPACITY];
+    private List<CompletableFuture<Permissions>> waiting = new ArrayList<>(INITIAL_CAPACITY);
+    private int size;
+
+    public PermissionsBatcher(Function<int[], CompletableFuture<Permissions[]>> bulkLookup,
+                              long tick, TimeUnit unit,
+                              Scheduler scheduler) {
+        this.bulkLookup = bulkLookup;
+        this.tickNanos = unit.toNanos(tick);
+        this.scheduler = scheduler;
+    }
+
+    public CompletableFuture<Permissions> permissionsCompletable(int userId) {
+        CompletableFuture<Permissions> result = new CompletableFuture<>();
+        synchronized (lock) {
+            if (size == userIds.length) {
+                userIds = Arrays.copyOf(userIds, size * 2);
+            }
+            userIds[size] = userId;
+            waiting.add(result);
+            size++;
+            if (size == 1) {
+                scheduler.schedule(this::flush, tickNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        return result;
+    }
+
+    private void flush() {
+        int[] batchIds;
+        List<CompletableFuture<Permissions>> batchWaiting;
+        synchronized (lock) {
+            batchIds = Arrays.copyOf(userIds, size);
+            // The batch takes the list, the next one starts a new list
+            batchWaiting = waiting;
+            waiting = new ArrayList<>(INITIAL_CAPACITY);
+            size = 0;
+        }
+        LOG.debug("Dispatching permissions batch of {} ids", batchIds.length);
+
+        CompletableFuture<Permissions[]> bulk;
+        try {
+            bulk = bulkLookup.apply(batchIds);
+        } catch (RuntimeException e) {
+            bulk = new CompletableFuture<>();
+            bulk.completeExceptionally(e);
+        }
+        bulk.whenComplete((found, error) -> {
+            for (int i = 0; i < batchWaiting.size(); i++) {
+                if (error != null) {
+                    batchWaiting.get(i).completeExceptionally(error);
+                } else {
+                    batchWaiting.get(i).complete(found[i]);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,35 @@
+package info.examples.batey.async.blocking;
+
+/**
+ * A thread that should never block seen stuck, carrying the stack it was
+ * stuck in so it logs like any other exception. Never thrown on the
+ * blocked thread itself.
+ */
+public class BlockedThreadException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String threadName;
+    private final long blockedMillis;
+
+    BlockedThreadException(String threadName, long blockedMillis, StackTraceElement[] stack) {
+        super("Thread " + threadName + " blocked for at least " + blockedMillis + "ms");
+        this.threadName = threadName;
+        this.blockedMillis = blockedMillis;
+        setStackTrace(stack);
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+
+    public long getBlockedMillis() {
+        return blockedMillis;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        // The interesting stack is the blocked thread's, set in the constructor
+        return this;
+    }
+}
@@ -0,0 +1,348 @@
+package info.examples.batey.async.blocking;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Notices when a thread that should never block, an event loop or an I/O
+ * thread, gets stuck, and logs where.
+ * <p>
+ * Threads of executors passed through {@link #monitor(ExecutorService)}
+ * mark when each task starts and finishes, two volatile writes. Executors
+ * whose tasks mark themselves, like the Scheduler's event loop, use the
+ * running thread's {@link #probe()} instead. A sampler
+ * thread checks every sample interval for a task that has been running
+ * longer than the threshold, so a stray get() or sleep is caught however
+ * it blocks, even spinning.
+ * <p>
+ * Threads we don't run tasks on, e.g. the HTTP client's I/O threads, are
+ * picked by name with {@link #watchThreads(String)}. Those are only
+ * flagged when they sit in the same WAITING, TIMED_WAITING or BLOCKED
+ * state past the threshold, which the JVM's wait counts tell apart from
+ * a series of short waits; waiting for work in a pool is ignored. Their
+ * ids are looked up by name when a prefix is added and every few seconds
+ * after, so a sample only asks the JVM about those threads rather than
+ * taking a JVM-wide thread dump.
+ * <p>
+ * Each stuck task or wait is reported once: logged with the blocked
+ * thread's stack, counted, and kept for {@link #assertNoBlocking()} so
+ * tests can fail when async code blocks.
+ */
+public class BlockingWatchdog implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BlockingWatchdog.class);
+
+    private static final int MAX_KEPT = 16;
+    private static final int IDLE_CHECK_DEPTH = 16;
+    private static final long WATCHED_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * Frames of threads waiting for something to do rather than blocked
+     * doing it.
+     */
+    private static final String[] IDLE_FRAMES = {
+            "java.util.concurrent.ThreadPoolExecutor.getTask",
+            "java.util.concurrent.ScheduledThreadPoolExecutor$DelayedWorkQueue.take",
+            "io.netty.util.concurrent.SingleThreadEventExecutor.takeTask",
+            "io.netty.util.HashedWheelTimer$Worker.waitForNextTick",
+    };
+
+    private final long thresholdNanos;
+    private final ThreadLocal<Probe> probes = ThreadLocal.withInitial(this::newProbe);
+    private final Set<Probe> monitored = ConcurrentHashMap.newKeySet();
+    private final List<String> watchedPrefixes = new CopyOnWriteArrayList<>();
+    private volatile boolean watchedStale;
+    // Sampler only
+    private long[] watchedIds = new long[0];
+    private long watchedResolvedAt;
+    private final Map<Long, Wait> waits = new HashMap<>();
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final LongAdder detections = new LongAdder();
+    private final Deque<BlockedThreadException> recent = new ConcurrentLinkedDeque<>();
+    private final Counter detectionsCounter;
+    private final ScheduledExecutorService sampler;
+
+    /**
+     * A watchdog that samples every half threshold.
+     *
+     * @param metrics where to count detections, as blocking-watchdog.detections,
+     *                or null
+     */
+    public static BlockingWatchdog start(long threshold, TimeUnit unit, MetricRegistry metrics) {
+        BlockingWatchdog watchdog = new BlockingWatchdog(threshold, unit, metrics, true);
+        long interval = Math.max(1, unit.toMillis(threshold) / 2);
+        watchdog.sampler.scheduleWithFixedDelay(watchdog::sampleSafely, interval, interval, TimeUnit.MILLISECONDS);
+        return watchdog;
+    }
+
+    /**
+     * A watchdog that only samples when {@link #sample()} is called, for
+     * tests that want to decide when to look.
+     */
+    public static BlockingWatchdog manual(long threshold, TimeUnit unit) {
+        return new BlockingWatchdog(threshold, unit, null, false);
+    }
+
+    private BlockingWatchdog(long threshold, TimeUnit unit, MetricRegistry metrics, boolean sampling) {
+        this.thresholdNanos = unit.toNanos(threshold);
+        this.detectionsCounter = metrics == null ? null
+                : metrics.counter(MetricRegistry.name("blocking-watchdog", "detections"));
+        this.sampler = sampling ? Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("blocking-watchdog")
+                .setDaemon(true)
+                .build()) : null;
+    }
+
+    /**
+     * Runs the executor's tasks with their start and finish marked so the
+     * watchdog can see one that is taking too long.
+     */
+    public ExecutorService monitor(ExecutorService executor) {
+        return new MonitoredExecutorService(executor, this);
+    }
+
+    /**
+     * Also watch threads whose names start with the prefix, e.g. the HTTP
+     * client's I/O threads.
+     */
+    public BlockingWatchdog watchThreads(String namePrefix) {
+        watchedPrefixes.add(namePrefix);
+        watchedStale = true;
+        return this;
+    }
+
+    public long detections() {
+        return detections.sum();
+    }
+
+    /**
+     * The most recent detections, oldest first.
+     */
+    public List<BlockedThreadException> recentDetections() {
+        return new ArrayList<>(recent);
+    }
+
+    /**
+     * Samples once more and fails, with the first blocked stack as the
+     * cause, if anything has been seen blocking since the last reset.
+     */
+    public void assertNoBlocking() {
+        sample();
+        BlockedThreadException first = recent.peekFirst();
+        if (first != null) {
+            AssertionError error = new AssertionError(detections() + " blocking call(s) detected, first: " + first.getMessage());
+            error.initCause(first);
+            throw error;
+        }
+    }
+
+    public void reset() {
+        recent.clear();
+    }
+
+    /**
+     * One look at every monitored and watched thread. Normally called by
+     * the sampler thread.
+     */
+    public synchronized void sample() {
+        long now = System.nanoTime();
+        for (Probe probe : monitored) {
+            probe.check(now);
+        }
+        if (!watchedPrefixes.isEmpty()) {
+            sampleWatchedThreads(now);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+        }
+    }
+
+    /**
+     * The current thread's marks, which the watchdog checks from now on.
+     */
+    public Probe probe() {
+        return probes.get();
+    }
+
+    private Probe newProbe() {
+        Probe probe = new Probe(Thread.currentThread());
+        monitored.add(probe);
+        return probe;
+    }
+
+    private void sampleSafely() {
+        try {
+            sample();
+        } catch (RuntimeException e) {
+            LOG.warn("Blocking watchdog sample failed", e);
+        }
+    }
+
+    private void sampleWatchedThreads(long now) {
+        Set<Long> seen = new HashSet<>();
+        for (ThreadInfo info : threads.getThreadInfo(watchedIds(now), 0)) {
+            // null once the thread has exited
+            if (info == null || !isWaiting(info.getThreadState())) {
+                continue;
+            }
+            long id = info.getThreadId();
+            long waitCount = info.getWaitedCount() + info.getBlockedCount();
+            Wait wait = waits.get(id);
+            if (wait == null || wait.count != waitCount) {
+                // A new wait since the last sample
+                wait = new Wait(waitCount, now);
+                waits.put(id, wait);
+            }
+            seen.add(id);
+            if (!wait.reported && now - wait.since > thresholdNanos) {
+                ThreadInfo withStack = threads.getThreadInfo(id, Integer.MAX_VALUE);
+                if (withStack != null && !isIdle(withStack.getStackTrace())) {
+                    report(info.getThreadName(), now - wait.since, withStack.getStackTrace());
+                }
+                wait.reported = true;
+            }
+        }
+        waits.keySet().retainAll(seen);
+    }
+
+    /**
+     * Ids of the threads named with a watched prefix, looked up again when
+     * a prefix is added or they're over WATCHED_REFRESH_NANOS old, so new
+     * threads, e.g. a lazily started I/O thread, are picked up.
+     */
+    private long[] watchedIds(long now) {
+        if (watchedStale || now - watchedResolvedAt > WATCHED_REFRESH_NANOS) {
+            watchedStale = false;
+            watchedResolvedAt = now;
+            watchedIds = resolveWatchedIds();
+        }
+        return watchedIds;
+    }
+
+    private long[] resolveWatchedIds() {
+        ThreadGroup root = Thread.currentThread().getThreadGroup();
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        Thread[] all = new Thread[root.activeCount() + 16];
+        int count;
+        while ((count = root.enumerate(all, true)) == all.length) {
+            all = new Thread[all.length * 2];
+        }
+        long[] ids = new long[count];
+        int watched = 0;
+        for (int i = 0; i < count; i++) {
+            if (isWatched(all[i].getName())) {
+                ids[watched++] = all[i].getId();
+            }
+        }
+        return Arrays.copyOf(ids, watched);
+    }
+
+    private boolean isWatched(String threadName) {
+        for (String prefix : watchedPrefixes) {
+            if (threadName.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isWaiting(Thread.State state) {
+        return state == Thread.State.WAITING || state == Thread.State.TIMED_WAITING || state == Thread.State.BLOCKED;
+    }
+
+    private static boolean isIdle(StackTraceElement[] stack) {
+        for (int i = 0; i < Math.min(stack.length, IDLE_CHECK_DEPTH); i++) {
+            String frame = stack[i].getClassName() + "." + stack[i].getMethodName();
+            for (String idle : IDLE_FRAMES) {
+                if (frame.equals(idle)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void report(String threadName, long blockedNanos, StackTraceElement[] stack) {
+        BlockedThreadException blocked = new BlockedThreadException(threadName,
+                TimeUnit.NANOSECONDS.toMillis(blockedNanos), stack);
+        detections.increment();
+        if (detectionsCounter != null) {
+            detectionsCounter.inc();
+        }
+        recent.addLast(blocked);
+        while (recent.size() > MAX_KEPT) {
+            recent.pollFirst();
+        }
+        LOG.warn("Blocking call on a non-blocking thread", blocked);
+    }
+
+    private static final class Wait {
+        private final long count;
+        private final long since;
+        private boolean reported;
+
+        private Wait(long count, long since) {
+            this.count = count;
+            this.since = since;
+        }
+    }
+
+    /**
+     * What one monitored thread is doing. Written only by its thread, read
+     * by the sampler.
+     */
+    public final class Probe {
+        private final Thread thread;
+        private volatile long task;
+        private volatile long started;
+        // Sampler only
+        private long reportedTask;
+
+        private Probe(Thread thread) {
+            this.thread = thread;
+        }
+
+        public void taskStarted() {
+            task++;
+            started = System.nanoTime();
+        }
+
+        public void taskFinished() {
+            started = 0;
+        }
+
+        private void check(long now) {
+            if (!thread.isAlive()) {
+                monitored.remove(this);
+                return;
+            }
+            long current = task;
+            long start = started;
+            if (start == 0 || current == reportedTask || now - start <= thresholdNanos) {
+                return;
+            }
+            StackTraceElement[] stack = thread.getStackTrace();
+            // Only if it's still the same task, otherwise the stack is innocent
+            if (task == current && started == start) {
+                reportedTask = current;
+                report(thread.getName(), now - start, stack);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package info.examples.batey.async.blocking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Marks each task's start and finish for the {@link BlockingWatchdog}.
+ */
+class MonitoredExecutorService extends AbstractExecutorService {
+
+    private final ExecutorService delegate;
+    private final BlockingWatchdog watchdog;
+
+    MonitoredExecutorService(ExecutorService delegate, BlockingWatchdog watchdog) {
+        this.delegate = delegate;
+        this.watchdog = watchdog;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        delegate.execute(new MonitoredTask(command));
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    /**
+     * The tasks as they were submitted, not as they were queued.
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> neverRan = delegate.shutdownNow();
+        List<Runnable> submitted = new ArrayList<>(neverRan.size());
+        for (Runnable task : neverRan) {
+            submitted.add(task instanceof MonitoredTask ? ((MonitoredTask) task).task : task);
+        }
+        return submitted;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    private class MonitoredTask implements Runnable {
+        private final Runnable task;
+
+        private MonitoredTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            BlockingWatchdog.Probe probe = watchdog.probe();
+            probe.taskStarted();
+            try {
+                task.run();
+            } finally {
+                probe.taskFinished();
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package info.examples.batey.async.bulkhead;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Caps the number of calls in flight to one dependency.
+ * <p>
+ * Up to maxConcurrent calls run at once, the next maxQueued wait for one of
+ * them to finish and anything beyond that fails straight away with a
+ * {@link BulkheadFullException}. However slow the dependency gets the
+ * memory it can tie up, pending futures and scheduled tasks, is bounded,
+ * and callers of other dependencies carry on unaffected.
+ * <p>
+ * A queued call isn't started until it gets a slot, so cancelling it while
+ * it waits means it never reaches the dependency and gives up its place in
+ * the queue. Cancelling a running call cancels the dependency's future.
+ */
+public class Bulkhead {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Bulkhead.class);
+
+    private final String name;
+    private final int maxConcurrent;
+    private final int maxQueued;
+
+    private final Object lock = new Object();
+    private final ArrayDeque<Waiting<?>> queue = new ArrayDeque<>();
+    private int inFlight;
+    private int peakInFlight;
+    private long rejected;
+
+    public Bulkhead(String name, int maxConcurrent, int maxQueued) {
+        if (maxConcurrent < 1 || maxQueued < 0) {
+            throw new IllegalArgumentException("Bulkhead " + name + " needs at least one slot and a non negative queue");
+        }
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+    }
+
+    public <T> CompletableFuture<T> call(Supplier<CompletableFuture<T>> call) {
+        Waiting<T> waiting = new Waiting<>(call);
+        boolean queued = false;
+        synchronized (lock) {
+            if (inFlight < maxConcurrent) {
+                acquire();
+            } else if (queue.size() < maxQueued) {
+                queue.add(waiting);
+                waiting.queued = true;
+                queued = true;
+            } else {
+                rejected++;
+                LOG.debug("Bulkhead {} full, rejecting call", name);
+                waiting.result.completeExceptionally(new BulkheadFullException(
+                        "Bulkhead " + name + " full: " + inFlight + " in flight, " + queue.size() + " queued"));
+                return waiting.result;
+            }
+        }
+        if (queued) {
+            // Finished without starting, e.g. cancelled: leave the queue now
+            // rather than when a slot frees up
+            waiting.result.whenComplete((value, error) -> dequeue(waiting));
+        } else if (waiting.start()) {
+            release();
+        }
+        return waiting.result;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int inFlight() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    /**
+     * Most calls that have been in flight at once since this was created.
+     */
+    public int peakInFlight() {
+        synchronized (lock) {
+            return peakInFlight;
+        }
+    }
+
+    public int queued() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    public long rejected() {
+        synchronized (lock) {
+            return rejected;
+        }
+    }
+
+    private void dequeue(Waiting<?> waiting) {
+        synchronized (lock) {
+            if (waiting.queued) {
+                waiting.queued = false;
+                queue.remove(waiting);
+            }
+        }
+    }
+
+    private void acquire() {
+        inFlight++;
+        if (inFlight > peakInFlight) {
+            peakInFlight = inFlight;
+        }
+    }
+
+    /**
+     * Hands the slot to the next queued call that still wants it, or gives
+     * it back. Calls that finish as they start, e.g. against an open
+     * circuit, hand the slot on from this loop rather than from their own
+     * completion, so draining a queue of them doesn't recurse once per
+     * call.
+     */
+    private void release() {
+        Waiting<?> next;
+        do {
+            synchronized (lock) {
+                do {
+                    next = queue.poll();
+                    if (next != null) {
+                        next.queued = false;
+                    }
+                } while (next != null && next.result.isDone());
+                if (next == null) {
+                    inFlight--;
+                    return;
+                }
+            }
+        } while (next.start());
+    }
+
+    private class Waiting<T> {
+        private final Supplier<CompletableFuture<T>> call;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        // Guarded by lock
+        private boolean queued;
+
+        private Waiting(Supplier<CompletableFuture<T>> call) {
+            this.call = call;
+        }
+
+        /**
+         * @return true if the call has already finished, leaving the caller
+         * to {@link #release()} its slot
+         */
+        private boolean start() {
+            CompletableFuture<T> running;
+            try {
+                running = call.get();
+            } catch (RuntimeException e) {
+                running = new CompletableFuture<>();
+                running.completeExceptionally(e);
+            }
+            CompletableFuture<T> dependency = running;
+            if (dependency.isDone()) {
+                dependency.whenComplete(this::finish);
+                return true;
+            }
+            result.whenComplete((value, error) -> {
+                if (result.isCancelled()) {
+                    dependency.cancel(false);
+                }
+            });
+            dependency.whenComplete((value, error) -> {
+                release();
+                finish(value, error);
+            });
+            return false;
+        }
+
+        private void finish(T value, Throwable error) {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(value);
+            }
+        }
+    }
+}
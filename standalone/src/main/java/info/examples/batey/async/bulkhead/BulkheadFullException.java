@@ -0,0 +1,11 @@
+package info.examples.batey.async.bulkhead;
+
+import java.util.concurrent.RejectedExecutionException;
+
+public class BulkheadFullException extends RejectedExecutionException {
+    private static final long serialVersionUID = 1L;
+
+    public BulkheadFullException(String message) {
+        super(message);
+    }
+}
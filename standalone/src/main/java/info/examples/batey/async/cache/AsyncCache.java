@@ -0,0 +1,213 @@
+package info.examples.batey.async.cache;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.Weigher;
+import info.examples.batey.async.singleflight.SingleFlight;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A cache in front of an asynchronous lookup.
+ * <p>
+ * Loaded values are held in a Guava cache which takes care of size/weight
+ * bounds and expiry. Loads that are still in flight go through a
+ * {@link SingleFlight} so concurrent misses for the same key only go to the
+ * backend once.
+ * <p>
+ * If refreshAfterWrite is set then the first hit on an entry older than that
+ * starts a reload in the background while still returning the current value,
+ * so hot keys are replaced before they expire rather than everyone
+ * waiting on a miss.
+ */
+public class AsyncCache<K, V> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncCache.class);
+
+    public static <K, V> Builder<K, V> newBuilder() {
+        return new Builder<>();
+    }
+
+    private final Function<K, CompletableFuture<V>> loader;
+    private final Cache<K, Entry<V>> entries;
+    private final SingleFlight<K, V> loads = new SingleFlight<>(this::loadAndStore);
+    private final long refreshAfterNanos;
+    private final Ticker ticker;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loadSuccesses = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder totalLoadNanos = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+
+    private AsyncCache(Builder<K, V> builder, Function<K, CompletableFuture<V>> loader) {
+        this.loader = loader;
+        this.ticker = builder.ticker;
+        this.refreshAfterNanos = builder.refreshAfterNanos;
+
+        CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder()
+                .ticker(builder.ticker)
+                .removalListener(notification -> {
+                    if (notification.getCause() != RemovalCause.EXPLICIT
+                            && notification.getCause() != RemovalCause.REPLACED) {
+                        evictions.increment();
+                    }
+                });
+        if (builder.maximumSize >= 0) {
+            cacheBuilder.maximumSize(builder.maximumSize);
+        }
+        if (builder.maximumWeight >= 0) {
+            Weigher<K, V> weigher = builder.weigher;
+            cacheBuilder.maximumWeight(builder.maximumWeight)
+                    .weigher((K key, Entry<V> entry) -> weigher.weigh(key, entry.value));
+        }
+        if (builder.expireAfterWriteNanos > 0) {
+            cacheBuilder.expireAfterWrite(builder.expireAfterWriteNanos, TimeUnit.NANOSECONDS);
+        }
+        this.entries = cacheBuilder.build();
+    }
+
+    public CompletableFuture<V> get(K key) {
+        Entry<V> entry = entries.getIfPresent(key);
+        if (entry == null) {
+            misses.increment();
+            return loads.get(key);
+        }
+        hits.increment();
+        if (refreshAfterNanos > 0
+                && ticker.read() - entry.loadedAt >= refreshAfterNanos
+                && REFRESHING.compareAndSet(entry, 0, 1)) {
+            refreshes.increment();
+            LOG.debug("Refreshing {} ahead of expiry", key);
+            loads.get(key).whenComplete((value, error) -> {
+                if (error != null) {
+                    // let the next hit have another go
+                    entry.refreshing = 0;
+                }
+            });
+        }
+        return entry.future;
+    }
+
+    public void invalidate(K key) {
+        entries.invalidate(key);
+    }
+
+    public long size() {
+        return entries.size();
+    }
+
+    /**
+     * Load time is from asking the loader to the returned future completing.
+     */
+    public CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), loadSuccesses.sum(), loadFailures.sum(),
+                totalLoadNanos.sum(), evictions.sum());
+    }
+
+    public long refreshCount() {
+        return refreshes.sum();
+    }
+
+    private CompletableFuture<V> loadAndStore(K key) {
+        long start = ticker.read();
+        CompletableFuture<V> load;
+        try {
+            load = loader.apply(key);
+        } catch (RuntimeException e) {
+            load = new CompletableFuture<>();
+            load.completeExceptionally(e);
+        }
+        // Stored before the single flight lets go of the key so there is
+        // no gap where a lookup finds neither
+        return load.whenComplete((value, error) -> {
+            long now = ticker.read();
+            totalLoadNanos.add(now - start);
+            if (error == null) {
+                loadSuccesses.increment();
+                entries.put(key, new Entry<>(value, now));
+            } else {
+                loadFailures.increment();
+            }
+        });
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<Entry> REFRESHING =
+            AtomicIntegerFieldUpdater.newUpdater(Entry.class, "refreshing");
+
+    private static class Entry<V> {
+        private final V value;
+        private final CompletableFuture<V> future;
+        private final long loadedAt;
+        volatile int refreshing;
+
+        private Entry(V value, long loadedAt) {
+            this.value = value;
+            this.future = CompletableFuture.completedFuture(value);
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    public static class Builder<K, V> {
+        private long maximumSize = -1;
+        private long maximumWeight = -1;
+        private Weigher<K, V> weigher;
+        private long expireAfterWriteNanos;
+        private long refreshAfterNanos;
+        private Ticker ticker = Ticker.systemTicker();
+
+        private Builder() {
+        }
+
+        public Builder<K, V> maximumSize(long maximumSize) {
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * The weigher is given null for lookups that didn't find anything.
+         */
+        public Builder<K, V> maximumWeight(long maximumWeight, Weigher<K, V> weigher) {
+            this.maximumWeight = maximumWeight;
+            this.weigher = weigher;
+            return this;
+        }
+
+        public Builder<K, V> expireAfterWrite(long duration, TimeUnit unit) {
+            this.expireAfterWriteNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        public Builder<K, V> refreshAfterWrite(long duration, TimeUnit unit) {
+            this.refreshAfterNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        public Builder<K, V> ticker(Ticker ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        public AsyncCache<K, V> build(Function<K, CompletableFuture<V>> loader) {
+            if (maximumSize >= 0 && maximumWeight >= 0) {
+                throw new IllegalStateException("Bound the cache by either size or weight, not both");
+            }
+            if (refreshAfterNanos > 0 && expireAfterWriteNanos > 0 && refreshAfterNanos >= expireAfterWriteNanos) {
+                throw new IllegalStateException("refreshAfterWrite must be shorter than expireAfterWrite");
+            }
+            return new AsyncCache<>(this, loader);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package info.examples.batey.async.cache;
+
+import com.google.common.cache.CacheStats;
+import info.examples.batey.async.thirdparty.Channel;
+import info.examples.batey.async.thirdparty.ChannelService;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+public class CachingChannelService {
+
+    public static CachingChannelService cachingChannelService(ChannelService channels) {
+        return new CachingChannelService(channels::lookupChannelCompletable, AsyncCache.<String, Channel>newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(30, TimeUnit.MINUTES)
+                .refreshAfterWrite(25, TimeUnit.MINUTES));
+    }
+
+    private final AsyncCache<String, Channel> cache;
+
+    public CachingChannelService(Function<String, CompletableFuture<Channel>> lookup,
+                                 AsyncCache.Builder<String, Channel> cacheBuilder) {
+        this.cache = cacheBuilder.build(lookup);
+    }
+
+    public CompletableFuture<Channel> lookupChannelCompletable(String name) {
+        return cache.get(name);
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+}
@@ -0,0 +1,34 @@
+package info.examples.batey.async.cache;
+
+import com.google.common.cache.CacheStats;
+import info.examples.batey.async.thirdparty.Permissions;
+import info.examples.batey.async.thirdparty.PermissionsService;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+public class CachingPermissionsService {
+
+    public static CachingPermissionsService cachingPermissionsService(PermissionsService permissions) {
+        return new CachingPermissionsService(permissions::permissionsCompletable, AsyncCache.<Integer, Permissions>newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(5, TimeUnit.MINUTES)
+                .refreshAfterWrite(4, TimeUnit.MINUTES));
+    }
+
+    private final AsyncCache<Integer, Permissions> cache;
+
+    public CachingPermissionsService(Function<Integer, CompletableFuture<Permissions>> lookup,
+                                     AsyncCache.Builder<Integer, Permissions> cacheBuilder) {
+        this.cache = cacheBuilder.build(lookup);
+    }
+
+    public CompletableFuture<Permissions> permissionsCompletable(int userId) {
+        return cache.get(userId);
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+}
@@ -0,0 +1,34 @@
+package info.examples.batey.async.cache;
+
+import com.google.common.cache.CacheStats;
+import info.examples.batey.async.thirdparty.User;
+import info.examples.batey.async.thirdparty.UserService;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+public class CachingUserService {
+
+    public static CachingUserService cachingUserService(UserService users) {
+        return new CachingUserService(users::lookupUserCompletable, AsyncCache.<String, User>newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(10, TimeUnit.MINUTES)
+                .refreshAfterWrite(8, TimeUnit.MINUTES));
+    }
+
+    private final AsyncCache<String, User> cache;
+
+    public CachingUserService(Function<String, CompletableFuture<User>> lookup,
+                              AsyncCache.Builder<String, User> cacheBuilder) {
+        this.cache = cacheBuilder.build(lookup);
+    }
+
+    public CompletableFuture<User> lookupUserCompletable(String userName) {
+        return cache.get(userName);
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+}
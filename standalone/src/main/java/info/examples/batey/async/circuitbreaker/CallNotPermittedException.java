@@ -0,0 +1,11 @@
+package info.examples.batey.async.circuitbreaker;
+
+import java.util.concurrent.RejectedExecutionException;
+
+public class CallNotPermittedException extends RejectedExecutionException {
+    private static final long serialVersionUID = 1L;
+
+    public CallNotPermittedException(String message) {
+        super(message);
+    }
+}
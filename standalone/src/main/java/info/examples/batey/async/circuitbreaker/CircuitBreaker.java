@@ -0,0 +1,296 @@
+package info.examples.batey.async.circuitbreaker;
+
+import info.examples.batey.async.scheduling.Scheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Stops calling a backend that is failing or slow so callers fail fast
+ * rather than waiting for it.
+ * <p>
+ * While closed every call goes through and its outcome goes into a ring of
+ * the last windowSize calls. Once the failure or slow call rate in the ring
+ * crosses the policy's threshold the circuit opens and calls fail straight
+ * away with {@link CallNotPermittedException}. After the open duration the
+ * next caller moves it to half open, where a few probe calls go through:
+ * if they do well it closes with an empty window, if not it opens again.
+ * <p>
+ * A call still running once it has taken the slow call duration is
+ * recorded as slow there and then, so a backend that hangs trips the
+ * circuit rather than never reporting back. Each call is only recorded
+ * once, whichever comes first.
+ * <p>
+ * There are no locks: the state is a {@link Period} object swapped
+ * with a CAS, and each call reports back to the period it started in, so a
+ * straggler from before the circuit opened can't affect the next period.
+ */
+public class CircuitBreaker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final int FAILED = 1;
+    private static final int SLOW = 2;
+
+    private final String name;
+    private final CircuitBreakerPolicy policy;
+    private final long slowCallNanos;
+    private final long openNanos;
+
+    private final Scheduler scheduler;
+    private final AtomicReference<Period> period;
+    private final LongAdder notPermitted = new LongAdder();
+
+    public CircuitBreaker(String name, CircuitBreakerPolicy policy) {
+        this(name, policy, Scheduler.shared());
+    }
+
+    /**
+     * @param scheduler times calls so hung ones are recorded as slow
+     */
+    public CircuitBreaker(String name, CircuitBreakerPolicy policy, Scheduler scheduler) {
+        this.name = name;
+        this.policy = policy;
+        this.scheduler = scheduler;
+        this.slowCallNanos = policy.getSlowCallDuration(TimeUnit.NANOSECONDS);
+        this.openNanos = policy.getOpenDuration(TimeUnit.NANOSECONDS);
+        this.period = new AtomicReference<>(closed());
+    }
+
+    public <T> CompletableFuture<T> call(Supplier<CompletableFuture<T>> call) {
+        Period admitted = acquire();
+        if (admitted == null) {
+            notPermitted.increment();
+            CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new CallNotPermittedException("Circuit " + name + " is " + state()));
+            return rejected;
+        }
+        Outcome outcome = new Outcome(admitted);
+        CompletableFuture<T> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+        }
+        outcome.slowTimer = scheduler.schedule(outcome, slowCallNanos, TimeUnit.NANOSECONDS);
+        result.whenComplete(outcome);
+        return result;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public State state() {
+        return period.get().state;
+    }
+
+    /**
+     * Failure rate of the current window, 0 when open.
+     */
+    public double failureRate() {
+        Period current = period.get();
+        return current.window == null ? 0 : current.window.failureRate();
+    }
+
+    public long notPermitted() {
+        return notPermitted.sum();
+    }
+
+    /**
+     * @return the period the call belongs to, or null if it isn't permitted
+     */
+    private Period acquire() {
+        while (true) {
+            Period current = period.get();
+            switch (current.state) {
+                case CLOSED:
+                    return current;
+                case OPEN:
+                    if (System.nanoTime() - current.retryAt < 0) {
+                        return null;
+                    }
+                    transition(current, halfOpen());
+                    break;
+                case HALF_OPEN:
+                    int left = current.permits.get();
+                    if (left <= 0) {
+                        return null;
+                    }
+                    if (current.permits.compareAndSet(left, left - 1)) {
+                        return current;
+                    }
+                    break;
+            }
+        }
+    }
+
+    private void record(Period admitted, int outcome) {
+        Window window = admitted.window;
+        window.record(outcome);
+        int calls = window.calls();
+        if (admitted.state == State.CLOSED) {
+            if (calls >= policy.getMinimumCalls() && window.tripped()) {
+                transition(admitted, open());
+            }
+        } else if (calls >= policy.getHalfOpenCalls()) {
+            transition(admitted, window.tripped() ? open() : closed());
+        }
+    }
+
+    private void transition(Period from, Period to) {
+        if (period.compareAndSet(from, to)) {
+            if (to.state == State.OPEN) {
+                LOG.warn("Circuit {} opened, failure rate {} slow call rate {}",
+                        name, from.window == null ? 0 : from.window.failureRate(),
+                        from.window == null ? 0 : from.window.slowCallRate());
+            } else {
+                LOG.info("Circuit {} {}", name, to.state);
+            }
+        }
+    }
+
+    private Period closed() {
+        return new Period(State.CLOSED, new Window(policy.getWindowSize()), 0, null);
+    }
+
+    private Period open() {
+        return new Period(State.OPEN, null, System.nanoTime() + openNanos, null);
+    }
+
+    private Period halfOpen() {
+        return new Period(State.HALF_OPEN, new Window(policy.getHalfOpenCalls()), 0,
+                new AtomicInteger(policy.getHalfOpenCalls()));
+    }
+
+    private static boolean isCancellation(Throwable error) {
+        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+        return cause instanceof CancellationException;
+    }
+
+    private static final AtomicIntegerFieldUpdater<Outcome> RECORDED =
+            AtomicIntegerFieldUpdater.newUpdater(Outcome.class, "recorded");
+
+    /**
+     * Records one call, either when it completes or when it has taken the
+     * slow call duration without completing.
+     */
+    private final class Outcome implements Callable<Void>, BiConsumer<Object, Throwable> {
+        private final Period admitted;
+        private final long start = System.nanoTime();
+        private volatile CompletableFuture<Void> slowTimer;
+        volatile int recorded;
+
+        private Outcome(Period admitted) {
+            this.admitted = admitted;
+        }
+
+        @Override
+        public Void call() {
+            if (RECORDED.compareAndSet(this, 0, 1)) {
+                LOG.debug("Call to {} still running after {}ms, recording it as slow",
+                        name, TimeUnit.NANOSECONDS.toMillis(slowCallNanos));
+                record(admitted, SLOW);
+            }
+            return null;
+        }
+
+        @Override
+        public void accept(Object value, Throwable error) {
+            slowTimer.cancel(false);
+            if (!RECORDED.compareAndSet(this, 0, 1)) {
+                return;
+            }
+            if (isCancellation(error)) {
+                admitted.abandon();
+            } else {
+                record(admitted, (error != null ? FAILED : 0)
+                        | (System.nanoTime() - start > slowCallNanos ? SLOW : 0));
+            }
+        }
+    }
+
+    private static final class Period {
+        private final State state;
+        private final Window window;
+        private final long retryAt;
+        private final AtomicInteger permits;
+
+        private Period(State state, Window window, long retryAt, AtomicInteger permits) {
+            this.state = state;
+            this.window = window;
+            this.retryAt = retryAt;
+            this.permits = permits;
+        }
+
+        /**
+         * A cancelled call says nothing about the backend, but a half open
+         * probe has to be handed back or the circuit would never decide.
+         */
+        private void abandon() {
+            if (permits != null) {
+                permits.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Ring of the last size outcomes with running failed and slow counts.
+     * The counts can briefly disagree with the ring while a slot is being
+     * overwritten, which is fine for a threshold.
+     */
+    private final class Window {
+        private final AtomicIntegerArray outcomes;
+        private final AtomicLong recorded = new AtomicLong();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger slow = new AtomicInteger();
+
+        private Window(int size) {
+            this.outcomes = new AtomicIntegerArray(size);
+        }
+
+        private void record(int outcome) {
+            long index = recorded.getAndIncrement();
+            int previous = outcomes.getAndSet((int) (index % outcomes.length()), outcome);
+            failed.addAndGet((outcome & FAILED) - (previous & FAILED));
+            slow.addAndGet(((outcome & SLOW) - (previous & SLOW)) >> 1);
+        }
+
+        private int calls() {
+            return (int) Math.min(recorded.get(), outcomes.length());
+        }
+
+        private double failureRate() {
+            int calls = calls();
+            return calls == 0 ? 0 : (double) failed.get() / calls;
+        }
+
+        private double slowCallRate() {
+            int calls = calls();
+            return calls == 0 ? 0 : (double) slow.get() / calls;
+        }
+
+        private boolean tripped() {
+            return failureRate() >= policy.getFailureRateThreshold()
+                    || slowCallRate() >= policy.getSlowCallRateThreshold();
+        }
+    }
+}
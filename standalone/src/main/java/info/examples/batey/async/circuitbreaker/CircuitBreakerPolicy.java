@@ -0,0 +1,90 @@
+package info.examples.batey.async.circuitbreaker;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * When to stop calling a backend and how to find out it's back.
+ */
+public class CircuitBreakerPolicy {
+
+    /**
+     * Open when half of the last 100 calls failed or 80% were slower than
+     * slowCallDuration, judged once there have been at least 20. Stay open
+     * for 5 seconds then let 5 probes through.
+     */
+    public static CircuitBreakerPolicy defaultPolicy(long slowCallDuration, TimeUnit unit) {
+        return new CircuitBreakerPolicy(100, 20, 0.5, 0.8,
+                unit.toMillis(slowCallDuration), 5000, TimeUnit.MILLISECONDS, 5);
+    }
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final int halfOpenCalls;
+
+    /**
+     * @param windowSize            rates are over this many most recent calls
+     * @param minimumCalls          calls needed in the window before it can open
+     * @param failureRateThreshold  open at this fraction of failed calls e.g. 0.5
+     * @param slowCallRateThreshold open at this fraction of slow calls e.g. 0.8
+     * @param slowCallDuration      calls taking longer than this are slow
+     * @param openDuration          how long to fail fast before probing
+     * @param halfOpenCalls         probes let through, all of them have to come
+     *                              back before deciding whether to close
+     */
+    public CircuitBreakerPolicy(int windowSize, int minimumCalls,
+                                double failureRateThreshold, double slowCallRateThreshold,
+                                long slowCallDuration, long openDuration, TimeUnit unit,
+                                int halfOpenCalls) {
+        if (windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize) {
+            throw new IllegalArgumentException("minimumCalls must be in [1, windowSize]: " + minimumCalls);
+        }
+        if (failureRateThreshold <= 0 || failureRateThreshold > 1) {
+            throw new IllegalArgumentException("failureRateThreshold must be in (0, 1]: " + failureRateThreshold);
+        }
+        if (slowCallRateThreshold <= 0 || slowCallRateThreshold > 1) {
+            throw new IllegalArgumentException("slowCallRateThreshold must be in (0, 1]: " + slowCallRateThreshold);
+        }
+        if (halfOpenCalls < 1) {
+            throw new IllegalArgumentException("halfOpenCalls must be at least 1: " + halfOpenCalls);
+        }
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNanos = unit.toNanos(slowCallDuration);
+        this.openNanos = unit.toNanos(openDuration);
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    public double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public double getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    public long getSlowCallDuration(TimeUnit unit) {
+        return unit.convert(slowCallNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long getOpenDuration(TimeUnit unit) {
+        return unit.convert(openNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public int getHalfOpenCalls() {
+        return halfOpenCalls;
+    }
+}
@@ -0,0 +1,101 @@
+package info.examples.batey.async.deadline;
+
+import info.examples.batey.async.scheduling.Scheduler;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time budget for one request, passed down to every call made on its
+ * behalf.
+ * <p>
+ * Futures handed to {@link #track(CompletableFuture)} are failed with a
+ * {@link DeadlineExceededException} when the deadline passes. For futures
+ * from the {@link Scheduler} that also takes the pending work off the
+ * wheel, so nothing carries on for a client that has already given up.
+ * <p>
+ * Services can also check {@link #allows(long, TimeUnit)} before starting a
+ * call that can't possibly finish in the time left. Calls that might
+ * finish still start, and are cut off if they don't.
+ */
+public class Deadline {
+
+    public static Deadline after(long budget, TimeUnit unit, Scheduler scheduler) {
+        return new Deadline(budget, unit, scheduler);
+    }
+
+    private final long deadlineNanos;
+    private final Queue<CompletableFuture<?>> tracked = new ConcurrentLinkedQueue<>();
+    private final CompletableFuture<Void> expiry;
+    private volatile boolean expired;
+
+    private Deadline(long budget, TimeUnit unit, Scheduler scheduler) {
+        this.deadlineNanos = System.nanoTime() + unit.toNanos(budget);
+        this.expiry = scheduler.schedule(this::expire, budget, unit);
+    }
+
+    public long remaining(TimeUnit unit) {
+        return unit.convert(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    public boolean isExpired() {
+        return expired || deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Could a call that takes at least this long still finish in time?
+     */
+    public boolean allows(long minimumLatency, TimeUnit unit) {
+        long remaining = deadlineNanos - System.nanoTime();
+        return remaining > 0 && remaining >= unit.toNanos(minimumLatency);
+    }
+
+    /**
+     * Fails the future if it is still running when the deadline passes.
+     */
+    public <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+        if (isExpired()) {
+            future.completeExceptionally(exceeded());
+            return future;
+        }
+        tracked.add(future);
+        if (expired) {
+            // raced with expire()
+            future.completeExceptionally(exceeded());
+        }
+        return future;
+    }
+
+    /**
+     * A future that has already failed, for calls skipped because there
+     * isn't enough time left.
+     */
+    public <T> CompletableFuture<T> skip(String call) {
+        CompletableFuture<T> skipped = new CompletableFuture<>();
+        skipped.completeExceptionally(new DeadlineExceededException(
+                "Skipped " + call + ", only " + remaining(TimeUnit.MILLISECONDS) + "ms left"));
+        return skipped;
+    }
+
+    /**
+     * The request finished, nothing left to time out.
+     */
+    public void complete() {
+        expiry.cancel(false);
+        tracked.clear();
+    }
+
+    private void expire() {
+        expired = true;
+        CompletableFuture<?> future;
+        while ((future = tracked.poll()) != null) {
+            future.completeExceptionally(exceeded());
+        }
+    }
+
+    private DeadlineExceededException exceeded() {
+        return new DeadlineExceededException("Deadline exceeded");
+    }
+}
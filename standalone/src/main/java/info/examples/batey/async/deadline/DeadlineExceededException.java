@@ -0,0 +1,11 @@
+package info.examples.batey.async.deadline;
+
+import java.util.concurrent.TimeoutException;
+
+public class DeadlineExceededException extends TimeoutException {
+    private static final long serialVersionUID = 1L;
+
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+}
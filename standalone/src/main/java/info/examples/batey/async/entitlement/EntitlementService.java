@@ -0,0 +1,123 @@
+package info.examples.batey.async.entitlement;
+
+import info.examples.batey.async.thirdparty.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Can a user watch a channel: the user, then their permissions, alongside
+ * the channel, composed once here rather than by every caller.
+ * <p>
+ * The answer is false as soon as any part of it says no: a user or
+ * channel that doesn't exist, or permissions without the one asked for.
+ * Whatever is still outstanding at that point is cancelled, so a denied
+ * request whose channel lookup hasn't gone out yet never makes it. The
+ * same goes for failures, which fail the check, and for the caller
+ * cancelling it.
+ */
+public class EntitlementService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EntitlementService.class);
+
+    public static EntitlementService entitlementService(UserService users, PermissionsService permissions,
+                                                        ChannelService channels) {
+        return new EntitlementService(users, permissions, channels);
+    }
+
+    private final UserService users;
+    private final PermissionsService permissions;
+    private final ChannelService channels;
+
+    private EntitlementService(UserService users, PermissionsService permissions, ChannelService channels) {
+        this.users = users;
+        this.permissions = permissions;
+        this.channels = channels;
+    }
+
+    public CompletableFuture<Boolean> canWatch(String userName, String permission, String channel) {
+        Check check = new Check(permission);
+        check.channel = channels.lookupChannelCompletable(channel);
+        check.user = users.lookupUserCompletable(userName);
+        check.channel.whenComplete(check::channelFound);
+        check.user.whenComplete(check::userFound);
+        // Covers the caller cancelling as well as an early answer
+        check.result.whenComplete((allowed, error) -> check.finish());
+        return check.result;
+    }
+
+    private class Check {
+        private final String permission;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        // Permissions and channel both have to say yes
+        private final AtomicInteger yesNeeded = new AtomicInteger(2);
+        private volatile CompletableFuture<User> user;
+        private volatile CompletableFuture<Channel> channel;
+        private volatile CompletableFuture<Permissions> userPermissions;
+
+        private Check(String permission) {
+            this.permission = permission;
+        }
+
+        private void userFound(User found, Throwable error) {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else if (found == null) {
+                deny("no such user");
+            } else {
+                userPermissions = permissions.permissionsCompletable(found.getUserId());
+                if (result.isDone()) {
+                    // answered while the lookup was being sent
+                    userPermissions.cancel(false);
+                }
+                userPermissions.whenComplete(this::permissionsFound);
+            }
+        }
+
+        private void permissionsFound(Permissions found, Throwable error) {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else if (found == null || !found.hasPermission(permission)) {
+                deny("missing permission");
+            } else {
+                yes();
+            }
+        }
+
+        private void channelFound(Channel found, Throwable error) {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else if (found == null) {
+                deny("no such channel");
+            } else {
+                yes();
+            }
+        }
+
+        private void yes() {
+            if (yesNeeded.decrementAndGet() == 0) {
+                result.complete(true);
+            }
+        }
+
+        private void deny(String reason) {
+            if (result.complete(false)) {
+                LOG.debug("Denied: {}", reason);
+            }
+        }
+
+        private void finish() {
+            cancel(user);
+            cancel(channel);
+            cancel(userPermissions);
+        }
+
+        private void cancel(CompletableFuture<?> lookup) {
+            if (lookup != null) {
+                lookup.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package info.examples.batey.async.fused;
+
+/**
+ * Told a yes or no answer without boxing it or completing a future.
+ */
+public interface BooleanCallback {
+
+    /**
+     * @param result false if error isn't null
+     * @param error  null unless the answer couldn't be worked out
+     */
+    void onResult(boolean result, Throwable error);
+}
@@ -0,0 +1,111 @@
+package info.examples.batey.async.fused;
+
+import info.examples.batey.async.thirdparty.*;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * The watch channel scenario with as little garbage as we can manage: the
+ * user then their permission, alongside the channel, answered with a
+ * primitive boolean.
+ * <p>
+ * Composing the completable lookups allocates a future, a task and two
+ * lambdas per lookup, then a stage each for thenCompose and thenCombine
+ * and a Result to carry both answers. Here a single check object is every
+ * stage: it is the callback for all three lookups and counts down the two
+ * branches itself, so a check allocates itself and the three lookups. The
+ * permission is checked straight off the bitset table rather than copied
+ * into a {@link Permissions}.
+ * <p>
+ * A user that doesn't exist can't watch anything, so the answer is false
+ * without looking up permissions. The first failure is the answer and the
+ * other branch is ignored when it comes back.
+ */
+public class WatchChannelChecker {
+
+    public static WatchChannelChecker watchChannelChecker(UserService users, PermissionsService permissions,
+                                                          ChannelService channels) {
+        return new WatchChannelChecker(users, permissions, channels);
+    }
+
+    private final UserService users;
+    private final PermissionsService permissions;
+    private final ChannelService channels;
+
+    private WatchChannelChecker(UserService users, PermissionsService permissions, ChannelService channels) {
+        this.users = users;
+        this.permissions = permissions;
+        this.channels = channels;
+    }
+
+    /**
+     * Tells the callback, on the scheduler's event loop, whether the user has
+     * the permission and the channel exists.
+     */
+    public void canWatch(String userName, String permission, String channel, BooleanCallback callback) {
+        Check check = new Check(PermissionDictionary.ordinal(permission), callback);
+        channels.lookupChannel(channel, check);
+        users.lookupUser(userName, check);
+    }
+
+    private static final AtomicIntegerFieldUpdater<Check> REMAINING =
+            AtomicIntegerFieldUpdater.newUpdater(Check.class, "remaining");
+
+    private class Check implements UserService.Callback, PermissionsService.Callback, ChannelService.Callback {
+        private final int ordinal;
+        private final BooleanCallback callback;
+
+        // Written before counting down, read by whoever counts down last
+        private boolean permitted;
+        private boolean channelFound;
+        volatile int remaining = 2;
+
+        private Check(int ordinal, BooleanCallback callback) {
+            this.ordinal = ordinal;
+            this.callback = callback;
+        }
+
+        @Override
+        public void onUser(User user, Throwable error) {
+            if (error != null) {
+                fail(error);
+            } else if (user == null) {
+                arrive();
+            } else {
+                permissions.hasPermission(user.getUserId(), ordinal, this);
+            }
+        }
+
+        @Override
+        public void onPermission(boolean permitted, Throwable error) {
+            if (error != null) {
+                fail(error);
+            } else {
+                this.permitted = permitted;
+                arrive();
+            }
+        }
+
+        @Override
+        public void onChannel(Channel channel, Throwable error) {
+            if (error != null) {
+                fail(error);
+            } else {
+                this.channelFound = channel != null;
+                arrive();
+            }
+        }
+
+        private void arrive() {
+            if (REMAINING.decrementAndGet(this) == 0) {
+                callback.onResult(permitted && channelFound, null);
+            }
+        }
+
+        private void fail(Throwable error) {
+            if (REMAINING.getAndSet(this, 0) > 0) {
+                callback.onResult(false, error);
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package info.examples.batey.async.hedging;
+
+import info.examples.batey.async.scheduling.Scheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Hedged requests: if a lookup hasn't come back by the time most lookups
+ * have, send a second one and take whichever answers first.
+ * <p>
+ * The hedge delay is the policy's percentile of the latencies seen so far.
+ * Only first attempts are timed, so the samples are of lookups as they
+ * would be without hedging. A first attempt that loses to its hedge is
+ * recorded as taking as long as it had run, a lower bound, rather than
+ * being left out, which would leave only the fast ones.
+ * Hedges are paid for out of a budget that each request tops up by the
+ * policy's maxExtraLoad, so a slow backend gets at most that much extra
+ * traffic rather than double.
+ * <p>
+ * Once one attempt succeeds the other is cancelled. Failures aren't
+ * hedged: if the only attempt in flight fails, the lookup fails.
+ */
+public class Hedger<K, V> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Hedger.class);
+
+    private static final long TOKEN = 1000;
+    private static final long MAX_TOKENS = 10 * TOKEN;
+
+    private final Function<K, CompletableFuture<V>> lookup;
+    private final HedgingPolicy policy;
+    private final Scheduler scheduler;
+    private final long tokensPerRequest;
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicLong tokens = new AtomicLong();
+    private final LongAdder hedges = new LongAdder();
+
+    public Hedger(Function<K, CompletableFuture<V>> lookup, HedgingPolicy policy, Scheduler scheduler) {
+        this.lookup = lookup;
+        this.policy = policy;
+        this.scheduler = scheduler;
+        this.tokensPerRequest = (long) (policy.getMaxExtraLoad() * TOKEN);
+    }
+
+    public CompletableFuture<V> get(K key) {
+        addTokens(tokensPerRequest);
+        HedgedCall call = new HedgedCall(key);
+        call.primary = call.attempt(true);
+        call.hedgeTimer = scheduler.schedule(call::hedge, hedgeDelay(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+        // Covers the caller cancelling as well as one of the attempts winning
+        call.result.whenComplete((value, error) -> call.finish());
+        return call.result;
+    }
+
+    /**
+     * How long a lookup is given before it is hedged.
+     */
+    public long hedgeDelay(TimeUnit unit) {
+        if (latencies.count() < policy.getMinSamples()) {
+            return policy.getInitialDelay(unit);
+        }
+        return latencies.percentile(policy.getPercentile(), unit);
+    }
+
+    public long hedgesSent() {
+        return hedges.sum();
+    }
+
+    private boolean takeToken() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < TOKEN) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - TOKEN));
+        return true;
+    }
+
+    private void addTokens(long amount) {
+        long current;
+        do {
+            current = tokens.get();
+            if (current >= MAX_TOKENS) {
+                return;
+            }
+        } while (!tokens.compareAndSet(current, Math.min(MAX_TOKENS, current + amount)));
+    }
+
+    private class HedgedCall {
+        private final K key;
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+        private final AtomicInteger running = new AtomicInteger();
+        private volatile CompletableFuture<V> primary;
+        private volatile CompletableFuture<V> hedge;
+        // Set before the hedge is sent, which may answer before it is assigned
+        private volatile boolean hedged;
+        private volatile CompletableFuture<Void> hedgeTimer;
+
+        private HedgedCall(K key) {
+            this.key = key;
+        }
+
+        private CompletableFuture<V> attempt(boolean primary) {
+            running.incrementAndGet();
+            long start = System.nanoTime();
+            CompletableFuture<V> attempt;
+            try {
+                attempt = lookup.apply(key);
+            } catch (RuntimeException e) {
+                attempt = new CompletableFuture<>();
+                attempt.completeExceptionally(e);
+            }
+            attempt.whenComplete((value, error) -> {
+                if (primary && (error == null || lostToHedge(error))) {
+                    latencies.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+                if (error == null) {
+                    result.complete(value);
+                } else if (!result.isDone() && running.decrementAndGet() == 0) {
+                    result.completeExceptionally(error);
+                }
+            });
+            return attempt;
+        }
+
+        /**
+         * Cancelled because the hedge answered, rather than because the
+         * caller gave up.
+         */
+        private boolean lostToHedge(Throwable error) {
+            return error instanceof CancellationException && hedged
+                    && result.isDone() && !result.isCompletedExceptionally();
+        }
+
+        private void hedge() {
+            if (result.isDone() || !takeToken()) {
+                return;
+            }
+            hedges.increment();
+            hedged = true;
+            LOG.debug("Hedging lookup for {}", key);
+            hedge = attempt(false);
+            if (result.isDone()) {
+                // finished while the hedge was being sent
+                cancel(hedge);
+            }
+        }
+
+        private void finish() {
+            hedgeTimer.cancel(false);
+            cancel(primary);
+            cancel(hedge);
+        }
+
+        private void cancel(CompletableFuture<V> attempt) {
+            if (attempt != null) {
+                attempt.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package info.examples.batey.async.hedging;
+
+import info.examples.batey.async.scheduling.Scheduler;
+import info.examples.batey.async.thirdparty.Channel;
+import info.examples.batey.async.thirdparty.ChannelService;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+public class HedgingChannelService {
+
+    private final Hedger<String, Channel> hedger;
+
+    public HedgingChannelService(ChannelService channels, HedgingPolicy policy, Scheduler scheduler) {
+        this(channels::lookupChannelCompletable, policy, scheduler);
+    }
+
+    public HedgingChannelService(Function<String, CompletableFuture<Channel>> lookup, HedgingPolicy policy, Scheduler scheduler) {
+        this.hedger = new Hedger<>(lookup, policy, scheduler);
+    }
+
+    public CompletableFuture<Channel> lookupChannelCompletable(String name) {
+        return hedger.get(name);
+    }
+
+    public long hedgesSent() {
+        return hedger.hedgesSent();
+    }
+}
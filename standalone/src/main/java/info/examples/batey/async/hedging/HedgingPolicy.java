@@ -0,0 +1,58 @@
+package info.examples.batey.async.hedging;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * When to send a second request and how many of them we can afford.
+ */
+public class HedgingPolicy {
+
+    /**
+     * Hedge anything slower than the 95th percentile, adding at most 5% more
+     * requests. Until there are enough samples hedge after the initial delay.
+     */
+    public static HedgingPolicy defaultPolicy(long initialDelay, TimeUnit unit) {
+        return new HedgingPolicy(0.95, 0.05, initialDelay, unit, 100);
+    }
+
+    private final double percentile;
+    private final double maxExtraLoad;
+    private final long initialDelayNanos;
+    private final long minSamples;
+
+    /**
+     * @param percentile   hedge when a request is slower than this fraction of
+     *                     observed requests e.g. 0.95
+     * @param maxExtraLoad hedges allowed as a fraction of requests e.g. 0.05
+     * @param initialDelay hedge delay until minSamples latencies have been seen
+     */
+    public HedgingPolicy(double percentile, double maxExtraLoad,
+                         long initialDelay, TimeUnit unit, long minSamples) {
+        if (percentile <= 0 || percentile > 1) {
+            throw new IllegalArgumentException("percentile must be in (0, 1]: " + percentile);
+        }
+        if (maxExtraLoad < 0) {
+            throw new IllegalArgumentException("maxExtraLoad can't be negative: " + maxExtraLoad);
+        }
+        this.percentile = percentile;
+        this.maxExtraLoad = maxExtraLoad;
+        this.initialDelayNanos = unit.toNanos(initialDelay);
+        this.minSamples = minSamples;
+    }
+
+    public double getPercentile() {
+        return percentile;
+    }
+
+    public double getMaxExtraLoad() {
+        return maxExtraLoad;
+    }
+
+    public long getInitialDelay(TimeUnit unit) {
+        return unit.convert(initialDelayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long getMinSamples() {
+        return minSamples;
+    }
+}
@@ -0,0 +1,94 @@
+package info.examples.batey.async.hedging;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free latency histogram with microsecond resolution.
+ * <p>
+ * Buckets are log-linear: each power of two is split into 16 equal
+ * buckets, so a percentile is accurate to within about 6% however
+ * large the value. Values are capped at about 12 days.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_BITS = 40;
+    private static final long MAX_MICROS = (1L << MAX_BITS) - 1;
+    private static final int BUCKETS = (MAX_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+
+    public void record(long latency, TimeUnit unit) {
+        long micros = Math.min(MAX_MICROS, Math.max(0, unit.toMicros(latency)));
+        counts.incrementAndGet(index(micros));
+        total.increment();
+    }
+
+    public long count() {
+        return total.sum();
+    }
+
+    /**
+     * The latency that the given fraction (0 to 1) of recorded values are at
+     * or below, or 0 if nothing has been recorded.
+     */
+    public long percentile(double fraction, TimeUnit unit) {
+        long count = total.sum();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return unit.convert(upperBound(i), TimeUnit.MICROSECONDS);
+            }
+        }
+        return unit.convert(MAX_MICROS, TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Adds each bucket's count to the matching entry of counts, which must
+     * have {@link #buckets()} entries. For reporting rather than the hot path.
+     */
+    public void addCountsTo(long[] into) {
+        for (int i = 0; i < BUCKETS; i++) {
+            into[i] += counts.get(i);
+        }
+    }
+
+    public static int buckets() {
+        return BUCKETS;
+    }
+
+    /**
+     * Largest value that goes in the bucket.
+     */
+    public static long bucketUpperBound(int bucket, TimeUnit unit) {
+        return unit.convert(upperBound(bucket), TimeUnit.MICROSECONDS);
+    }
+
+    static int index(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) ((micros >>> (msb - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return (msb - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int msb = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = index % SUB_BUCKETS;
+        long width = 1L << (msb - SUB_BUCKET_BITS);
+        return ((SUB_BUCKETS + sub) << (msb - SUB_BUCKET_BITS)) + width - 1;
+    }
+}
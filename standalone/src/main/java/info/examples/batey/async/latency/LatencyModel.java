@@ -0,0 +1,28 @@
+package info.examples.batey.async.latency;
+
+/**
+ * How long a simulated call takes, and whether it fails. Drawn from once
+ * per call so implementations need to be thread safe.
+ */
+public interface LatencyModel {
+
+    long nextDelayMillis();
+
+    default boolean nextFailure() {
+        return false;
+    }
+
+    /**
+     * What a caller should expect a call to take, e.g. to decide if there is
+     * time left to make it.
+     */
+    long expectedMillis();
+
+    /**
+     * The least a call can take, e.g. to decide if there is any point
+     * starting it. Zero unless the model knows better.
+     */
+    default long minimumMillis() {
+        return 0;
+    }
+}
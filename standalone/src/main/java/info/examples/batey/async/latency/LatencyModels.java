@@ -0,0 +1,250 @@
+package info.examples.batey.async.latency;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Factories for the common latency models.
+ */
+public class LatencyModels {
+
+    private LatencyModels() {
+    }
+
+    public static LatencyModel fixed(long millis) {
+        checkNotNegative(millis);
+        return new LatencyModel() {
+            @Override
+            public long nextDelayMillis() {
+                return millis;
+            }
+
+            @Override
+            public long expectedMillis() {
+                return millis;
+            }
+
+            @Override
+            public long minimumMillis() {
+                return millis;
+            }
+
+            @Override
+            public String toString() {
+                return "fixed(" + millis + "ms)";
+            }
+        };
+    }
+
+    public static LatencyModel uniform(long minMillis, long maxMillis) {
+        checkNotNegative(minMillis);
+        if (maxMillis < minMillis) {
+            throw new IllegalArgumentException("max " + maxMillis + " is less than min " + minMillis);
+        }
+        return new LatencyModel() {
+            @Override
+            public long nextDelayMillis() {
+                return ThreadLocalRandom.current().nextLong(minMillis, maxMillis + 1);
+            }
+
+            @Override
+            public long expectedMillis() {
+                return (minMillis + maxMillis) / 2;
+            }
+
+            @Override
+            public long minimumMillis() {
+                return minMillis;
+            }
+
+            @Override
+            public String toString() {
+                return "uniform(" + minMillis + "ms-" + maxMillis + "ms)";
+            }
+        };
+    }
+
+    /**
+     * Log-normal, the usual shape of service latency: most calls close to
+     * the median with a long tail. Described by its median and 99th
+     * percentile as those are what you'll have from production.
+     */
+    public static LatencyModel logNormal(long medianMillis, long p99Millis) {
+        if (medianMillis <= 0 || p99Millis < medianMillis) {
+            throw new IllegalArgumentException("Need 0 < median <= p99, got median " + medianMillis + " p99 " + p99Millis);
+        }
+        double mu = Math.log(medianMillis);
+        // z score of the 99th percentile of a standard normal
+        double sigma = (Math.log(p99Millis) - mu) / 2.326;
+        long mean = Math.round(Math.exp(mu + sigma * sigma / 2));
+        return new LatencyModel() {
+            @Override
+            public long nextDelayMillis() {
+                return Math.round(Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian()));
+            }
+
+            @Override
+            public long expectedMillis() {
+                return mean;
+            }
+
+            @Override
+            public String toString() {
+                return "logNormal(median " + medianMillis + "ms, p99 " + p99Millis + "ms)";
+            }
+        };
+    }
+
+    /**
+     * Replays a recorded histogram: a bucket is picked in proportion to its
+     * count, then a delay uniformly within it. Bucket i covers from the
+     * previous upper bound (or 0) to upperBoundsMillis[i].
+     */
+    public static LatencyModel fromHistogram(long[] upperBoundsMillis, long[] counts) {
+        if (upperBoundsMillis.length == 0 || upperBoundsMillis.length != counts.length) {
+            throw new IllegalArgumentException("Need the same, non zero, number of bounds and counts");
+        }
+        long[] bounds = upperBoundsMillis.clone();
+        long[] cumulative = new long[counts.length];
+        long total = 0;
+        double weightedSum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            long lower = i == 0 ? 0 : bounds[i - 1];
+            if (bounds[i] < lower || counts[i] < 0) {
+                throw new IllegalArgumentException("Bounds must be ascending and counts not negative");
+            }
+            total += counts[i];
+            cumulative[i] = total;
+            weightedSum += counts[i] * (lower + bounds[i]) / 2.0;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("Histogram is empty");
+        }
+        long samples = total;
+        long mean = Math.round(weightedSum / total);
+        int first = firstAtLeast(cumulative, 1);
+        long minimum = first == 0 ? 0 : bounds[first - 1];
+        return new LatencyModel() {
+            @Override
+            public long nextDelayMillis() {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int bucket = firstAtLeast(cumulative, random.nextLong(samples) + 1);
+                long lower = bucket == 0 ? 0 : bounds[bucket - 1];
+                return random.nextLong(lower, bounds[bucket] + 1);
+            }
+
+            @Override
+            public long expectedMillis() {
+                return mean;
+            }
+
+            @Override
+            public long minimumMillis() {
+                return minimum;
+            }
+
+            @Override
+            public String toString() {
+                return "histogram(" + samples + " samples)";
+            }
+        };
+    }
+
+    /**
+     * Every so often a call stalls, e.g. for a GC pause or a lost packet.
+     */
+    public static LatencyModel withStalls(LatencyModel model, double probability, long stallMillis) {
+        checkProbability(probability);
+        checkNotNegative(stallMillis);
+        return new LatencyModel() {
+            @Override
+            public long nextDelayMillis() {
+                long delay = model.nextDelayMillis();
+                return ThreadLocalRandom.current().nextDouble() < probability ? delay + stallMillis : delay;
+            }
+
+            @Override
+            public boolean nextFailure() {
+                return model.nextFailure();
+            }
+
+            @Override
+            public long expectedMillis() {
+                return model.expectedMillis();
+            }
+
+            @Override
+            public long minimumMillis() {
+                return model.minimumMillis();
+            }
+
+            @Override
+            public String toString() {
+                return model + " stalling " + stallMillis + "ms with probability " + probability;
+            }
+        };
+    }
+
+    /**
+     * Calls still take the model's time, then fail with the given probability.
+     */
+    public static LatencyModel withFailures(LatencyModel model, double probability) {
+        checkProbability(probability);
+        return new LatencyModel() {
+            @Override
+            public long nextDelayMillis() {
+                return model.nextDelayMillis();
+            }
+
+            @Override
+            public boolean nextFailure() {
+                return model.nextFailure() || ThreadLocalRandom.current().nextDouble() < probability;
+            }
+
+            @Override
+            public long expectedMillis() {
+                return model.expectedMillis();
+            }
+
+            @Override
+            public long minimumMillis() {
+                return model.minimumMillis();
+            }
+
+            @Override
+            public String toString() {
+                return model + " failing with probability " + probability;
+            }
+        };
+    }
+
+    /**
+     * The first index whose value is at least the target. An empty bucket
+     * repeats the previous cumulative count, and a plain binary search can
+     * land on it rather than the bucket that count belongs to.
+     */
+    private static int firstAtLeast(long[] ascending, long target) {
+        int low = 0;
+        int high = ascending.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ascending[mid] < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static void checkNotNegative(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Latency can't be negative: " + millis);
+        }
+    }
+
+    private static void checkProbability(double probability) {
+        if (probability < 0 || probability > 1) {
+            throw new IllegalArgumentException("Probability must be between 0 and 1: " + probability);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package info.examples.batey.async.limit;
+
+import info.examples.batey.async.scheduling.Scheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A concurrency limit that finds its own level.
+ * <p>
+ * Each request that gets a permit reports back how long it took. While
+ * requests come back within the latency threshold and the limit is actually
+ * being used the limit creeps up by one; a slow or dropped request cuts it
+ * by the backoff ratio. Requests beyond the limit are turned away straight
+ * away rather than queueing, so under overload the requests that are let in
+ * still finish in good time instead of everything slowing down together.
+ * <p>
+ * A request that never reports back, e.g. one that hangs and is never
+ * answered, would hold its permit for good, and enough of them would wedge
+ * the limit shut. A {@link Permit} from {@link #tryAcquire(Scheduler, long,
+ * TimeUnit)} gives itself back as dropped once it has been held too long.
+ * <p>
+ * Acquiring is a CAS on the in-flight count, only adjusting the limit on
+ * release takes a lock.
+ */
+public class AimdLimiter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AimdLimiter.class);
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long latencyThresholdNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+    private final Object lock = new Object();
+    private volatile int limit;
+
+    public AimdLimiter(String name, int initialLimit, int minLimit, int maxLimit,
+                       double backoffRatio, long latencyThreshold, TimeUnit unit) {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Limiter " + name + " needs 1 <= minLimit <= initialLimit <= maxLimit");
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Limiter " + name + " needs a backoff ratio between 0 and 1");
+        }
+        this.name = name;
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdNanos = unit.toNanos(latencyThreshold);
+    }
+
+    /**
+     * @return true if the request can go ahead, in which case it must
+     * call {@link #release(long, boolean)} when it's done
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * As {@link #tryAcquire()}, but the permit is released as dropped if the
+     * request hasn't released it within the timeout.
+     *
+     * @return the permit, or null if the request is over the limit
+     */
+    public Permit tryAcquire(Scheduler scheduler, long timeout, TimeUnit unit) {
+        if (!tryAcquire()) {
+            return null;
+        }
+        Permit permit = new Permit(unit.toMillis(timeout));
+        permit.timeout = scheduler.schedule(permit, timeout, unit);
+        return permit;
+    }
+
+    /**
+     * @param latencyNanos how long the request took
+     * @param dropped      whether it failed in a way that suggests overload,
+     *                     e.g. a timeout or a 503 from further down
+     */
+    public void release(long latencyNanos, boolean dropped) {
+        int wasInFlight = inFlight.getAndDecrement();
+        synchronized (lock) {
+            if (dropped || latencyNanos > latencyThresholdNanos) {
+                limit = Math.max(minLimit, (int) (limit * backoffRatio));
+            } else if (wasInFlight * 2 >= limit) {
+                // Only grow when at least half the limit is in use, otherwise
+                // a quiet period would ratchet it up to the max
+                limit = Math.min(maxLimit, limit + 1);
+            }
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public long rejected() {
+        return rejected.get();
+    }
+
+    private static final AtomicIntegerFieldUpdater<Permit> RELEASED =
+            AtomicIntegerFieldUpdater.newUpdater(Permit.class, "released");
+
+    /**
+     * One request's hold on the limiter. It is released once, by the request
+     * or by the timeout, whichever comes first.
+     */
+    public final class Permit implements Callable<Void> {
+        private final long start = System.nanoTime();
+        private final long timeoutMillis;
+        private volatile CompletableFuture<Void> timeout;
+        volatile int released;
+
+        private Permit(long timeoutMillis) {
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        /**
+         * @param dropped as for {@link AimdLimiter#release(long, boolean)}
+         * @return false if the permit had already been released
+         */
+        public boolean release(boolean dropped) {
+            if (!RELEASED.compareAndSet(this, 0, 1)) {
+                return false;
+            }
+            CompletableFuture<Void> pending = timeout;
+            if (pending != null) {
+                pending.cancel(false);
+            }
+            AimdLimiter.this.release(System.nanoTime() - start, dropped);
+            return true;
+        }
+
+        @Override
+        public Void call() {
+            if (RELEASED.compareAndSet(this, 0, 1)) {
+                LOG.warn("Request held a {} permit for over {}ms, releasing it as dropped", name, timeoutMillis);
+                AimdLimiter.this.release(System.nanoTime() - start, true);
+            }
+            return null;
+        }
+    }
+}
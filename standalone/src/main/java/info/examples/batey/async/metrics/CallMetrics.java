@@ -0,0 +1,148 @@
+package info.examples.batey.async.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import info.examples.batey.async.scheduling.TaskListener;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency, in-flight count and errors for one kind of call, registered as
+ * {name}.latency, {name}.in-flight and {name}.errors.
+ * <p>
+ * Recording allocates nothing: the caller keeps the start time returned by
+ * {@link #start()}, or for scheduled work the {@link
+ * info.examples.batey.async.scheduling.Scheduler} task keeps it, and hands
+ * it back when the call is done. Cancelled calls leave the in-flight count
+ * but aren't timed or counted as errors, they say nothing about the
+ * backend.
+ * <p>
+ * {@link #DISABLED} does nothing at all, not even read the clock, for
+ * services that aren't instrumented.
+ */
+public class CallMetrics implements TaskListener {
+
+    public static final CallMetrics DISABLED = new CallMetrics(null, null, null);
+
+    /**
+     * Shares the metrics if something else has already registered the name,
+     * e.g. a second instance of the same service.
+     */
+    public static CallMetrics callMetrics(MetricRegistry registry, String name) {
+        return new CallMetrics(
+                timer(registry, MetricRegistry.name(name, "latency")),
+                registry.counter(MetricRegistry.name(name, "in-flight")),
+                registry.meter(MetricRegistry.name(name, "errors")));
+    }
+
+    /**
+     * Metrics for one kind of call to a service, named after the service
+     * class and the call. A null registry means the service isn't
+     * instrumented and gets {@link #DISABLED}.
+     */
+    public static CallMetrics callMetrics(MetricRegistry registry, Class<?> service, String call) {
+        return callMetrics(registry, null, service, call);
+    }
+
+    /**
+     * As {@link #callMetrics(MetricRegistry, Class, String)} with the names
+     * under prefix, so instances of a service used for different things
+     * don't share metrics. A null prefix is left out.
+     */
+    public static CallMetrics callMetrics(MetricRegistry registry, String prefix, Class<?> service, String call) {
+        return registry == null ? DISABLED : callMetrics(registry, MetricRegistry.name(prefix, service.getName(), call));
+    }
+
+    /**
+     * A timer backed by a {@link LatencyReservoir}, or the one already
+     * registered under the name.
+     */
+    public static Timer timer(MetricRegistry registry, String name) {
+        Timer timer = registry.getTimers().get(name);
+        if (timer != null) {
+            return timer;
+        }
+        try {
+            return registry.register(name, new Timer(new LatencyReservoir()));
+        } catch (IllegalArgumentException raced) {
+            return registry.timer(name);
+        }
+    }
+
+    private final Timer latency;
+    private final Counter inFlight;
+    private final Meter errors;
+
+    private CallMetrics(Timer latency, Counter inFlight, Meter errors) {
+        this.latency = latency;
+        this.inFlight = inFlight;
+        this.errors = errors;
+    }
+
+    public boolean isEnabled() {
+        return latency != null;
+    }
+
+    /**
+     * @return the start time to pass to {@link #success(long)} or {@link #failure(long)}
+     */
+    public long start() {
+        if (latency == null) {
+            return 0;
+        }
+        inFlight.inc();
+        return System.nanoTime();
+    }
+
+    public void success(long start) {
+        if (latency != null) {
+            inFlight.dec();
+            latency.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void failure(long start) {
+        if (latency != null) {
+            inFlight.dec();
+            latency.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            errors.mark();
+        }
+    }
+
+    @Override
+    public void completed(long start, Throwable error) {
+        if (error == null) {
+            success(start);
+        } else if (isCancellation(error)) {
+            if (latency != null) {
+                inFlight.dec();
+            }
+        } else {
+            failure(start);
+        }
+    }
+
+    @Override
+    public void scheduled() {
+        if (latency != null) {
+            inFlight.inc();
+        }
+    }
+
+    /**
+     * The listener to give the scheduler, null when disabled so the task
+     * doesn't even take a timestamp.
+     */
+    public TaskListener listener() {
+        return latency == null ? null : this;
+    }
+
+    private static boolean isCancellation(Throwable error) {
+        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+        return cause instanceof CancellationException;
+    }
+}
@@ -0,0 +1,94 @@
+package info.examples.batey.async.metrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The metrics behind {@link InstrumentedExecutorService}, for executors
+ * whose tasks mark themselves rather than being wrapped, e.g. the
+ * Scheduler's event loop.
+ * <p>
+ * A task is {@link #submitted()} before it's handed to the pool, then
+ * {@link #started(long)} and {@link #finished(long)} by whatever runs it,
+ * or {@link #rejected()} if the pool won't take it.
+ */
+public class ExecutorMetrics {
+
+    /**
+     * Registers {name}.queued, .active, .wait, .run and .rejected, plus
+     * .pool-size and .largest-pool-size if the pool is a ThreadPoolExecutor.
+     */
+    public static ExecutorMetrics executorMetrics(MetricRegistry registry, String name, ExecutorService pool) {
+        return new ExecutorMetrics(registry, name, pool);
+    }
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final Timer wait;
+    private final Timer run;
+    private final Meter rejected;
+
+    private ExecutorMetrics(MetricRegistry registry, String name, ExecutorService pool) {
+        this.wait = CallMetrics.timer(registry, MetricRegistry.name(name, "wait"));
+        this.run = CallMetrics.timer(registry, MetricRegistry.name(name, "run"));
+        this.rejected = registry.meter(MetricRegistry.name(name, "rejected"));
+        registry.register(MetricRegistry.name(name, "queued"), (Gauge<Integer>) queued::get);
+        registry.register(MetricRegistry.name(name, "active"), (Gauge<Integer>) active::get);
+        if (pool instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor threadPool = (ThreadPoolExecutor) pool;
+            registry.register(MetricRegistry.name(name, "pool-size"), (Gauge<Integer>) threadPool::getPoolSize);
+            registry.register(MetricRegistry.name(name, "largest-pool-size"), (Gauge<Integer>) threadPool::getLargestPoolSize);
+        }
+    }
+
+    /**
+     * @return when the task was submitted, for {@link #started(long)}
+     */
+    public long submitted() {
+        queued.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    public void rejected() {
+        queued.decrementAndGet();
+        rejected.mark();
+    }
+
+    /**
+     * Tasks that were queued when the pool was shut down and will never run.
+     */
+    public void discarded(int tasks) {
+        queued.addAndGet(-tasks);
+    }
+
+    /**
+     * @return when the task started, for {@link #finished(long)}
+     */
+    public long started(long submitted) {
+        long started = System.nanoTime();
+        queued.decrementAndGet();
+        active.incrementAndGet();
+        wait.update(started - submitted, TimeUnit.NANOSECONDS);
+        return started;
+    }
+
+    public void finished(long started) {
+        active.decrementAndGet();
+        run.update(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+
+    public int queued() {
+        return queued.get();
+    }
+
+    public int active() {
+        return active.get();
+    }
+}
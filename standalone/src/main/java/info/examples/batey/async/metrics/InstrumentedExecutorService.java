@@ -0,0 +1,110 @@
+package info.examples.batey.async.metrics;
+
+import com.codahale.metrics.MetricRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shows how busy a pool is: how many tasks are waiting and running, how
+ * long they wait compared to how long they run, and how many are turned
+ * away. Registered under {name}.queued, .active, .wait, .run and .rejected,
+ * plus .pool-size and .largest-pool-size for a ThreadPoolExecutor.
+ * <p>
+ * Queued and active are counted here rather than asked of the pool, so
+ * they work for any executor, e.g. a virtual thread per task one, and
+ * don't walk the pool's queue. A long wait with few active threads is a
+ * pool that's too small, active pinned at the pool size is one that's
+ * saturated.
+ */
+public class InstrumentedExecutorService extends AbstractExecutorService {
+
+    public static InstrumentedExecutorService instrument(ExecutorService delegate, MetricRegistry registry, String name) {
+        return new InstrumentedExecutorService(delegate, registry, name);
+    }
+
+    private final ExecutorService delegate;
+    private final ExecutorMetrics metrics;
+
+    private InstrumentedExecutorService(ExecutorService delegate, MetricRegistry registry, String name) {
+        this.delegate = delegate;
+        this.metrics = ExecutorMetrics.executorMetrics(registry, name, delegate);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        long submitted = metrics.submitted();
+        try {
+            delegate.execute(new InstrumentedTask(command, submitted));
+        } catch (RejectedExecutionException e) {
+            metrics.rejected();
+            throw e;
+        }
+    }
+
+    public int queued() {
+        return metrics.queued();
+    }
+
+    public int active() {
+        return metrics.active();
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    /**
+     * The tasks as they were submitted, not as they were queued.
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> neverRan = delegate.shutdownNow();
+        metrics.discarded(neverRan.size());
+        List<Runnable> submitted = new ArrayList<>(neverRan.size());
+        for (Runnable task : neverRan) {
+            submitted.add(task instanceof InstrumentedTask ? ((InstrumentedTask) task).task : task);
+        }
+        return submitted;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    private class InstrumentedTask implements Runnable {
+        private final Runnable task;
+        private final long submitted;
+
+        private InstrumentedTask(Runnable task, long submitted) {
+            this.task = task;
+            this.submitted = submitted;
+        }
+
+        @Override
+        public void run() {
+            long started = metrics.started(submitted);
+            try {
+                task.run();
+            } finally {
+                metrics.finished(started);
+            }
+        }
+    }
+}
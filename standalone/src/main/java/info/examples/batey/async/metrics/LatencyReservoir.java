@@ -0,0 +1,83 @@
+package info.examples.batey.async.metrics;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import info.examples.batey.async.hedging.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A {@link Reservoir} of nanosecond latencies that doesn't allocate or lock
+ * on update, unlike the default exponentially decaying one which allocates
+ * a sample per value and takes a lock to rescale.
+ * <p>
+ * Values go into a {@link LatencyHistogram}, a fresh one every window.
+ * Snapshots cover the current window and the one before it, so they
+ * reflect the last one to two windows rather than everything since start.
+ */
+public class LatencyReservoir implements Reservoir {
+
+    public static final long DEFAULT_WINDOW_SECONDS = 60;
+
+    private final long windowNanos;
+    private final AtomicReference<Window> current;
+
+    public LatencyReservoir() {
+        this(DEFAULT_WINDOW_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public LatencyReservoir(long window, TimeUnit unit) {
+        this.windowNanos = unit.toNanos(window);
+        this.current = new AtomicReference<>(new Window(null, System.nanoTime() + windowNanos));
+    }
+
+    @Override
+    public void update(long nanos) {
+        window(System.nanoTime()).histogram.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, count(window(System.nanoTime())));
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        Window window = window(System.nanoTime());
+        long[] counts = new long[LatencyHistogram.buckets()];
+        window.histogram.addCountsTo(counts);
+        if (window.previous != null) {
+            window.previous.addCountsTo(counts);
+        }
+        return new LatencySnapshot(counts);
+    }
+
+    private Window window(long now) {
+        Window window = current.get();
+        while (now - window.ends >= 0) {
+            // Whoever wins the CAS rotates, everyone else uses their window
+            Window next = new Window(now - window.ends >= windowNanos ? null : window.histogram, now + windowNanos);
+            if (current.compareAndSet(window, next)) {
+                return next;
+            }
+            window = current.get();
+        }
+        return window;
+    }
+
+    private static long count(Window window) {
+        return window.histogram.count() + (window.previous == null ? 0 : window.previous.count());
+    }
+
+    private static final class Window {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final LatencyHistogram previous;
+        private final long ends;
+
+        private Window(LatencyHistogram previous, long ends) {
+            this.previous = previous;
+            this.ends = ends;
+        }
+    }
+}
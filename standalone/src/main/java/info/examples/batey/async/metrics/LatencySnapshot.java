@@ -0,0 +1,128 @@
+package info.examples.batey.async.metrics;
+
+import com.codahale.metrics.Snapshot;
+import info.examples.batey.async.hedging.LatencyHistogram;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot of bucket counts from {@link LatencyHistogram}s. Values are the
+ * upper bound of the bucket they fell in, in nanoseconds.
+ */
+class LatencySnapshot extends Snapshot {
+
+    /**
+     * Reporters that want every value get this many evenly spaced quantiles
+     * instead, there can be millions of values.
+     */
+    private static final int MAX_VALUES = 1024;
+
+    private final long[] counts;
+    private final long size;
+
+    LatencySnapshot(long[] counts) {
+        this.counts = counts;
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        this.size = total;
+    }
+
+    @Override
+    public double getValue(double quantile) {
+        if (quantile < 0 || quantile > 1 || Double.isNaN(quantile)) {
+            throw new IllegalArgumentException(quantile + " is not in [0..1]");
+        }
+        if (size == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * size));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return value(i);
+            }
+        }
+        return getMax();
+    }
+
+    @Override
+    public long[] getValues() {
+        int n = (int) Math.min(size, MAX_VALUES);
+        long[] values = new long[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = (long) getValue(n == 1 ? 1.0 : (double) i / (n - 1));
+        }
+        return values;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    @Override
+    public long getMax() {
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] > 0) {
+                return value(i);
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public long getMin() {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                return value(i);
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public double getMean() {
+        if (size == 0) {
+            return 0;
+        }
+        double sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            sum += (double) counts[i] * value(i);
+        }
+        return sum / size;
+    }
+
+    @Override
+    public double getStdDev() {
+        if (size <= 1) {
+            return 0;
+        }
+        double mean = getMean();
+        double sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            double diff = value(i) - mean;
+            sum += counts[i] * diff * diff;
+        }
+        return Math.sqrt(sum / (size - 1));
+    }
+
+    @Override
+    public void dump(OutputStream output) {
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+            for (long value : getValues()) {
+                out.printf("%d%n", value);
+            }
+        }
+    }
+
+    private static long value(int bucket) {
+        return LatencyHistogram.bucketUpperBound(bucket, TimeUnit.NANOSECONDS);
+    }
+}
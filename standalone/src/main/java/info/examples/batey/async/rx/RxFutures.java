@@ -0,0 +1,39 @@
+package info.examples.batey.async.rx;
+
+import rx.Observable;
+import rx.Single;
+import rx.subscriptions.Subscriptions;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Bridges the CompletableFuture lookups to RxJava.
+ */
+public final class RxFutures {
+
+    private RxFutures() {
+    }
+
+    /**
+     * A cold Observable of the lookup's single result: the lookup is only
+     * made when something subscribes, once per subscription, and
+     * unsubscribing before it completes cancels it. Goes through Single so
+     * the value is held until the subscriber requests it.
+     */
+    public static <T> Observable<T> observable(Supplier<CompletableFuture<T>> lookup) {
+        return Single.<T>create(subscriber -> {
+            CompletableFuture<T> future = lookup.get();
+            subscriber.add(Subscriptions.create(() -> future.cancel(false)));
+            future.whenComplete((value, error) -> {
+                if (error != null) {
+                    subscriber.onError(error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error);
+                } else {
+                    subscriber.onSuccess(value);
+                }
+            });
+        }).toObservable();
+    }
+}
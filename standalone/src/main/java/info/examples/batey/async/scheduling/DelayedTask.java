@@ -0,0 +1,53 @@
+package info.examples.batey.async.scheduling;
+
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Work for {@link Scheduler#execute(DelayedTask, long, TimeUnit)}. The task
+ * is its own wheel callback and event loop task, so scheduling it allocates
+ * nothing beyond the wheel's entry. Subclasses keep what the work needs in
+ * fields rather than capturing it in a lambda.
+ * <p>
+ * There is no future and so nothing to cancel: once scheduled the task runs.
+ * A task must not be scheduled again until it has run.
+ */
+public abstract class DelayedTask implements TimerTask, Runnable {
+
+    private Scheduler scheduler;
+    long submitted;
+
+    final void scheduledOn(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public final void run(Timeout timeout) {
+        scheduler.expired(this);
+    }
+
+    @Override
+    public final void run() {
+        EventLoop eventLoop = scheduler.eventLoop();
+        long started = eventLoop.started(submitted);
+        try {
+            fire();
+        } finally {
+            eventLoop.finished(started);
+        }
+    }
+
+    /**
+     * The delay is up. Called on the event loop.
+     */
+    protected abstract void fire();
+
+    /**
+     * The event loop wouldn't take the task, e.g. because the scheduler has
+     * been closed. Called on the timer thread instead of {@link #run()}.
+     */
+    protected abstract void rejected(RejectedExecutionException e);
+}
@@ -0,0 +1,113 @@
+package info.examples.batey.async.scheduling;
+
+import info.examples.batey.async.blocking.BlockingWatchdog;
+import info.examples.batey.async.metrics.ExecutorMetrics;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The scheduler's event loop pool, and the marks each task it runs makes
+ * for the metrics and the blocking watchdog.
+ * <p>
+ * The scheduler's own tasks make the marks in their run methods, so
+ * handing one to the pool wraps nothing. Anything else, e.g. a completion
+ * run via {@link Scheduler#executor()}, is wrapped, and only when there is
+ * something to mark.
+ */
+final class EventLoop implements Executor {
+
+    private final ExecutorService pool;
+    private final ExecutorMetrics metrics;
+    private final BlockingWatchdog watchdog;
+
+    /**
+     * @param metrics  null for none
+     * @param watchdog null for none
+     */
+    EventLoop(ExecutorService pool, ExecutorMetrics metrics, BlockingWatchdog watchdog) {
+        this.pool = pool;
+        this.metrics = metrics;
+        this.watchdog = watchdog;
+    }
+
+    /**
+     * Hands over a task that marks itself, with the time from {@link
+     * #submitted()}.
+     */
+    void dispatch(Runnable task) {
+        try {
+            pool.execute(task);
+        } catch (RejectedExecutionException e) {
+            if (metrics != null) {
+                metrics.rejected();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Called just before {@link #dispatch(Runnable)}.
+     *
+     * @return what to hand to {@link #started(long)}
+     */
+    long submitted() {
+        return metrics == null ? 0 : metrics.submitted();
+    }
+
+    /**
+     * Called on the event loop as the task starts.
+     *
+     * @return what to hand to {@link #finished(long)}
+     */
+    long started(long submitted) {
+        if (watchdog != null) {
+            watchdog.probe().taskStarted();
+        }
+        return metrics == null ? 0 : metrics.started(submitted);
+    }
+
+    void finished(long started) {
+        if (metrics != null) {
+            metrics.finished(started);
+        }
+        if (watchdog != null) {
+            watchdog.probe().taskFinished();
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (metrics == null && watchdog == null) {
+            pool.execute(command);
+        } else {
+            long submitted = submitted();
+            dispatch(new MarkedTask(command, submitted));
+        }
+    }
+
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    private final class MarkedTask implements Runnable {
+        private final Runnable task;
+        private final long submitted;
+
+        private MarkedTask(Runnable task, long submitted) {
+            this.task = task;
+            this.submitted = submitted;
+        }
+
+        @Override
+        public void run() {
+            long started = started(submitted);
+            try {
+                task.run();
+            } finally {
+                finished(started);
+            }
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package info.examples.batey.async.scheduling;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import info.examples.batey.async.blocking.BlockingWatchdog;
+import info.examples.batey.async.metrics.ExecutorMetrics;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * One place for all the delayed work the services do.
+ * <p>
+ * Delays and timeouts go on a hashed wheel timer: adding and cancelling are
+ * O(1) rather than the O(log n) of the DelayQueue behind a
+ * ScheduledThreadPoolExecutor, at the cost of only being accurate to a tick.
+ * When a delay expires the work is handed to a small event loop pool so a
+ * slow completion never holds up the wheel. Work with no delay skips the
+ * wheel and goes straight to the event loop rather than waiting for the
+ * next tick.
+ * <p>
+ * Services take one of these rather than creating their own threads so the
+ * thread count stays the same however many service instances there are.
+ */
+public class Scheduler implements AutoCloseable {
+
+    public static final long DEFAULT_TICK_MS = 1;
+    public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+    public static final int DEFAULT_EVENT_LOOP_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static final Scheduler SHARED = new Scheduler("shared", DEFAULT_TICK_MS, TimeUnit.MILLISECONDS,
+            DEFAULT_TICKS_PER_WHEEL, DEFAULT_EVENT_LOOP_THREADS);
+
+    /**
+     * The scheduler used by services that aren't given one. Its threads are
+     * daemons and it is never closed.
+     */
+    public static Scheduler shared() {
+        return SHARED;
+    }
+
+    private final HashedWheelTimer timer;
+    private final EventLoop eventLoop;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    public Scheduler(String name, long tickDuration, TimeUnit unit, int ticksPerWheel, int eventLoopThreads) {
+        this(name, tickDuration, unit, ticksPerWheel, eventLoopThreads, null);
+    }
+
+    public Scheduler(String name, long tickDuration, TimeUnit unit, int ticksPerWheel, int eventLoopThreads,
+                     MetricRegistry metrics) {
+        this(name, tickDuration, unit, ticksPerWheel, eventLoopThreads, metrics, null);
+    }
+
+    /**
+     * @param metrics  where to report how many tasks are waiting on the
+     *                 wheel, as {name}.scheduler.pending, and how busy the
+     *                 event loop is, as {name}.scheduler.event-loop.*; null
+     *                 for no metrics
+     * @param watchdog told about every task the event loop runs, so one
+     *                 that blocks is reported; null for none
+     *                 <p>
+     *                 The scheduler's own tasks make the marks for both as
+     *                 they run rather than being wrapped.
+     */
+    public Scheduler(String name, long tickDuration, TimeUnit unit, int ticksPerWheel, int eventLoopThreads,
+                     MetricRegistry metrics, BlockingWatchdog watchdog) {
+        this.timer = new HashedWheelTimer(new ThreadFactoryBuilder()
+                .setNameFormat(name + "-timer-%d")
+                .setDaemon(true)
+                .build(), tickDuration, unit, ticksPerWheel);
+        // Otherwise the first lookup pays for starting the wheel's thread
+        timer.start();
+        ExecutorService loop = Executors.newFixedThreadPool(eventLoopThreads, new ThreadFactoryBuilder()
+                .setNameFormat(name + "-loop-%d")
+                .setDaemon(true)
+                .build());
+        ExecutorMetrics loopMetrics = null;
+        if (metrics != null) {
+            metrics.register(MetricRegistry.name(name, "scheduler", "pending"), (Gauge<Integer>) pending::get);
+            loopMetrics = ExecutorMetrics.executorMetrics(metrics, MetricRegistry.name(name, "scheduler", "event-loop"), loop);
+        }
+        this.eventLoop = new EventLoop(loop, loopMetrics, watchdog);
+    }
+
+    /**
+     * Runs the task on the event loop after the delay, completing the returned
+     * future with its result. Completing the future before the delay is
+     * up, by cancelling it, failing it or answering it some other way, takes
+     * the task off the wheel.
+     */
+    public <T> CompletableFuture<T> schedule(Callable<T> task, long delay, TimeUnit unit) {
+        return schedule(task, delay, unit, null);
+    }
+
+    /**
+     * As {@link #schedule(Callable, long, TimeUnit)}, telling the listener when
+     * the future completes however that happens. The listener is held by the
+     * task, which is already the future's callback, so watching a task costs
+     * a timestamp, not another callback.
+     */
+    public <T> CompletableFuture<T> schedule(Callable<T> task, long delay, TimeUnit unit, TaskListener listener) {
+        ScheduledTask<T> scheduled = new ScheduledTask<>(task, listener);
+        if (delay <= 0) {
+            scheduled.dispatch();
+            return scheduled.result;
+        }
+        pending.incrementAndGet();
+        scheduled.timeout = timer.newTimeout(scheduled, delay, unit);
+        return scheduled.result;
+    }
+
+    /**
+     * Runs the task on the event loop after the delay, for callers that want
+     * the answer in a callback rather than a future. Nothing is allocated
+     * beyond the wheel's entry: the task is its own timer task.
+     */
+    public void execute(DelayedTask task, long delay, TimeUnit unit) {
+        task.scheduledOn(this);
+        if (delay <= 0) {
+            dispatch(task);
+            return;
+        }
+        pending.incrementAndGet();
+        timer.newTimeout(task, delay, unit);
+    }
+
+    public CompletableFuture<Void> schedule(Runnable task, long delay, TimeUnit unit) {
+        return schedule(() -> {
+            task.run();
+            return null;
+        }, delay, unit);
+    }
+
+    /**
+     * The event loop, for running completions that shouldn't happen on
+     * the caller's thread.
+     */
+    public Executor executor() {
+        return eventLoop;
+    }
+
+    /**
+     * Tasks waiting for their delay to be up.
+     */
+    public int pending() {
+        return pending.get();
+    }
+
+    EventLoop eventLoop() {
+        return eventLoop;
+    }
+
+    void expired(DelayedTask task) {
+        pending.decrementAndGet();
+        dispatch(task);
+    }
+
+    private void dispatch(DelayedTask task) {
+        task.submitted = eventLoop.submitted();
+        try {
+            eventLoop.dispatch(task);
+        } catch (RejectedExecutionException e) {
+            task.rejected(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        timer.stop();
+        eventLoop.shutdown();
+    }
+
+    /**
+     * The wheel entry, the event loop task and the future's completion
+     * callback in one object. The future itself is a plain one that the
+     * caller is free to complete: if it does before the delay is up, e.g.
+     * with a fallback, the callback takes the task off the wheel.
+     */
+    private class ScheduledTask<T> implements TimerTask, Runnable, BiConsumer<T, Throwable> {
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final Callable<T> task;
+        private final TaskListener listener;
+        private final long scheduledAt;
+        private volatile Timeout timeout;
+        private long submitted;
+
+        private ScheduledTask(Callable<T> task, TaskListener listener) {
+            this.task = task;
+            this.listener = listener;
+            if (listener != null) {
+                this.scheduledAt = System.nanoTime();
+                listener.scheduled();
+            } else {
+                this.scheduledAt = 0;
+            }
+            result.whenComplete(this);
+        }
+
+        @Override
+        public void run(Timeout timeout) {
+            pending.decrementAndGet();
+            dispatch();
+        }
+
+        private void dispatch() {
+            submitted = eventLoop.submitted();
+            try {
+                eventLoop.dispatch(this);
+            } catch (RejectedExecutionException e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public void run() {
+            long started = eventLoop.started(submitted);
+            try {
+                if (!result.isDone()) {
+                    result.complete(task.call());
+                }
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            } finally {
+                eventLoop.finished(started);
+            }
+        }
+
+        /**
+         * The future completed, however that happened.
+         */
+        @Override
+        public void accept(T value, Throwable error) {
+            Timeout scheduled = timeout;
+            if (scheduled != null && scheduled.cancel()) {
+                pending.decrementAndGet();
+            }
+            if (listener != null) {
+                listener.completed(scheduledAt, error);
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package info.examples.batey.async.scheduling;
+
+/**
+ * Told when a scheduled task is created and when its future completes,
+ * whether the task ran, failed or the future was cancelled or completed by
+ * someone else before it got to run.
+ */
+public interface TaskListener {
+
+    void scheduled();
+
+    /**
+     * @param scheduledAt {@link System#nanoTime()} when the task was scheduled
+     * @param error       null if the future completed with a value
+     */
+    void completed(long scheduledAt, Throwable error);
+}
@@ -0,0 +1,67 @@
+package info.examples.batey.async.singleflight;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Makes concurrent lookups for the same key share one call to the backend.
+ * <p>
+ * The first caller for a key starts the lookup, anyone asking for the same key
+ * while it is in flight waits on that rather than starting another. Once it
+ * completes the key is forgotten, so this isn't a cache: the next caller
+ * goes to the backend again.
+ * <p>
+ * Each caller gets their own dependent future so one caller cancelling
+ * doesn't cancel the lookup for everyone else.
+ */
+public class SingleFlight<K, V> {
+
+    private final Function<K, CompletableFuture<V>> lookup;
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    public SingleFlight(Function<K, CompletableFuture<V>> lookup) {
+        this.lookup = lookup;
+    }
+
+    public CompletableFuture<V> get(K key) {
+        CompletableFuture<V> flight = inFlight.get(key);
+        if (flight == null) {
+            CompletableFuture<V> promise = new CompletableFuture<>();
+            flight = inFlight.putIfAbsent(key, promise);
+            if (flight == null) {
+                flight = promise;
+                start(key, promise);
+            }
+        }
+        return flight.thenApply(Function.identity());
+    }
+
+    /**
+     * Number of keys with a lookup currently in flight.
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    private void start(K key, CompletableFuture<V> promise) {
+        CompletableFuture<V> result;
+        try {
+            result = lookup.apply(key);
+        } catch (RuntimeException e) {
+            result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+        }
+        result.whenComplete((value, error) -> {
+            // Remove before completing so anything chained on the promise
+            // that asks again starts a fresh lookup
+            inFlight.remove(key, promise);
+            if (error != null) {
+                promise.completeExceptionally(error);
+            } else {
+                promise.complete(value);
+            }
+        });
+    }
+}
@@ -0,0 +1,24 @@
+package info.examples.batey.async.singleflight;
+
+import info.examples.batey.async.thirdparty.Channel;
+import info.examples.batey.async.thirdparty.ChannelService;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+public class SingleFlightChannelService {
+
+    public static SingleFlightChannelService singleFlightChannelService(ChannelService channels) {
+        return new SingleFlightChannelService(channels::lookupChannelCompletable);
+    }
+
+    private final SingleFlight<String, Channel> flights;
+
+    public SingleFlightChannelService(Function<String, CompletableFuture<Channel>> lookup) {
+        this.flights = new SingleFlight<>(lookup);
+    }
+
+    public CompletableFuture<Channel> lookupChannelCompletable(String name) {
+        return flights.get(name);
+    }
+}
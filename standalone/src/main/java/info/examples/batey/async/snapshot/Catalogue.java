@@ -0,0 +1,13 @@
+package info.examples.batey.async.snapshot;
+
+/**
+ * Where a service looks its data up: an in memory map for the examples,
+ * a memory mapped snapshot for real datasets.
+ */
+@FunctionalInterface
+public interface Catalogue<K, V> {
+    /**
+     * The value for key or null if there isn't one.
+     */
+    V get(K key);
+}
@@ -0,0 +1,54 @@
+package info.examples.batey.async.snapshot;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The layout shared by {@link CatalogueWriter} and {@link MappedCatalogue}.
+ * Everything is big endian.
+ * <pre>
+ * header, 64 bytes: magic, version, chunk size, unused, entry count,
+ *                   index offset, index slots
+ * records:          key length, value length, key (UTF-8), value
+ *                   padded so none crosses a chunk boundary
+ * index:            open addressed slots of (record position + 1 or 0 if
+ *                   empty, key hash, unused)
+ * </pre>
+ */
+final class CatalogueFormat {
+
+    static final int MAGIC = 0x43415431; // "CAT1"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+    static final int RECORD_HEADER_BYTES = 8;
+    static final int SLOT_BYTES = 16;
+
+    static final int COUNT_OFFSET = 16;
+    static final int INDEX_OFFSET = 24;
+    static final int SLOTS_OFFSET = 32;
+
+    private CatalogueFormat() {
+    }
+
+    static byte[] key(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * FNV-1a with a final mix so similar keys spread across the index.
+     */
+    static int hash(byte[] key) {
+        int hash = 0x811C9DC5;
+        for (byte b : key) {
+            hash = (hash ^ b) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    static long slots(long entries) {
+        long slots = 2;
+        while (slots < entries * 2) {
+            slots <<= 1;
+        }
+        return slots;
+    }
+}
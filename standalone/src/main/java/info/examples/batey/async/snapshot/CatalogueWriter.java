@@ -0,0 +1,180 @@
+package info.examples.batey.async.snapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import static info.examples.batey.async.snapshot.CatalogueFormat.*;
+
+/**
+ * Streams a catalogue out to a snapshot file for {@link MappedCatalogue}.
+ * <p>
+ * Records go straight to disk. Only their positions and hashes are kept
+ * until {@link #commit()} builds the index, so a catalogue of n entries
+ * needs about 12n bytes of heap to write. The file is written alongside
+ * and only moved into place by commit, so readers never see a partial one:
+ * closing without committing, e.g. because an add failed, throws the
+ * partial file away and leaves the old catalogue where it was.
+ */
+public class CatalogueWriter<V> implements AutoCloseable {
+
+    public static final int DEFAULT_CHUNK_BYTES = 1 << 30;
+
+    private final Path file;
+    private final Path temp;
+    private final Codec<V> codec;
+    private final int chunkBytes;
+    private final DataOutputStream out;
+
+    private long position = HEADER_BYTES;
+    private long[] positions = new long[1024];
+    private int[] hashes = new int[1024];
+    private int count;
+    private boolean failed;
+    private boolean closed;
+
+    public CatalogueWriter(Path file, Codec<V> codec) throws IOException {
+        this(file, codec, DEFAULT_CHUNK_BYTES);
+    }
+
+    public CatalogueWriter(Path file, Codec<V> codec, int chunkBytes) throws IOException {
+        if (Integer.bitCount(chunkBytes) != 1 || chunkBytes < HEADER_BYTES) {
+            throw new IllegalArgumentException("Chunk size must be a power of two of at least " + HEADER_BYTES);
+        }
+        this.file = file;
+        this.temp = file.resolveSibling(file.getFileName() + ".tmp");
+        this.codec = codec;
+        this.chunkBytes = chunkBytes;
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16));
+        out.write(new byte[HEADER_BYTES]);
+    }
+
+    /**
+     * Keys must be unique, the writer doesn't check.
+     */
+    public void add(String key, V value) throws IOException {
+        checkWritable();
+        try {
+            write(key, value);
+        } catch (IOException | RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+    }
+
+    private void write(String key, V value) throws IOException {
+        byte[] keyBytes = key(key);
+        byte[] valueBytes = codec.encode(value);
+        int length = RECORD_HEADER_BYTES + keyBytes.length + valueBytes.length;
+        if (length > chunkBytes) {
+            throw new IllegalArgumentException("Record for " + key + " is bigger than a chunk");
+        }
+        long remaining = chunkBytes - (position & (chunkBytes - 1));
+        if (length > remaining) {
+            pad(remaining);
+        }
+        if (count == positions.length) {
+            positions = Arrays.copyOf(positions, count * 2);
+            hashes = Arrays.copyOf(hashes, count * 2);
+        }
+        positions[count] = position;
+        hashes[count] = hash(keyBytes);
+        count++;
+
+        out.writeInt(keyBytes.length);
+        out.writeInt(valueBytes.length);
+        out.write(keyBytes);
+        out.write(valueBytes);
+        position += length;
+    }
+
+    /**
+     * Builds the index and moves the catalogue into place.
+     */
+    public void commit() throws IOException {
+        checkWritable();
+        closed = true;
+        try {
+            publish();
+        } catch (IOException | RuntimeException e) {
+            try {
+                discard();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    private void publish() throws IOException {
+        // Slots are 16 bytes and chunks a power of two, so aligning the
+        // index to a slot keeps every slot within a chunk
+        pad((SLOT_BYTES - (position & (SLOT_BYTES - 1))) & (SLOT_BYTES - 1));
+        long indexOffset = position;
+        out.close();
+
+        long slots = slots(count);
+        try (RandomAccessFile raf = new RandomAccessFile(temp.toFile(), "rw")) {
+            raf.setLength(indexOffset + slots * SLOT_BYTES);
+        }
+        // Built in place through a mapping so the index is never on the heap
+        MappedFile mapped = MappedFile.map(temp, chunkBytes, FileChannel.MapMode.READ_WRITE);
+        long mask = slots - 1;
+        for (int i = 0; i < count; i++) {
+            long slot = hashes[i] & mask;
+            while (mapped.getLong(indexOffset + slot * SLOT_BYTES) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            mapped.putLong(indexOffset + slot * SLOT_BYTES, positions[i] + 1);
+            mapped.putInt(indexOffset + slot * SLOT_BYTES + 8, hashes[i]);
+        }
+        mapped.putInt(0, MAGIC);
+        mapped.putInt(4, VERSION);
+        mapped.putInt(8, chunkBytes);
+        mapped.putLong(COUNT_OFFSET, count);
+        mapped.putLong(INDEX_OFFSET, indexOffset);
+        mapped.putLong(SLOTS_OFFSET, slots);
+        mapped.force();
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Throws away what has been written unless it was committed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        discard();
+    }
+
+    private void checkWritable() {
+        if (closed || failed) {
+            throw new IllegalStateException("Writer for " + file + " is " + (closed ? "closed" : "broken"));
+        }
+    }
+
+    private void discard() throws IOException {
+        try {
+            out.close();
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void pad(long bytes) throws IOException {
+        for (long i = 0; i < bytes; i++) {
+            out.write(0);
+        }
+        position += bytes;
+    }
+}
@@ -0,0 +1,16 @@
+package info.examples.batey.async.snapshot;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Turns catalogue values into bytes for a snapshot and back.
+ */
+public interface Codec<V> {
+
+    byte[] encode(V value);
+
+    /**
+     * Decodes from position to limit of the buffer.
+     */
+    V decode(ByteBuffer bytes);
+}
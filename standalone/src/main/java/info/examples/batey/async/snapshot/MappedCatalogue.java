@@ -0,0 +1,93 @@
+package info.examples.batey.async.snapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static info.examples.batey.async.snapshot.CatalogueFormat.*;
+
+/**
+ * A catalogue served straight from a memory mapped snapshot written by
+ * {@link CatalogueWriter}.
+ * <p>
+ * Opening only reads the header and maps the file, so it takes the same
+ * few milliseconds for a catalogue of any size; the OS pages in what the
+ * lookups touch. Lookups are safe from any number of threads.
+ */
+public class MappedCatalogue<V> implements Catalogue<String, V> {
+
+    private final MappedFile file;
+    private final Codec<V> codec;
+    private final long count;
+    private final long indexOffset;
+    private final long mask;
+
+    private MappedCatalogue(MappedFile file, Codec<V> codec, long count, long indexOffset, long slots) {
+        this.file = file;
+        this.codec = codec;
+        this.count = count;
+        this.indexOffset = indexOffset;
+        this.mask = slots - 1;
+    }
+
+    public static <V> MappedCatalogue<V> open(Path path, Codec<V> codec) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading
+            }
+        }
+        if (header.hasRemaining() || header.getInt(0) != MAGIC) {
+            throw new IOException(path + " is not a catalogue snapshot");
+        }
+        if (header.getInt(4) != VERSION) {
+            throw new IOException(path + " is version " + header.getInt(4) + ", expected " + VERSION);
+        }
+        MappedFile file = MappedFile.map(path, header.getInt(8));
+        long indexOffset = header.getLong(INDEX_OFFSET);
+        long slots = header.getLong(SLOTS_OFFSET);
+        if (indexOffset + slots * SLOT_BYTES > file.size()) {
+            throw new IOException(path + " is truncated");
+        }
+        return new MappedCatalogue<>(file, codec, header.getLong(COUNT_OFFSET), indexOffset, slots);
+    }
+
+    @Override
+    public V get(String key) {
+        byte[] keyBytes = key(key);
+        int hash = hash(keyBytes);
+        long slot = hash & mask;
+        while (true) {
+            long slotPosition = indexOffset + slot * SLOT_BYTES;
+            long record = file.getLong(slotPosition);
+            if (record == 0) {
+                return null;
+            }
+            record--;
+            if (file.getInt(slotPosition + 8) == hash && keyMatches(record, keyBytes)) {
+                int valueLength = file.getInt(record + 4);
+                return codec.decode(file.slice(record + RECORD_HEADER_BYTES + keyBytes.length, valueLength));
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public long size() {
+        return count;
+    }
+
+    private boolean keyMatches(long record, byte[] key) {
+        if (file.getInt(record) != key.length) {
+            return false;
+        }
+        long start = record + RECORD_HEADER_BYTES;
+        for (int i = 0; i < key.length; i++) {
+            if (file.getByte(start + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
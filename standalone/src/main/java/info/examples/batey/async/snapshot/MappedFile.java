@@ -0,0 +1,102 @@
+package info.examples.batey.async.snapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file mapped as a run of fixed size chunks, as a single
+ * MappedByteBuffer can't go past 2GB. Values are written so they never
+ * straddle two chunks.
+ * <p>
+ * Mapping is cheap whatever the size of the file: pages are read in as
+ * they're touched and the OS is free to drop them again.
+ */
+final class MappedFile {
+
+    private final MappedByteBuffer[] chunks;
+    private final int chunkBits;
+    private final long chunkMask;
+    private final long size;
+
+    private MappedFile(MappedByteBuffer[] chunks, int chunkBits, long size) {
+        this.chunks = chunks;
+        this.chunkBits = chunkBits;
+        this.chunkMask = (1L << chunkBits) - 1;
+        this.size = size;
+    }
+
+    static MappedFile map(Path file, int chunkBytes) throws IOException {
+        return map(file, chunkBytes, FileChannel.MapMode.READ_ONLY);
+    }
+
+    static MappedFile map(Path file, int chunkBytes, FileChannel.MapMode mode) throws IOException {
+        if (Integer.bitCount(chunkBytes) != 1) {
+            throw new IllegalArgumentException("Chunk size must be a power of two: " + chunkBytes);
+        }
+        StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+                ? new StandardOpenOption[]{StandardOpenOption.READ}
+                : new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE};
+        // The mappings outlive the channel
+        try (FileChannel channel = FileChannel.open(file, options)) {
+            long size = channel.size();
+            int count = (int) ((size + chunkBytes - 1) / chunkBytes);
+            MappedByteBuffer[] chunks = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = (long) i * chunkBytes;
+                chunks[i] = channel.map(mode, start, Math.min(chunkBytes, size - start));
+            }
+            return new MappedFile(chunks, Integer.numberOfTrailingZeros(chunkBytes), size);
+        }
+    }
+
+    byte getByte(long position) {
+        return chunks[chunk(position)].get(offset(position));
+    }
+
+    int getInt(long position) {
+        return chunks[chunk(position)].getInt(offset(position));
+    }
+
+    long getLong(long position) {
+        return chunks[chunk(position)].getLong(offset(position));
+    }
+
+    void putInt(long position, int value) {
+        chunks[chunk(position)].putInt(offset(position), value);
+    }
+
+    void putLong(long position, long value) {
+        chunks[chunk(position)].putLong(offset(position), value);
+    }
+
+    void force() {
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+    }
+
+    /**
+     * A view of length bytes at position, no copying.
+     */
+    ByteBuffer slice(long position, int length) {
+        ByteBuffer view = chunks[chunk(position)].duplicate();
+        view.position(offset(position)).limit(offset(position) + length);
+        return view.slice();
+    }
+
+    long size() {
+        return size;
+    }
+
+    private int chunk(long position) {
+        return (int) (position >>> chunkBits);
+    }
+
+    private int offset(long position) {
+        return (int) (position & chunkMask);
+    }
+}
@@ -0,0 +1,231 @@
+package info.examples.batey.async.store;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * An open addressing hash table from int keys to fixed width bitsets, laid
+ * out in a ByteBuffer: either direct memory or a memory mapped file, so
+ * however many entries there are the GC sees one object.
+ * <p>
+ * Layout, little endian:
+ * <pre>
+ * header: magic, capacity, words per value, size (4 ints)
+ * slots:  capacity x (int key, 4 bytes padding, words per value x long)
+ * </pre>
+ * Collisions are resolved by linear probing. The padding keeps the words 8
+ * byte aligned. Lookups don't allocate and are safe from any number of
+ * threads; puts are for a single thread building the table before it is
+ * handed out.
+ */
+public final class IntBitsetTable {
+
+    /**
+     * Marks an empty slot, so can't be used as a key.
+     */
+    public static final int EMPTY_KEY = Integer.MIN_VALUE;
+
+    private static final int MAGIC = 0x31544249; // "IBT1"
+    private static final int HEADER_BYTES = 16;
+    private static final int SIZE_OFFSET = 12;
+    private static final int KEY_BYTES = 8;
+    private static final double MAX_LOAD = 0.5;
+
+    public interface EntryConsumer {
+        void accept(int key, long[] bits);
+    }
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private final int mask;
+    private final int wordsPerValue;
+    private final int slotBytes;
+
+    private IntBitsetTable(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not an IntBitsetTable");
+        }
+        this.capacity = buffer.getInt(4);
+        this.wordsPerValue = buffer.getInt(8);
+        this.mask = capacity - 1;
+        this.slotBytes = KEY_BYTES + wordsPerValue * Long.BYTES;
+        if (Integer.bitCount(capacity) != 1 || wordsPerValue < 1
+                || buffer.capacity() < HEADER_BYTES + (long) capacity * slotBytes) {
+            throw new IllegalArgumentException("Corrupt IntBitsetTable header");
+        }
+    }
+
+    /**
+     * An empty table in direct memory with room for expectedEntries.
+     */
+    public static IntBitsetTable allocate(int expectedEntries, int wordsPerValue) {
+        if (wordsPerValue < 1) {
+            throw new IllegalArgumentException("Need at least one word per value");
+        }
+        long slots = Math.max(2, (long) Math.ceil(expectedEntries / MAX_LOAD));
+        if (slots > 1 << 30) {
+            throw new IllegalArgumentException("Too many entries: " + expectedEntries);
+        }
+        // Next power of two so the probe can mask rather than mod
+        int capacity = Integer.highestOneBit((int) slots - 1) << 1;
+        long bytes = HEADER_BYTES + (long) capacity * (KEY_BYTES + wordsPerValue * Long.BYTES);
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(expectedEntries + " entries of " + wordsPerValue
+                    + " words won't fit in a single buffer");
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, capacity);
+        buffer.putInt(8, wordsPerValue);
+        buffer.putInt(SIZE_OFFSET, 0);
+        IntBitsetTable table = new IntBitsetTable(buffer);
+        for (int slot = 0; slot < capacity; slot++) {
+            buffer.putInt(table.offset(slot), EMPTY_KEY);
+        }
+        return table;
+    }
+
+    /**
+     * A table over a buffer written by {@link #asReadOnlyBuffer()}, e.g. a
+     * memory mapped snapshot. Nothing is copied.
+     */
+    public static IntBitsetTable wrap(ByteBuffer buffer) {
+        return new IntBitsetTable(buffer.slice().order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    /**
+     * Adds or replaces the bits for key. Bits beyond the table's width must
+     * be zero.
+     */
+    public void put(int key, long[] bits) {
+        if (key == EMPTY_KEY) {
+            throw new IllegalArgumentException("Key " + EMPTY_KEY + " is reserved");
+        }
+        for (int word = wordsPerValue; word < bits.length; word++) {
+            if (bits[word] != 0) {
+                throw new IllegalArgumentException("Bits don't fit in " + wordsPerValue + " words");
+            }
+        }
+        int slot = index(key);
+        int existing;
+        while ((existing = buffer.getInt(offset(slot))) != EMPTY_KEY && existing != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (existing == EMPTY_KEY) {
+            int size = size();
+            if (size + 1 > capacity * MAX_LOAD) {
+                throw new IllegalStateException("Table is full at " + size + " entries");
+            }
+            buffer.putInt(SIZE_OFFSET, size + 1);
+        }
+        int offset = offset(slot);
+        buffer.putInt(offset, key);
+        for (int word = 0; word < wordsPerValue; word++) {
+            buffer.putLong(offset + KEY_BYTES + word * Long.BYTES, word < bits.length ? bits[word] : 0);
+        }
+    }
+
+    public boolean containsKey(int key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Whether bit is set for key, false if there is no such key.
+     */
+    public boolean hasBit(int key, int bit) {
+        if (bit < 0 || bit >= wordsPerValue * Long.SIZE) {
+            return false;
+        }
+        int offset = find(key);
+        return offset >= 0 && (buffer.getLong(offset + KEY_BYTES + (bit >>> 6) * Long.BYTES) & (1L << bit)) != 0;
+    }
+
+    /**
+     * A copy of the bits for key or null if there is no such key.
+     */
+    public long[] get(int key) {
+        int offset = find(key);
+        return offset < 0 ? null : bits(offset);
+    }
+
+    /**
+     * Where key's bits are, for reading them a word at a time with
+     * {@link #word(int, int)} rather than copying them with {@link #get(int)};
+     * -1 if there is no such key.
+     */
+    public int position(int key) {
+        return find(key);
+    }
+
+    /**
+     * One word of the bits at a {@link #position(int)}.
+     */
+    public long word(int position, int word) {
+        return buffer.getLong(position + KEY_BYTES + word * Long.BYTES);
+    }
+
+    public void forEach(EntryConsumer consumer) {
+        for (int slot = 0; slot < capacity; slot++) {
+            int offset = offset(slot);
+            int key = buffer.getInt(offset);
+            if (key != EMPTY_KEY) {
+                consumer.accept(key, bits(offset));
+            }
+        }
+    }
+
+    public int size() {
+        return buffer.getInt(SIZE_OFFSET);
+    }
+
+    public int wordsPerValue() {
+        return wordsPerValue;
+    }
+
+    public int sizeInBytes() {
+        return HEADER_BYTES + capacity * slotBytes;
+    }
+
+    /**
+     * The whole table, ready to be written out and {@link #wrap(ByteBuffer)}ed
+     * later.
+     */
+    public ByteBuffer asReadOnlyBuffer() {
+        ByteBuffer duplicate = buffer.asReadOnlyBuffer();
+        duplicate.clear().limit(sizeInBytes());
+        return duplicate;
+    }
+
+    private long[] bits(int offset) {
+        long[] bits = new long[wordsPerValue];
+        for (int word = 0; word < wordsPerValue; word++) {
+            bits[word] = buffer.getLong(offset + KEY_BYTES + word * Long.BYTES);
+        }
+        return bits;
+    }
+
+    private int find(int key) {
+        int slot = index(key);
+        while (true) {
+            int offset = offset(slot);
+            int existing = buffer.getInt(offset);
+            if (existing == key) {
+                return key == EMPTY_KEY ? -1 : offset;
+            }
+            if (existing == EMPTY_KEY) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int index(int key) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private int offset(int slot) {
+        return HEADER_BYTES + slot * slotBytes;
+    }
+}
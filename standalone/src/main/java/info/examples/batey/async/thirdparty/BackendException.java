@@ -0,0 +1,12 @@
+package info.examples.batey.async.thirdparty;
+
+/**
+ * A simulated failure of one of the third party services.
+ */
+public class BackendException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public BackendException(String message) {
+        super(message);
+    }
+}
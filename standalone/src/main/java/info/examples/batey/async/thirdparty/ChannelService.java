@@ -2,57 +2,174 @@ package info.examples.batey.async.thirdparty;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.*;
+import com.codahale.metrics.MetricRegistry;
+import info.examples.batey.async.deadline.Deadline;
+import info.examples.batey.async.metrics.CallMetrics;
+import info.examples.batey.async.rx.RxFutures;
+import info.examples.batey.async.scheduling.Scheduler;
+import info.examples.batey.async.snapshot.Catalogue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import rx.Observable;
 
 import java.util.Map;
 import java.util.concurrent.*;
 
 public class ChannelService {
     private static Logger LOG = LoggerFactory.getLogger(ChannelService.class);
-    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(1,
-            new ThreadFactoryBuilder().setNameFormat("channel-service-%d").build());
-    private final ListeningScheduledExecutorService ls = MoreExecutors.listeningDecorator(executor);
 
-    private final Map<String, Channel> channels;
+    /**
+     * Told the answer to {@link #lookupChannel(String, Callback)}.
+     */
+    public interface Callback {
+        /**
+         * @param channel null if there is no such channel or the lookup failed
+         * @param error   null unless the lookup failed
+         */
+        void onChannel(Channel channel, Throwable error);
+    }
+
+    private final Scheduler scheduler;
+
+    private final Catalogue<String, Channel> channels;
 
     public static ChannelService channelService() {
-        return new ChannelService(ImmutableMap.of(
+        return channelService(Scheduler.shared());
+    }
+
+    public static ChannelService channelService(Scheduler scheduler) {
+        Map<String, Channel> channels = ImmutableMap.of(
                 "SkyOne", new Channel("SkyOne"),
                 "SkySportsOne", new Channel("SkySportsOne")
-        ));
+        );
+        return new ChannelService(channels::get, scheduler, null, null);
+    }
+
+    /**
+     * Serves channels from a catalogue, e.g. a {@link LiveSnapshot}.
+     */
+    public static ChannelService channelService(Catalogue<String, Channel> channels, Scheduler scheduler) {
+        return new ChannelService(channels, scheduler, null, null);
     }
 
-    private ChannelService(Map<String, Channel> channels) {
+    private final CallMetrics lookupChannelMetrics;
+    private final CallMetrics lookupChannelAsyncMetrics;
+    private final CallMetrics lookupChannelListenableMetrics;
+    private final CallMetrics lookupChannelCompletableMetrics;
+    private final CallMetrics lookupChannelCallbackMetrics;
+
+    private ChannelService(Catalogue<String, Channel> channels, Scheduler scheduler, MetricRegistry metrics, String prefix) {
         this.channels = channels;
+        this.scheduler = scheduler;
+        this.lookupChannelMetrics = CallMetrics.callMetrics(metrics, prefix, ChannelService.class, "lookupChannel");
+        this.lookupChannelAsyncMetrics = CallMetrics.callMetrics(metrics, prefix, ChannelService.class, "lookupChannelAsync");
+        this.lookupChannelListenableMetrics = CallMetrics.callMetrics(metrics, prefix, ChannelService.class, "lookupChannelListenable");
+        this.lookupChannelCompletableMetrics = CallMetrics.callMetrics(metrics, prefix, ChannelService.class, "lookupChannelCompletable");
+        this.lookupChannelCallbackMetrics = CallMetrics.callMetrics(metrics, prefix, ChannelService.class, "lookupChannelCallback");
+    }
+
+    /**
+     * The same channels, recording latency, in-flight and errors for each
+     * kind of lookup in the registry.
+     */
+    public ChannelService instrumented(MetricRegistry metrics) {
+        return instrumented(metrics, null);
+    }
+
+    /**
+     * As {@link #instrumented(MetricRegistry)} with the metrics under
+     * prefix, e.g. the name of the resource using this instance.
+     */
+    public ChannelService instrumented(MetricRegistry metrics, String prefix) {
+        return new ChannelService(channels, scheduler, metrics, prefix);
     }
 
     public Channel lookupChannel(String name) {
-        Uninterruptibles.sleepUninterruptibly(Config.CHANNEL_DELAY, TimeUnit.MILLISECONDS);
+        SimulatedCall.await(Config.channelLatency(), "Channel lookup", lookupChannelMetrics);
         LOG.info("Channel lookup complete");
         return channels.get(name);
     }
 
     public Future<Channel> lookupChannelAsync(String name) {
-        return executor.schedule(() -> {
+        return SimulatedCall.schedule(scheduler, Config.channelLatency(), "Channel lookup", lookupChannelAsyncMetrics, () -> {
             LOG.info("Channel lookup complete");
             return channels.get(name);
-        }, Config.CHANNEL_DELAY, TimeUnit.MILLISECONDS);
+        });
     }
 
     public ListenableFuture<Channel> lookupChannelListenable(String name) {
-        return ls.schedule(() -> {
+        return SimulatedCall.listenable(SimulatedCall.schedule(scheduler, Config.channelLatency(), "Channel lookup", lookupChannelListenableMetrics, () -> {
             LOG.info("Channel lookup complete");
             return channels.get(name);
-        }, Config.CHANNEL_DELAY, TimeUnit.MILLISECONDS);
+        }));
     }
 
     public CompletableFuture<Channel> lookupChannelCompletable(String name) {
-        CompletableFuture<Channel> result = new CompletableFuture<>();
-        executor.schedule(() -> {
+        return SimulatedCall.schedule(scheduler, Config.channelLatency(), "Channel lookup", lookupChannelCompletableMetrics, () -> {
+            LOG.info("Channel lookup complete");
+            return channels.get(name);
+        });
+    }
+
+    /**
+     * As {@link #lookupChannelCompletable(String)} but tells the callback, on
+     * the scheduler's event loop, rather than completing a future. The
+     * lookup itself is the only thing allocated.
+     */
+    public void lookupChannel(String name, Callback callback) {
+        SimulatedCall.execute(scheduler, Config.channelLatency(), new ChannelLookup(name, callback));
+    }
+
+    /**
+     * As {@link #lookupChannelCompletable(String)} but as a cold Observable: nothing is looked up until
+     * it is subscribed to and unsubscribing cancels the lookup. Like the
+     * completable version a channel that doesn't exist is emitted as null.
+     */
+    public Observable<Channel> lookupChannelObservable(String name) {
+        return RxFutures.observable(() -> lookupChannelCompletable(name));
+    }
+
+    /**
+     * Looks up every channel name, at most maxConcurrent at a time, emitting results
+     * in the same order. Only requests more names from upstream as results are
+     * consumed, so a slow subscriber holds back the lookups rather than
+     * having results pile up.
+     */
+    public Observable<Channel> lookupChannelsObservable(Observable<String> names, int maxConcurrent) {
+        return names.concatMapEager(this::lookupChannelObservable, maxConcurrent, maxConcurrent);
+    }
+
+    /**
+     * As {@link #lookupChannelCompletable(String)} but gives up when the deadline
+     * passes, and doesn't start at all if it couldn't finish in time even
+     * at its fastest.
+     */
+    public CompletableFuture<Channel> lookupChannelCompletable(String name, Deadline deadline) {
+        if (!deadline.allows(Config.channelLatency().minimumMillis(), TimeUnit.MILLISECONDS)) {
+            return deadline.skip("channel lookup");
+        }
+        return deadline.track(lookupChannelCompletable(name));
+    }
+
+    private class ChannelLookup extends SimulatedCall.Lookup<Channel> {
+        private final String name;
+        private final Callback callback;
+
+        private ChannelLookup(String name, Callback callback) {
+            super(Config.channelLatency(), "Channel lookup", lookupChannelCallbackMetrics);
+            this.name = name;
+            this.callback = callback;
+        }
+
+        @Override
+        Channel lookup() {
             LOG.info("Channel lookup complete");
-            result.complete(channels.get(name));
-        }, Config.CHANNEL_DELAY, TimeUnit.MILLISECONDS);
-        return result;
+            return channels.get(name);
+        }
+
+        @Override
+        void answer(Channel channel, Throwable error) {
+            callback.onChannel(channel, error);
+        }
     }
 }
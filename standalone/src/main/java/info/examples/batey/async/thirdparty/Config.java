@@ -1,8 +1,69 @@
 package info.examples.batey.async.thirdparty;
 
+import info.examples.batey.async.latency.LatencyModel;
+import info.examples.batey.async.latency.LatencyModels;
+
+/**
+ * Simulated latency of the third party services.
+ * <p>
+ * Each call draws from the service's {@link LatencyModel}, which can be
+ * swapped at runtime. They start off fixed at 500ms each, override the
+ * starting point with e.g. -Dthirdparty.delay=0 or per service with
+ * -Dthirdparty.user.delay=10.
+ * <p>
+ * The watch channel timeout scenario gives each request {@link
+ * #WATCH_CHANNEL_BUDGET}ms, override it with e.g.
+ * -Dthirdparty.watchchannel.budget=700. At the default delays that isn't
+ * enough for the user then permissions lookups, so the scenario shows the
+ * deadline being exceeded.
+ */
 public class Config {
-    public static final long DELAY = 500;
-    public static final long USER_DELAY = DELAY;
-    public static final long CHANNEL_DELAY = DELAY;
-    public static final long PERMISSION_DELAY = DELAY;
+    public static final long DELAY = Long.getLong("thirdparty.delay", 500);
+    public static final long USER_DELAY = Long.getLong("thirdparty.user.delay", DELAY);
+    public static final long CHANNEL_DELAY = Long.getLong("thirdparty.channel.delay", DELAY);
+    public static final long PERMISSION_DELAY = Long.getLong("thirdparty.permission.delay", DELAY);
+    public static final long WATCH_CHANNEL_BUDGET = Long.getLong("thirdparty.watchchannel.budget", 500);
+
+    private static volatile LatencyModel userLatency = LatencyModels.fixed(USER_DELAY);
+    private static volatile LatencyModel channelLatency = LatencyModels.fixed(CHANNEL_DELAY);
+    private static volatile LatencyModel permissionLatency = LatencyModels.fixed(PERMISSION_DELAY);
+
+    public static LatencyModel userLatency() {
+        return userLatency;
+    }
+
+    public static LatencyModel channelLatency() {
+        return channelLatency;
+    }
+
+    public static LatencyModel permissionLatency() {
+        return permissionLatency;
+    }
+
+    public static void setUserLatency(LatencyModel latency) {
+        userLatency = latency;
+    }
+
+    public static void setChannelLatency(LatencyModel latency) {
+        channelLatency = latency;
+    }
+
+    public static void setPermissionLatency(LatencyModel latency) {
+        permissionLatency = latency;
+    }
+
+    public static void setLatency(LatencyModel latency) {
+        setUserLatency(latency);
+        setChannelLatency(latency);
+        setPermissionLatency(latency);
+    }
+
+    /**
+     * Back to the fixed delays we started with.
+     */
+    public static void resetLatency() {
+        setUserLatency(LatencyModels.fixed(USER_DELAY));
+        setChannelLatency(LatencyModels.fixed(CHANNEL_DELAY));
+        setPermissionLatency(LatencyModels.fixed(PERMISSION_DELAY));
+    }
 }
@@ -0,0 +1,46 @@
+package info.examples.batey.async.thirdparty;
+
+import info.examples.batey.async.scheduling.Scheduler;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The current {@link Snapshot}, which can be swapped for a newer one while
+ * the services are serving from it.
+ * <p>
+ * Each lookup reads the current snapshot once, so it sees either the old
+ * set or the new one and never has to wait. The old mappings are released
+ * once the last lookup using them has finished and they are garbage
+ * collected.
+ */
+public class LiveSnapshot {
+
+    private final AtomicReference<Snapshot> current;
+
+    public LiveSnapshot(Snapshot initial) {
+        this.current = new AtomicReference<>(initial);
+    }
+
+    public Snapshot current() {
+        return current.get();
+    }
+
+    /**
+     * Serves from next from now on, returning the snapshot it replaced.
+     */
+    public Snapshot swap(Snapshot next) {
+        return current.getAndSet(next);
+    }
+
+    public UserService userService(Scheduler scheduler) {
+        return UserService.userService(userName -> current.get().users().get(userName), scheduler);
+    }
+
+    public PermissionsService permissionsService(Scheduler scheduler) {
+        return PermissionsService.permissionsService(() -> current.get().permissions(), scheduler);
+    }
+
+    public ChannelService channelService(Scheduler scheduler) {
+        return ChannelService.channelService(name -> current.get().channels().get(name), scheduler);
+    }
+}
@@ -0,0 +1,64 @@
+package info.examples.batey.async.thirdparty;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Gives every permission name a small ordinal so a user's permissions can
+ * be held as bits rather than a set of strings.
+ * <p>
+ * There are only ever a handful of permissions so ordinals are never
+ * reused. Names coming from requests should be resolved with
+ * {@link #ordinal(String)}, which doesn't add them, so clients can't grow
+ * the dictionary.
+ */
+public final class PermissionDictionary {
+
+    public static final int UNKNOWN = -1;
+
+    private static final ConcurrentMap<String, Integer> ORDINALS = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[0];
+
+    private PermissionDictionary() {
+    }
+
+    /**
+     * The ordinal for the permission, adding it if it is new.
+     */
+    public static int intern(String permission) {
+        Integer ordinal = ORDINALS.get(permission);
+        if (ordinal != null) {
+            return ordinal;
+        }
+        synchronized (ORDINALS) {
+            ordinal = ORDINALS.get(permission);
+            if (ordinal == null) {
+                String[] current = names;
+                ordinal = current.length;
+                String[] grown = Arrays.copyOf(current, ordinal + 1);
+                grown[ordinal] = permission;
+                // Publish the name before the ordinal so name() always finds it
+                names = grown;
+                ORDINALS.put(permission, ordinal);
+            }
+            return ordinal;
+        }
+    }
+
+    /**
+     * The ordinal for the permission or {@link #UNKNOWN} if nobody has it.
+     */
+    public static int ordinal(String permission) {
+        Integer ordinal = ORDINALS.get(permission);
+        return ordinal == null ? UNKNOWN : ordinal;
+    }
+
+    public static String name(int ordinal) {
+        return names[ordinal];
+    }
+
+    public static int size() {
+        return names.length;
+    }
+}
@@ -1,30 +1,105 @@
 package info.examples.batey.async.thirdparty;
 
-import com.google.common.collect.Sets;
-
-import java.util.Objects;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.StringJoiner;
 
+/**
+ * A user's permissions as a bitset over {@link PermissionDictionary}
+ * ordinals. The first 64 permissions live in a single long so the common
+ * case is one small object with no array.
+ */
 public class Permissions {
 
+    private static final long[] NO_WORDS = new long[0];
+
     public static Permissions permissions(String... permissions) {
-        return new Permissions(Sets.newHashSet(permissions));
+        long[] bits = new long[1];
+        for (String permission : permissions) {
+            int ordinal = PermissionDictionary.intern(permission);
+            int word = ordinal >>> 6;
+            if (word >= bits.length) {
+                bits = Arrays.copyOf(bits, word + 1);
+            }
+            bits[word] |= 1L << ordinal;
+        }
+        return fromBits(bits);
+    }
+
+    /**
+     * Permissions from a bitset, word i holding ordinals 64i to 64i + 63.
+     */
+    public static Permissions fromBits(long[] bits) {
+        int length = bits.length;
+        while (length > 1 && bits[length - 1] == 0) {
+            length--;
+        }
+        long first = length == 0 ? 0 : bits[0];
+        long[] rest = length > 1 ? Arrays.copyOfRange(bits, 1, length) : NO_WORDS;
+        return new Permissions(first, rest);
     }
 
-    private Set<String> permissions;
+    // Ordinals 0-63
+    private final long first;
+    // Ordinals 64 onwards, no trailing zero words so equals can compare arrays
+    private final long[] rest;
 
-    Permissions(Set<String> permissions) {
-        this.permissions = permissions;
+    private Permissions(long first, long[] rest) {
+        this.first = first;
+        this.rest = rest;
     }
 
     public boolean hasPermission(String permission) {
-        return permissions.contains(permission);
+        int ordinal = PermissionDictionary.ordinal(permission);
+        return ordinal != PermissionDictionary.UNKNOWN && hasPermission(ordinal);
+    }
+
+    /**
+     * For callers that resolve the permission's ordinal once and check it
+     * many times.
+     */
+    public boolean hasPermission(int ordinal) {
+        if (ordinal < 0) {
+            return false;
+        }
+        if (ordinal < 64) {
+            return (first & (1L << ordinal)) != 0;
+        }
+        int word = (ordinal >>> 6) - 1;
+        return word < rest.length && (rest[word] & (1L << ordinal)) != 0;
+    }
+
+    /**
+     * Word i of the bits, zero past the last one that has any set.
+     */
+    long word(int i) {
+        if (i == 0) {
+            return first;
+        }
+        return i - 1 < rest.length ? rest[i - 1] : 0;
+    }
+
+    int words() {
+        return rest.length + 1;
+    }
+
+    public long[] toBits() {
+        long[] bits = new long[rest.length + 1];
+        bits[0] = first;
+        System.arraycopy(rest, 0, bits, 1, rest.length);
+        return bits;
     }
 
     @Override
     public String toString() {
+        StringJoiner names = new StringJoiner(", ", "[", "]");
+        int words = rest.length + 1;
+        for (int ordinal = 0; ordinal < words * 64; ordinal++) {
+            if (hasPermission(ordinal)) {
+                names.add(PermissionDictionary.name(ordinal));
+            }
+        }
         return "Permissions{" +
-                "permissions=" + permissions +
+                "permissions=" + names +
                 '}';
     }
 
@@ -33,11 +108,11 @@ public class Permissions {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Permissions that = (Permissions) o;
-        return Objects.equals(permissions, that.permissions);
+        return first == that.first && Arrays.equals(rest, that.rest);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(permissions);
+        return 31 * Long.hashCode(first) + Arrays.hashCode(rest);
     }
 }
@@ -0,0 +1,117 @@
+package info.examples.batey.async.thirdparty;
+
+import info.examples.batey.async.store.IntBitsetTable;
+
+/**
+ * One {@link Permissions} per distinct bitset read out of an
+ * {@link IntBitsetTable}. However many users there are they share a handful
+ * of permission sets, so lookups hand out the same instance rather than
+ * decoding a new one every time. A hit compares the words in place and
+ * allocates nothing.
+ * <p>
+ * Reads are lock free over an open addressing array that is copied when a
+ * new set is added. Past {@link #MAX_DISTINCT} sets new ones are decoded
+ * each time rather than kept.
+ */
+final class PermissionsInterner {
+
+    static final int MAX_DISTINCT = 4096;
+
+    private final Object lock = new Object();
+    private volatile Permissions[] slots = new Permissions[16];
+    // Guarded by lock
+    private int size;
+
+    /**
+     * The user's permissions or null if the table doesn't have them.
+     */
+    Permissions lookup(IntBitsetTable table, int userId) {
+        int position = table.position(userId);
+        if (position < 0) {
+            return null;
+        }
+        int words = table.wordsPerValue();
+        int hash = hash(table, position, words);
+        Permissions[] current = slots;
+        int mask = current.length - 1;
+        for (int slot = hash & mask; current[slot] != null; slot = (slot + 1) & mask) {
+            if (matches(current[slot], table, position, words)) {
+                return current[slot];
+            }
+        }
+        return intern(Permissions.fromBits(table.get(userId)), hash);
+    }
+
+    private Permissions intern(Permissions permissions, int hash) {
+        synchronized (lock) {
+            Permissions[] current = slots;
+            int mask = current.length - 1;
+            for (int slot = hash & mask; current[slot] != null; slot = (slot + 1) & mask) {
+                if (current[slot].equals(permissions)) {
+                    // added by another thread meanwhile
+                    return current[slot];
+                }
+            }
+            if (size >= MAX_DISTINCT) {
+                return permissions;
+            }
+            Permissions[] next = new Permissions[(size + 1) * 2 > current.length ? current.length * 2 : current.length];
+            for (Permissions existing : current) {
+                if (existing != null) {
+                    insert(next, existing, hash(existing));
+                }
+            }
+            insert(next, permissions, hash);
+            size++;
+            slots = next;
+            return permissions;
+        }
+    }
+
+    private static void insert(Permissions[] slots, Permissions permissions, int hash) {
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = permissions;
+    }
+
+    private static boolean matches(Permissions permissions, IntBitsetTable table, int position, int words) {
+        if (permissions.words() > words) {
+            return false;
+        }
+        for (int word = 0; word < words; word++) {
+            if (table.word(position, word) != permissions.word(word)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Both hashes skip zero words, as the table pads with them and Permissions drops trailing ones
+
+    private static int hash(IntBitsetTable table, int position, int words) {
+        int hash = 0;
+        for (int word = 0; word < words; word++) {
+            hash = mix(hash, word, table.word(position, word));
+        }
+        return spread(hash);
+    }
+
+    private static int hash(Permissions permissions) {
+        int hash = 0;
+        for (int word = 0; word < permissions.words(); word++) {
+            hash = mix(hash, word, permissions.word(word));
+        }
+        return spread(hash);
+    }
+
+    private static int mix(int hash, int index, long word) {
+        return word == 0 ? hash : 31 * hash + index * 0x9E3779B9 + Long.hashCode(word);
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
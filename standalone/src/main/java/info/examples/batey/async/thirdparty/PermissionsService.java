@@ -2,60 +2,236 @@ package info.examples.batey.async.thirdparty;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.*;
+import com.codahale.metrics.MetricRegistry;
+import info.examples.batey.async.deadline.Deadline;
+import info.examples.batey.async.metrics.CallMetrics;
+import info.examples.batey.async.rx.RxFutures;
+import info.examples.batey.async.scheduling.Scheduler;
+import info.examples.batey.async.store.IntBitsetTable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import rx.Observable;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Map;
 import java.util.concurrent.*;
+import java.util.function.Supplier;
 
 public class PermissionsService {
 
     private static final Logger LOG = LoggerFactory.getLogger(PermissionsService.class);
 
-    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(1,
-            new ThreadFactoryBuilder().setNameFormat("permissions-service-%d").build());
-    private final ListeningScheduledExecutorService ls = MoreExecutors.listeningDecorator(executor);
+    // Ordinals are the same for every table, so one set of shared instances does for all of them
+    private static final PermissionsInterner INTERNED = new PermissionsInterner();
+
+    /**
+     * Told the answer to {@link #hasPermission(int, int, Callback)}.
+     */
+    public interface Callback {
+        /**
+         * @param permitted false if the user doesn't have the permission or
+         *                  the lookup failed
+         * @param error     null unless the lookup failed
+         */
+        void onPermission(boolean permitted, Throwable error);
+    }
+
+    private final Scheduler scheduler;
 
     public static PermissionsService permissionsService() {
+        return permissionsService(Scheduler.shared());
+    }
+
+    public static PermissionsService permissionsService(Scheduler scheduler) {
         Map<Integer, Permissions> of = ImmutableMap.of(
                 1, Permissions.permissions("SPORTS", "ENTS"),
                 2, Permissions.permissions()
         );
-        return new PermissionsService(of);
+        IntBitsetTable table = PermissionsSnapshot.toTable(of);
+        return new PermissionsService(() -> table, scheduler, null, null);
+    }
+
+    /**
+     * Serves the permissions in a {@link PermissionsSnapshot}, memory mapped
+     * rather than loaded onto the heap.
+     */
+    public static PermissionsService permissionsService(Path snapshot, Scheduler scheduler) throws IOException {
+        IntBitsetTable table = PermissionsSnapshot.load(snapshot);
+        return new PermissionsService(() -> table, scheduler, null, null);
+    }
+
+    /**
+     * Serves whichever table the supplier gives at the time of each lookup,
+     * e.g. from a {@link LiveSnapshot}.
+     */
+    public static PermissionsService permissionsService(Supplier<IntBitsetTable> permissions, Scheduler scheduler) {
+        return new PermissionsService(permissions, scheduler, null, null);
     }
 
-    private final Map<Integer, Permissions> permissions;
+    private final Supplier<IntBitsetTable> permissions;
 
-    private PermissionsService(Map<Integer, Permissions> permissions) {
+    private final CallMetrics permissionsMetrics;
+    private final CallMetrics hasPermissionMetrics;
+    private final CallMetrics hasPermissionCallbackMetrics;
+    private final CallMetrics permissionsAsyncMetrics;
+    private final CallMetrics permissionsListenableMetrics;
+    private final CallMetrics permissionsCompletableMetrics;
+    private final CallMetrics bulkPermissionsMetrics;
+
+    private PermissionsService(Supplier<IntBitsetTable> permissions, Scheduler scheduler, MetricRegistry metrics, String prefix) {
         this.permissions = permissions;
+        this.scheduler = scheduler;
+        this.permissionsMetrics = CallMetrics.callMetrics(metrics, prefix, PermissionsService.class, "permissions");
+        this.hasPermissionMetrics = CallMetrics.callMetrics(metrics, prefix, PermissionsService.class, "hasPermission");
+        this.hasPermissionCallbackMetrics = CallMetrics.callMetrics(metrics, prefix, PermissionsService.class, "hasPermissionCallback");
+        this.permissionsAsyncMetrics = CallMetrics.callMetrics(metrics, prefix, PermissionsService.class, "permissionsAsync");
+        this.permissionsListenableMetrics = CallMetrics.callMetrics(metrics, prefix, PermissionsService.class, "permissionsListenable");
+        this.permissionsCompletableMetrics = CallMetrics.callMetrics(metrics, prefix, PermissionsService.class, "permissionsCompletable");
+        this.bulkPermissionsMetrics = CallMetrics.callMetrics(metrics, prefix, PermissionsService.class, "bulkPermissions");
+    }
+
+    /**
+     * The same permissions, recording latency, in-flight and errors for each
+     * kind of lookup in the registry.
+     */
+    public PermissionsService instrumented(MetricRegistry metrics) {
+        return instrumented(metrics, null);
+    }
+
+    /**
+     * As {@link #instrumented(MetricRegistry)} with the metrics under
+     * prefix, e.g. the name of the resource using this instance.
+     */
+    public PermissionsService instrumented(MetricRegistry metrics, String prefix) {
+        return new PermissionsService(permissions, scheduler, metrics, prefix);
     }
 
     public Permissions permissions(int userId) {
-        Uninterruptibles.sleepUninterruptibly(Config.PERMISSION_DELAY, TimeUnit.MILLISECONDS);
+        SimulatedCall.await(Config.permissionLatency(), "Permissions lookup", permissionsMetrics);
         LOG.info("Permission lookup complete");
-        return permissions.get(userId);
+        return lookup(userId);
+    }
+
+    /**
+     * Checks a single permission straight off the table: unlike
+     * {@link #permissions(int)} the lookup allocates nothing.
+     */
+    public boolean hasPermission(int userId, int ordinal) {
+        SimulatedCall.await(Config.permissionLatency(), "Permissions lookup", hasPermissionMetrics);
+        LOG.info("Permission check complete");
+        return permissions.get().hasBit(userId, ordinal);
+    }
+
+    /**
+     * As {@link #hasPermission(int, int)} but tells the callback, on the
+     * scheduler's event loop, rather than blocking. The lookup itself is the
+     * only thing allocated.
+     */
+    public void hasPermission(int userId, int ordinal, Callback callback) {
+        SimulatedCall.execute(scheduler, Config.permissionLatency(), new PermissionCheck(userId, ordinal, callback));
     }
 
     public Future<Permissions> permissionsAsync(int userId) {
-        return executor.schedule(() -> {
+        return SimulatedCall.schedule(scheduler, Config.permissionLatency(), "Permissions lookup", permissionsAsyncMetrics, () -> {
             LOG.info("Permission lookup complete");
-            return permissions.get(userId);
-        }, Config.PERMISSION_DELAY, TimeUnit.MILLISECONDS);
+            return lookup(userId);
+        });
     }
 
     public ListenableFuture<Permissions> permissionsListenable(int userId) {
-        return ls.schedule(() -> {
+        return SimulatedCall.listenable(SimulatedCall.schedule(scheduler, Config.permissionLatency(), "Permissions lookup", permissionsListenableMetrics, () -> {
             LOG.info("Permission lookup complete");
-            return permissions.get(userId);
-        }, Config.PERMISSION_DELAY, TimeUnit.MILLISECONDS);
+            return lookup(userId);
+        }));
     }
 
     public CompletableFuture<Permissions> permissionsCompletable(int userId) {
-        CompletableFuture<Permissions> result = new CompletableFuture<>();
-        executor.schedule(() -> {
+        return SimulatedCall.schedule(scheduler, Config.permissionLatency(), "Permissions lookup", permissionsCompletableMetrics, () -> {
             LOG.info("Permissions look up complete");
-            result.complete(permissions.get(userId));
-        }, Config.PERMISSION_DELAY, TimeUnit.MILLISECONDS);
-        return result;
+            return lookup(userId);
+        });
+    }
+
+    /**
+     * As {@link #permissionsCompletable(int)} but as a cold Observable: nothing is looked up until
+     * it is subscribed to and unsubscribing cancels the lookup. Like the
+     * completable version a user that doesn't exist is emitted as null.
+     */
+    public Observable<Permissions> permissionsObservable(int userId) {
+        return RxFutures.observable(() -> permissionsCompletable(userId));
+    }
+
+    /**
+     * Looks up every user id, at most maxConcurrent at a time, emitting results
+     * in the same order. Only requests more ids from upstream as results are
+     * consumed, so a slow subscriber holds back the lookups rather than
+     * having results pile up.
+     */
+    public Observable<Permissions> permissionsObservable(Observable<Integer> userIds, int maxConcurrent) {
+        return userIds.concatMapEager(this::permissionsObservable, maxConcurrent, maxConcurrent);
+    }
+
+    /**
+     * As {@link #permissionsCompletable(int)} but gives up when the deadline
+     * passes, and doesn't start at all if it couldn't finish in time even
+     * at its fastest.
+     */
+    public CompletableFuture<Permissions> permissionsCompletable(int userId, Deadline deadline) {
+        if (!deadline.allows(Config.permissionLatency().minimumMillis(), TimeUnit.MILLISECONDS)) {
+            return deadline.skip("permissions lookup");
+        }
+        return deadline.track(permissionsCompletable(userId));
+    }
+
+    /**
+     * Bulk version of {@link #permissionsCompletable(int)}: one round trip for
+     * all the ids. The result lines up with userIds, with null for users
+     * that have no permissions.
+     */
+    public CompletableFuture<Permissions[]> permissionsCompletable(int[] userIds) {
+        return SimulatedCall.schedule(scheduler, Config.permissionLatency(), "Bulk permissions lookup", bulkPermissionsMetrics, () -> {
+            LOG.info("Bulk permissions look up complete for {} users", userIds.length);
+            // One table for the whole batch even if it's swapped meanwhile
+            IntBitsetTable table = permissions.get();
+            Permissions[] found = new Permissions[userIds.length];
+            for (int i = 0; i < userIds.length; i++) {
+                found[i] = lookup(table, userIds[i]);
+            }
+            return found;
+        });
+    }
+
+    private Permissions lookup(int userId) {
+        return lookup(permissions.get(), userId);
+    }
+
+    private static Permissions lookup(IntBitsetTable table, int userId) {
+        return INTERNED.lookup(table, userId);
+    }
+
+    private class PermissionCheck extends SimulatedCall.Lookup<Boolean> {
+        private final int userId;
+        private final int ordinal;
+        private final Callback callback;
+
+        private PermissionCheck(int userId, int ordinal, Callback callback) {
+            super(Config.permissionLatency(), "Permissions lookup", hasPermissionCallbackMetrics);
+            this.userId = userId;
+            this.ordinal = ordinal;
+            this.callback = callback;
+        }
+
+        // Boolean.valueOf hands back one of two constants, so no boxing garbage
+        @Override
+        Boolean lookup() {
+            LOG.info("Permission check complete");
+            return permissions.get().hasBit(userId, ordinal);
+        }
+
+        @Override
+        void answer(Boolean permitted, Throwable error) {
+            callback.onPermission(permitted != null && permitted, error);
+        }
     }
 }
@@ -0,0 +1,132 @@
+package info.examples.batey.async.thirdparty;
+
+import info.examples.batey.async.store.IntBitsetTable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Reads and writes the permissions of every user as an off heap
+ * {@link IntBitsetTable}.
+ * <p>
+ * Ordinals are only meaningful to the {@link PermissionDictionary} of the
+ * process that wrote them, so the file starts with the permission names in
+ * ordinal order:
+ * <pre>
+ * magic, name count, (length, UTF-8 bytes) per name, zero padding, IntBitsetTable
+ * </pre>
+ * The padding starts the table on an 8 byte boundary of the file, so the
+ * table's words are as aligned in the mapping as they are in direct memory.
+ * Loading maps the file rather than reading it. If this process already
+ * gave the names different ordinals the table is remapped into direct
+ * memory instead.
+ */
+public final class PermissionsSnapshot {
+
+    private static final int MAGIC = 0x32535250; // "PRS2"
+
+    private PermissionsSnapshot() {
+    }
+
+    public static IntBitsetTable toTable(Map<Integer, Permissions> permissions) {
+        int words = Math.max(1, (PermissionDictionary.size() + Long.SIZE - 1) / Long.SIZE);
+        IntBitsetTable table = IntBitsetTable.allocate(permissions.size(), words);
+        for (Map.Entry<Integer, Permissions> entry : permissions.entrySet()) {
+            table.put(entry.getKey(), entry.getValue().toBits());
+        }
+        return table;
+    }
+
+    /**
+     * Writes to a temporary file then moves it into place, so a reader never
+     * sees half a snapshot.
+     */
+    public static void write(Path file, IntBitsetTable table) throws IOException {
+        int names = PermissionDictionary.size();
+        byte[][] encoded = new byte[names][];
+        int headerBytes = 8;
+        for (int ordinal = 0; ordinal < names; ordinal++) {
+            encoded[ordinal] = PermissionDictionary.name(ordinal).getBytes(StandardCharsets.UTF_8);
+            headerBytes += 4 + encoded[ordinal].length;
+        }
+        headerBytes = aligned(headerBytes);
+        ByteBuffer header = ByteBuffer.allocate(headerBytes).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(names);
+        for (byte[] name : encoded) {
+            header.putInt(name.length).put(name);
+        }
+        // The rest is already zero
+        header.position(headerBytes);
+        header.flip();
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer body = table.asReadOnlyBuffer();
+            while (header.hasRemaining() || body.hasRemaining()) {
+                channel.write(new ByteBuffer[]{header, body});
+            }
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static IntBitsetTable load(Path file) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping outlives the channel
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        ByteBuffer header = mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt() != MAGIC) {
+            throw new IOException(file + " is not a permissions snapshot");
+        }
+        int names = header.getInt();
+        int[] ordinals = new int[names];
+        boolean remap = false;
+        for (int i = 0; i < names; i++) {
+            byte[] name = new byte[header.getInt()];
+            header.get(name);
+            ordinals[i] = PermissionDictionary.intern(new String(name, StandardCharsets.UTF_8));
+            remap |= ordinals[i] != i;
+        }
+        header.position(aligned(header.position()));
+        IntBitsetTable table = IntBitsetTable.wrap(header);
+        return remap ? remap(table, ordinals) : table;
+    }
+
+    private static int aligned(int offset) {
+        return (offset + Long.BYTES - 1) & -Long.BYTES;
+    }
+
+    private static IntBitsetTable remap(IntBitsetTable mapped, int[] ordinals) {
+        int highest = 0;
+        for (int ordinal : ordinals) {
+            highest = Math.max(highest, ordinal);
+        }
+        IntBitsetTable remapped = IntBitsetTable.allocate(mapped.size(), highest / Long.SIZE + 1);
+        long[] bits = new long[remapped.wordsPerValue()];
+        mapped.forEach((key, fileBits) -> {
+            Arrays.fill(bits, 0);
+            int known = Math.min(ordinals.length, fileBits.length * Long.SIZE);
+            for (int from = 0; from < known; from++) {
+                if ((fileBits[from >>> 6] & (1L << from)) != 0) {
+                    int to = ordinals[from];
+                    bits[to >>> 6] |= 1L << to;
+                }
+            }
+            remapped.put(key, bits);
+        });
+        return remapped;
+    }
+}
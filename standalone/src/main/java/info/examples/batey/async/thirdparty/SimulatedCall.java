@@ -0,0 +1,128 @@
+package info.examples.batey.async.thirdparty;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import info.examples.batey.async.latency.LatencyModel;
+import info.examples.batey.async.metrics.CallMetrics;
+import info.examples.batey.async.scheduling.DelayedTask;
+import info.examples.batey.async.scheduling.Scheduler;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A call to a third party service: waits for a delay drawn from the
+ * service's latency model then either answers or, if the model says so,
+ * fails with a {@link BackendException}.
+ */
+final class SimulatedCall {
+
+    private SimulatedCall() {
+    }
+
+    /**
+     * Blocks the calling thread for the simulated latency.
+     */
+    static void await(LatencyModel latency, String call, CallMetrics metrics) {
+        long start = metrics.start();
+        Uninterruptibles.sleepUninterruptibly(latency.nextDelayMillis(), TimeUnit.MILLISECONDS);
+        if (latency.nextFailure()) {
+            metrics.failure(start);
+            throw new BackendException(call + " failed");
+        }
+        metrics.success(start);
+    }
+
+    /**
+     * Completes with the result of the lookup after the simulated latency
+     * without holding a thread while waiting.
+     */
+    static <T> CompletableFuture<T> schedule(Scheduler scheduler, LatencyModel latency, String call,
+                                             CallMetrics metrics, Callable<T> lookup) {
+        boolean fail = latency.nextFailure();
+        return scheduler.schedule(() -> {
+            if (fail) {
+                throw new BackendException(call + " failed");
+            }
+            return lookup.call();
+        }, latency.nextDelayMillis(), TimeUnit.MILLISECONDS, metrics.listener());
+    }
+
+    /**
+     * The scheduled lookup as a ListenableFuture. Cancelling it cancels the
+     * lookup, which comes off the wheel.
+     */
+    static <T> ListenableFuture<T> listenable(CompletableFuture<T> lookup) {
+        SettableFuture<T> result = SettableFuture.create();
+        lookup.whenComplete((value, error) -> {
+            if (error != null) {
+                result.setException(error);
+            } else {
+                result.set(value);
+            }
+        });
+        result.addListener(() -> {
+            if (result.isCancelled()) {
+                lookup.cancel(false);
+            }
+        }, MoreExecutors.directExecutor());
+        return result;
+    }
+
+    /**
+     * Answers the lookup after the simulated latency without a future: the
+     * lookup is the only thing allocated.
+     */
+    static void execute(Scheduler scheduler, LatencyModel latency, Lookup<?> lookup) {
+        scheduler.execute(lookup, latency.nextDelayMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * A lookup that answers a callback. Subclasses keep the key and the
+     * callback in fields, where the future versions capture them in lambdas.
+     */
+    abstract static class Lookup<T> extends DelayedTask {
+        private final String call;
+        private final CallMetrics metrics;
+        private final boolean fail;
+        private final long start;
+
+        Lookup(LatencyModel latency, String call, CallMetrics metrics) {
+            this.call = call;
+            this.metrics = metrics;
+            this.fail = latency.nextFailure();
+            this.start = metrics.start();
+        }
+
+        abstract T lookup();
+
+        abstract void answer(T value, Throwable error);
+
+        @Override
+        protected final void fire() {
+            T value;
+            try {
+                if (fail) {
+                    throw new BackendException(call + " failed");
+                }
+                value = lookup();
+            } catch (RuntimeException e) {
+                metrics.failure(start);
+                answer(null, e);
+                return;
+            }
+            metrics.success(start);
+            answer(value, null);
+        }
+
+        @Override
+        protected final void rejected(RejectedExecutionException e) {
+            metrics.failure(start);
+            answer(null, e);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package info.examples.batey.async.thirdparty;
+
+import info.examples.batey.async.snapshot.Catalogue;
+import info.examples.batey.async.snapshot.CatalogueWriter;
+import info.examples.batey.async.snapshot.Codec;
+import info.examples.batey.async.snapshot.MappedCatalogue;
+import info.examples.batey.async.store.IntBitsetTable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * A consistent set of the user, permission and channel catalogues, one
+ * file each in a directory, all memory mapped.
+ * <p>
+ * To publish a new set write it to a fresh directory and hand it to
+ * {@link LiveSnapshot#swap(Snapshot)}: an existing directory is never
+ * modified under a reader.
+ */
+public final class Snapshot {
+
+    static final String USERS = "users.catalogue";
+    static final String PERMISSIONS = "permissions.snapshot";
+    static final String CHANNELS = "channels.catalogue";
+
+    static final Codec<User> USER_CODEC = new Codec<User>() {
+        @Override
+        public byte[] encode(User user) {
+            byte[] name = user.getName().getBytes(StandardCharsets.UTF_8);
+            byte[] userName = user.getUserName().getBytes(StandardCharsets.UTF_8);
+            return ByteBuffer.allocate(12 + name.length + userName.length)
+                    .putInt(user.getUserId())
+                    .putInt(name.length).put(name)
+                    .putInt(userName.length).put(userName)
+                    .array();
+        }
+
+        @Override
+        public User decode(ByteBuffer bytes) {
+            int userId = bytes.getInt();
+            String name = string(bytes);
+            String userName = string(bytes);
+            return new User(name, userName, userId);
+        }
+    };
+
+    static final Codec<Channel> CHANNEL_CODEC = new Codec<Channel>() {
+        @Override
+        public byte[] encode(Channel channel) {
+            return channel.getName().getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Channel decode(ByteBuffer bytes) {
+            byte[] name = new byte[bytes.remaining()];
+            bytes.get(name);
+            return new Channel(new String(name, StandardCharsets.UTF_8));
+        }
+    };
+
+    private final MappedCatalogue<User> users;
+    private final IntBitsetTable permissions;
+    private final MappedCatalogue<Channel> channels;
+
+    private Snapshot(MappedCatalogue<User> users, IntBitsetTable permissions, MappedCatalogue<Channel> channels) {
+        this.users = users;
+        this.permissions = permissions;
+        this.channels = channels;
+    }
+
+    public static Snapshot open(Path directory) throws IOException {
+        return new Snapshot(
+                MappedCatalogue.open(directory.resolve(USERS), USER_CODEC),
+                PermissionsSnapshot.load(directory.resolve(PERMISSIONS)),
+                MappedCatalogue.open(directory.resolve(CHANNELS), CHANNEL_CODEC));
+    }
+
+    /**
+     * Writes a small snapshot from in memory maps. Large catalogues should
+     * be streamed through a {@link CatalogueWriter} per catalogue, created
+     * with {@link #userWriter(Path)} and {@link #channelWriter(Path)}.
+     */
+    public static void write(Path directory, Map<String, User> users,
+                             Map<Integer, Permissions> permissions,
+                             Map<String, Channel> channels) throws IOException {
+        Files.createDirectories(directory);
+        try (CatalogueWriter<User> writer = userWriter(directory)) {
+            for (Map.Entry<String, User> user : users.entrySet()) {
+                writer.add(user.getKey(), user.getValue());
+            }
+            writer.commit();
+        }
+        PermissionsSnapshot.write(directory.resolve(PERMISSIONS), PermissionsSnapshot.toTable(permissions));
+        try (CatalogueWriter<Channel> writer = channelWriter(directory)) {
+            for (Map.Entry<String, Channel> channel : channels.entrySet()) {
+                writer.add(channel.getKey(), channel.getValue());
+            }
+            writer.commit();
+        }
+    }
+
+    public static CatalogueWriter<User> userWriter(Path directory) throws IOException {
+        return new CatalogueWriter<>(directory.resolve(USERS), USER_CODEC);
+    }
+
+    public static CatalogueWriter<Channel> channelWriter(Path directory) throws IOException {
+        return new CatalogueWriter<>(directory.resolve(CHANNELS), CHANNEL_CODEC);
+    }
+
+    public Catalogue<String, User> users() {
+        return users;
+    }
+
+    public IntBitsetTable permissions() {
+        return permissions;
+    }
+
+    public Catalogue<String, Channel> channels() {
+        return channels;
+    }
+
+    private static String string(ByteBuffer bytes) {
+        byte[] value = new byte[bytes.getInt()];
+        bytes.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
@@ -2,9 +2,18 @@ package info.examples.batey.async.thirdparty;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.*;
+import com.codahale.metrics.MetricRegistry;
+import info.examples.batey.async.deadline.Deadline;
+import info.examples.batey.async.metrics.CallMetrics;
+import info.examples.batey.async.rx.RxFutures;
+import info.examples.batey.async.scheduling.Scheduler;
+import info.examples.batey.async.snapshot.Catalogue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import rx.Observable;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.*;
 
@@ -12,52 +21,180 @@ public class UserService {
 
     private static final Logger LOG = LoggerFactory.getLogger(UserService.class);
 
-    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(1,
-            new ThreadFactoryBuilder().setNameFormat("user-service-%d").build());
-    private final ListeningScheduledExecutorService ls = MoreExecutors.listeningDecorator(executor);
+    /**
+     * Told the answer to {@link #lookupUser(String, Callback)}.
+     */
+    public interface Callback {
+        /**
+         * @param user  null if there is no such user or the lookup failed
+         * @param error null unless the lookup failed
+         */
+        void onUser(User user, Throwable error);
+    }
+
+    private final Scheduler scheduler;
 
     public static UserService userService() {
-        return new UserService(ImmutableMap.of(
+        return userService(Scheduler.shared());
+    }
+
+    public static UserService userService(Scheduler scheduler) {
+        Map<String, User> users = ImmutableMap.of(
                 "chbatey", new User("Christopher Batey", "chbatey", 1),
                 "trevor", new User("Trevor Sinclair", "trevor", 2)
-        ));
+        );
+        return new UserService(users::get, scheduler, null, null);
     }
 
-    private final Map<String, User> users;
+    /**
+     * Serves users from a catalogue, e.g. a {@link LiveSnapshot}.
+     */
+    public static UserService userService(Catalogue<String, User> users, Scheduler scheduler) {
+        return new UserService(users, scheduler, null, null);
+    }
+
+    private final Catalogue<String, User> users;
 
-    private UserService(Map<String, User> users) {
+    private final CallMetrics lookupUserMetrics;
+    private final CallMetrics lookupUserAsyncMetrics;
+    private final CallMetrics lookupUserListenableMetrics;
+    private final CallMetrics lookupUserCompletableMetrics;
+    private final CallMetrics lookupUserCallbackMetrics;
+    private final CallMetrics lookupUsersMetrics;
+
+    private UserService(Catalogue<String, User> users, Scheduler scheduler, MetricRegistry metrics, String prefix) {
         this.users = users;
+        this.scheduler = scheduler;
+        this.lookupUserMetrics = CallMetrics.callMetrics(metrics, prefix, UserService.class, "lookupUser");
+        this.lookupUserAsyncMetrics = CallMetrics.callMetrics(metrics, prefix, UserService.class, "lookupUserAsync");
+        this.lookupUserListenableMetrics = CallMetrics.callMetrics(metrics, prefix, UserService.class, "lookupUserListenable");
+        this.lookupUserCompletableMetrics = CallMetrics.callMetrics(metrics, prefix, UserService.class, "lookupUserCompletable");
+        this.lookupUserCallbackMetrics = CallMetrics.callMetrics(metrics, prefix, UserService.class, "lookupUserCallback");
+        this.lookupUsersMetrics = CallMetrics.callMetrics(metrics, prefix, UserService.class, "lookupUsers");
+    }
+
+    /**
+     * The same users, recording latency, in-flight and errors for each
+     * kind of lookup in the registry.
+     */
+    public UserService instrumented(MetricRegistry metrics) {
+        return instrumented(metrics, null);
+    }
+
+    /**
+     * As {@link #instrumented(MetricRegistry)} with the metrics under
+     * prefix, e.g. the name of the resource using this instance.
+     */
+    public UserService instrumented(MetricRegistry metrics, String prefix) {
+        return new UserService(users, scheduler, metrics, prefix);
     }
 
     public User lookupUser(String userName) {
-        Uninterruptibles.sleepUninterruptibly(Config.USER_DELAY, TimeUnit.MILLISECONDS);
+        SimulatedCall.await(Config.userLatency(), "User lookup", lookupUserMetrics);
         LOG.info("User look up complete");
         return users.get(userName);
     }
 
     public Future<User> lookupUserAsync(String userName) {
-        return executor.schedule(() -> {
+        return SimulatedCall.schedule(scheduler, Config.userLatency(), "User lookup", lookupUserAsyncMetrics, () -> {
             LOG.info("User look up complete");
             return users.get(userName);
-        }, Config.USER_DELAY, TimeUnit.MILLISECONDS);
+        });
     }
 
     public ListenableFuture<User> lookupUserListenable(String userName) {
-        return ls.schedule(() -> {
+        return SimulatedCall.listenable(SimulatedCall.schedule(scheduler, Config.userLatency(), "User lookup", lookupUserListenableMetrics, () -> {
             LOG.info("User lookup complete");
             return users.get(userName);
-        }, Config.USER_DELAY, TimeUnit.MILLISECONDS);
+        }));
     }
 
     public CompletableFuture<User> lookupUserCompletable(String userName) {
-        CompletableFuture<User> cUser = new CompletableFuture<>();
         // How you can very easily wrap existing APIs with an API that returns
-        // completable futures.
-        executor.schedule(() -> {
-                    LOG.info("User lookup complete");
-                    cUser.complete(users.get(userName));
-                },
-                Config.USER_DELAY, TimeUnit.MILLISECONDS);
-        return cUser;
+        // completable futures. Here the wrapping is in Scheduler#schedule.
+        return SimulatedCall.schedule(scheduler, Config.userLatency(), "User lookup", lookupUserCompletableMetrics, () -> {
+            LOG.info("User lookup complete");
+            return users.get(userName);
+        });
+    }
+
+    /**
+     * As {@link #lookupUserCompletable(String)} but tells the callback, on the
+     * scheduler's event loop, rather than completing a future. The lookup
+     * itself is the only thing allocated.
+     */
+    public void lookupUser(String userName, Callback callback) {
+        SimulatedCall.execute(scheduler, Config.userLatency(), new UserLookup(userName, callback));
+    }
+
+    /**
+     * As {@link #lookupUserCompletable(String)} but as a cold Observable: nothing is looked up until
+     * it is subscribed to and unsubscribing cancels the lookup. Like the
+     * completable version a user that doesn't exist is emitted as null.
+     */
+    public Observable<User> lookupUserObservable(String userName) {
+        return RxFutures.observable(() -> lookupUserCompletable(userName));
+    }
+
+    /**
+     * Looks up every user name, at most maxConcurrent at a time, emitting results
+     * in the same order. Only requests more names from upstream as results are
+     * consumed, so a slow subscriber holds back the lookups rather than
+     * having results pile up.
+     */
+    public Observable<User> lookupUsersObservable(Observable<String> userNames, int maxConcurrent) {
+        return userNames.concatMapEager(this::lookupUserObservable, maxConcurrent, maxConcurrent);
+    }
+
+    /**
+     * As {@link #lookupUserCompletable(String)} but gives up when the deadline
+     * passes, and doesn't start at all if it couldn't finish in time even
+     * at its fastest.
+     */
+    public CompletableFuture<User> lookupUserCompletable(String userName, Deadline deadline) {
+        if (!deadline.allows(Config.userLatency().minimumMillis(), TimeUnit.MILLISECONDS)) {
+            return deadline.skip("user lookup");
+        }
+        return deadline.track(lookupUserCompletable(userName));
+    }
+
+    /**
+     * Bulk version of {@link #lookupUserCompletable(String)}: one round trip
+     * for all the names. Users that don't exist are left out of the map.
+     */
+    public CompletableFuture<Map<String, User>> lookupUsers(Collection<String> userNames) {
+        return SimulatedCall.schedule(scheduler, Config.userLatency(), "Bulk user lookup", lookupUsersMetrics, () -> {
+            LOG.info("Bulk user lookup complete for {} users", userNames.size());
+            Map<String, User> found = new HashMap<>();
+            for (String userName : userNames) {
+                User user = users.get(userName);
+                if (user != null) {
+                    found.put(userName, user);
+                }
+            }
+            return found;
+        });
+    }
+
+    private class UserLookup extends SimulatedCall.Lookup<User> {
+        private final String userName;
+        private final Callback callback;
+
+        private UserLookup(String userName, Callback callback) {
+            super(Config.userLatency(), "User lookup", lookupUserCallbackMetrics);
+            this.userName = userName;
+            this.callback = callback;
+        }
+
+        @Override
+        User lookup() {
+            LOG.info("User lookup complete");
+            return users.get(userName);
+        }
+
+        @Override
+        void answer(User user, Throwable error) {
+            callback.onUser(user, error);
+        }
     }
 }
@@ -0,0 +1,141 @@
+package info.examples.batey.async;
+
+import info.examples.batey.async.batching.BatchLoader;
+import info.examples.batey.async.batching.PermissionsBatcher;
+import info.examples.batey.async.scheduling.Scheduler;
+import info.examples.batey.async.thirdparty.Permissions;
+import info.examples.batey.async.thirdparty.PermissionsService;
+import info.examples.batey.async.thirdparty.User;
+import info.examples.batey.async.thirdparty.UserService;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+public class Batching {
+
+    private Scheduler scheduler = Scheduler.shared();
+    private UserService users = UserService.userService();
+    private PermissionsService permissions = PermissionsService.permissionsService();
+
+    private List<Collection<String>> batches = new CopyOnWriteArrayList<>();
+
+    private Function<Collection<String>, CompletableFuture<Map<String, User>>> recordingLookup = names -> {
+        batches.add(new ArrayList<>(names));
+        return users.lookupUsers(names);
+    };
+
+    @Test(timeout = 1200)
+    public void lookups_within_window_are_one_bulk_call() throws Exception {
+        BatchLoader<String, User> loader = new BatchLoader<>(recordingLookup, 10, 50, TimeUnit.MILLISECONDS, scheduler);
+
+        CompletableFuture<User> chbatey = loader.load("chbatey");
+        CompletableFuture<User> trevor = loader.load("trevor");
+
+        assertEquals(new User("Christopher Batey", "chbatey", 1), chbatey.get());
+        assertEquals(new User("Trevor Sinclair", "trevor", 2), trevor.get());
+        assertEquals(1, batches.size());
+    }
+
+    @Test(timeout = 1200)
+    public void full_batch_goes_without_waiting_for_window() throws Exception {
+        BatchLoader<String, User> loader = new BatchLoader<>(recordingLookup, 2, 1, TimeUnit.HOURS, scheduler);
+
+        CompletableFuture<User> chbatey = loader.load("chbatey");
+        CompletableFuture<User> trevor = loader.load("trevor");
+
+        assertNotNull(chbatey.get());
+        assertNotNull(trevor.get());
+        assertEquals(1, batches.size());
+    }
+
+    @Test(timeout = 1200)
+    public void same_key_in_window_shares_lookup() throws Exception {
+        BatchLoader<String, User> loader = new BatchLoader<>(recordingLookup, 10, 50, TimeUnit.MILLISECONDS, scheduler);
+
+        CompletableFuture<User> first = loader.load("chbatey");
+        CompletableFuture<User> second = loader.load("chbatey");
+
+        assertEquals(first.get(), second.get());
+        assertEquals(1, batches.size());
+        assertEquals(1, batches.get(0).size());
+    }
+
+    @Test(timeout = 1200)
+    public void one_caller_cancelling_leaves_the_others_waiting() throws Exception {
+        BatchLoader<String, User> loader = new BatchLoader<>(recordingLookup, 10, 50, TimeUnit.MILLISECONDS, scheduler);
+
+        CompletableFuture<User> cancelled = loader.load("chbatey");
+        CompletableFuture<User> other = loader.load("chbatey");
+        cancelled.cancel(true);
+
+        assertEquals(new User("Christopher Batey", "chbatey", 1), other.get());
+        assertTrue(cancelled.isCancelled());
+    }
+
+    @Test(timeout = 1200)
+    public void missing_user_completes_with_null() throws Exception {
+        BatchLoader<String, User> loader = new BatchLoader<>(recordingLookup, 10, 50, TimeUnit.MILLISECONDS, scheduler);
+
+        assertNull(loader.load("charlie").get());
+    }
+
+    @Test(timeout = 1200)
+    public void bulk_failure_fails_every_lookup() throws Exception {
+        CompletableFuture<Map<String, User>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new RuntimeException("User service is down"));
+        BatchLoader<String, User> loader = new BatchLoader<>(names -> failed, 10, 50, TimeUnit.MILLISECONDS, scheduler);
+
+        List<CompletableFuture<User>> lookups = new ArrayList<>();
+        lookups.add(loader.load("chbatey"));
+        lookups.add(loader.load("trevor"));
+
+        for (CompletableFuture<User> lookup : lookups) {
+            try {
+                lookup.get();
+                fail("Expected the lookup to fail");
+            } catch (ExecutionException e) {
+                assertEquals("User service is down", e.getCause().getMessage());
+            }
+        }
+    }
+
+    @Test(timeout = 1200)
+    public void permissions_in_same_tick_are_one_bulk_call() throws Exception {
+        List<int[]> bulkCalls = new CopyOnWriteArrayList<>();
+        PermissionsBatcher batcher = new PermissionsBatcher(ids -> {
+            bulkCalls.add(ids);
+            return permissions.permissionsCompletable(ids);
+        }, 50, TimeUnit.MILLISECONDS, scheduler);
+
+        CompletableFuture<Permissions> one = batcher.permissionsCompletable(1);
+        CompletableFuture<Permissions> two = batcher.permissionsCompletable(2);
+        CompletableFuture<Permissions> three = batcher.permissionsCompletable(3);
+
+        assertEquals(Permissions.permissions("SPORTS", "ENTS"), one.get());
+        assertEquals(Permissions.permissions(), two.get());
+        assertNull(three.get());
+        assertEquals(1, bulkCalls.size());
+        assertArrayEquals(new int[]{1, 2, 3}, bulkCalls.get(0));
+    }
+
+    @Test(timeout = 1200)
+    public void permissions_batches_grow_past_initial_capacity() throws Exception {
+        PermissionsBatcher batcher = new PermissionsBatcher(permissions::permissionsCompletable, 50, TimeUnit.MILLISECONDS, scheduler);
+
+        List<CompletableFuture<Permissions>> lookups = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            lookups.add(batcher.permissionsCompletable(1));
+        }
+
+        for (CompletableFuture<Permissions> lookup : lookups) {
+            assertTrue(lookup.get().hasPermission("SPORTS"));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package info.examples.batey.async;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import info.examples.batey.async.blocking.BlockedThreadException;
+import info.examples.batey.async.blocking.BlockingWatchdog;
+import info.examples.batey.async.scheduling.Scheduler;
+import info.examples.batey.async.thirdparty.User;
+import info.examples.batey.async.thirdparty.UserService;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BlockingDetection {
+
+    private BlockingWatchdog watchdog = BlockingWatchdog.manual(50, TimeUnit.MILLISECONDS);
+    private Scheduler scheduler = new Scheduler("watched", 1, TimeUnit.MILLISECONDS, 512, 2, null, watchdog);
+
+    @After
+    public void close() {
+        scheduler.close();
+        watchdog.close();
+    }
+
+    @Test(timeout = 2000)
+    public void non_blocking_pipeline_passes() throws Exception {
+        UserService users = UserService.userService(scheduler);
+
+        CompletableFuture<User> cUser = users.lookupUserCompletable("chbatey")
+                .thenApplyAsync(user -> user, scheduler.executor());
+
+        assertEquals("chbatey", cUser.get().getUserName());
+        watchdog.assertNoBlocking();
+    }
+
+    @Test(timeout = 2000)
+    public void blocking_on_the_event_loop_is_reported_with_its_stack() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.executor().execute(() -> Uninterruptibles.awaitUninterruptibly(release));
+        Thread.sleep(100);
+
+        try {
+            watchdog.assertNoBlocking();
+            fail("Expected blocking to be detected");
+        } catch (AssertionError e) {
+            BlockedThreadException blocked = (BlockedThreadException) e.getCause();
+            assertTrue(blocked.getThreadName().startsWith("watched-loop-"));
+            assertTrue(blocked.getBlockedMillis() >= 50);
+            assertTrue(stackContains(blocked, "awaitUninterruptibly"));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test(timeout = 2000)
+    public void each_stuck_task_is_reported_once() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.executor().execute(() -> Uninterruptibles.awaitUninterruptibly(release));
+        Thread.sleep(100);
+
+        watchdog.sample();
+        watchdog.sample();
+        release.countDown();
+
+        assertEquals(1, watchdog.detections());
+    }
+
+    @Test(timeout = 2000)
+    public void fast_tasks_are_not_reported() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            scheduler.executor().execute(() -> { });
+            watchdog.sample();
+        }
+
+        assertEquals(0, watchdog.detections());
+    }
+
+    @Test(timeout = 2000)
+    public void watched_threads_are_reported_when_stuck_in_one_wait() throws Exception {
+        watchdog.watchThreads("io-");
+        CountDownLatch release = new CountDownLatch(1);
+        Thread io = new Thread(() -> Uninterruptibles.awaitUninterruptibly(release), "io-1");
+        io.start();
+        Thread.sleep(20);
+
+        watchdog.sample();
+        Thread.sleep(100);
+        watchdog.sample();
+        release.countDown();
+        io.join();
+
+        assertEquals(1, watchdog.detections());
+        assertEquals("io-1", watchdog.recentDetections().get(0).getThreadName());
+    }
+
+    @Test(timeout = 2000)
+    public void threads_waiting_for_work_are_not_reported() throws Exception {
+        watchdog.watchThreads("io-");
+        ExecutorService idle = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("io-pool-%d").build());
+        idle.submit(() -> { }).get();
+
+        watchdog.sample();
+        Thread.sleep(100);
+        watchdog.sample();
+        idle.shutdown();
+
+        watchdog.assertNoBlocking();
+    }
+
+    private static boolean stackContains(Throwable t, String method) {
+        for (StackTraceElement frame : t.getStackTrace()) {
+            if (frame.getMethodName().equals(method)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,150 @@
+package info.examples.batey.async;
+
+import info.examples.batey.async.bulkhead.Bulkhead;
+import info.examples.batey.async.bulkhead.BulkheadFullException;
+import info.examples.batey.async.scheduling.Scheduler;
+import info.examples.batey.async.thirdparty.Channel;
+import info.examples.batey.async.thirdparty.ChannelService;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+public class Bulkheads {
+
+    private PendingCalls<String> calls = new PendingCalls<>();
+
+    @Test(timeout = 1000)
+    public void calls_beyond_the_limit_wait_for_a_slot() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("channels", 2, 1);
+
+        bulkhead.call(calls::call);
+        bulkhead.call(calls::call);
+        CompletableFuture<String> third = bulkhead.call(calls::call);
+
+        assertEquals("Third call waits", 2, calls.size());
+        assertEquals(1, bulkhead.queued());
+        calls.get(0).complete("SkyOne");
+
+        assertEquals(3, calls.size());
+        calls.get(2).complete("SkySportsOne");
+        assertEquals("SkySportsOne", third.get());
+        assertEquals(1, bulkhead.inFlight());
+        assertEquals(2, bulkhead.peakInFlight());
+    }
+
+    @Test(timeout = 1000)
+    public void calls_fail_fast_when_queue_is_full() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("channels", 1, 1);
+        bulkhead.call(calls::call);
+        bulkhead.call(calls::call);
+
+        CompletableFuture<String> rejected = bulkhead.call(calls::call);
+
+        assertTrue("Expected to fail without waiting", rejected.isCompletedExceptionally());
+        try {
+            rejected.get();
+            fail("Expected the bulkhead to be full");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().toString(), e.getCause() instanceof BulkheadFullException);
+        }
+        assertEquals(1, calls.size());
+        assertEquals(1, bulkhead.rejected());
+    }
+
+    @Test(timeout = 1000)
+    public void failed_calls_free_their_slot() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("channels", 1, 0);
+        CompletableFuture<String> first = bulkhead.call(calls::call);
+
+        calls.get(0).completeExceptionally(new RuntimeException("Channel service down"));
+
+        assertTrue(first.isCompletedExceptionally());
+        assertEquals(0, bulkhead.inFlight());
+        bulkhead.call(calls::call);
+        assertEquals(2, calls.size());
+    }
+
+    @Test(timeout = 1000)
+    public void cancelled_queued_calls_never_start() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("channels", 1, 1);
+        bulkhead.call(calls::call);
+        CompletableFuture<String> queued = bulkhead.call(calls::call);
+
+        queued.cancel(false);
+        calls.get(0).complete("SkyOne");
+
+        assertEquals(1, calls.size());
+        assertEquals(0, bulkhead.inFlight());
+    }
+
+    @Test(timeout = 1000)
+    public void cancelled_queued_calls_give_up_their_place() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("channels", 1, 1);
+        bulkhead.call(calls::call);
+        CompletableFuture<String> queued = bulkhead.call(calls::call);
+
+        queued.cancel(false);
+
+        assertEquals(0, bulkhead.queued());
+        CompletableFuture<String> next = bulkhead.call(calls::call);
+        assertFalse("Expected room in the queue", next.isDone());
+        assertEquals(0, bulkhead.rejected());
+        calls.get(0).complete("SkyOne");
+        assertEquals(2, calls.size());
+    }
+
+    @Test(timeout = 1000)
+    public void cancelling_a_running_call_cancels_the_dependency() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("channels", 1, 0);
+        CompletableFuture<String> running = bulkhead.call(calls::call);
+
+        running.cancel(false);
+
+        assertTrue(calls.get(0).isCancelled());
+        assertEquals(0, bulkhead.inFlight());
+    }
+
+    @Test(timeout = 5000)
+    public void queued_calls_that_fail_straight_away_all_drain() throws Exception {
+        int queued = 20_000;
+        Bulkhead bulkhead = new Bulkhead("channels", 1, queued);
+        bulkhead.call(calls::call);
+        List<CompletableFuture<String>> waiting = new ArrayList<>();
+        for (int i = 0; i < queued; i++) {
+            // As an open circuit breaker answers
+            waiting.add(bulkhead.call(() -> failed(new RuntimeException("Circuit open"))));
+        }
+
+        calls.get(0).complete("SkyOne");
+
+        for (CompletableFuture<String> call : waiting) {
+            assertTrue(call.isCompletedExceptionally());
+        }
+        assertEquals(0, bulkhead.queued());
+        assertEquals(0, bulkhead.inFlight());
+    }
+
+    @Test(timeout = 2000)
+    public void wraps_a_real_service() throws Exception {
+        ChannelService channels = ChannelService.channelService(Scheduler.shared());
+        Bulkhead bulkhead = new Bulkhead("channels", 1, 1);
+
+        CompletableFuture<Channel> first = bulkhead.call(() -> channels.lookupChannelCompletable("SkyOne"));
+        CompletableFuture<Channel> second = bulkhead.call(() -> channels.lookupChannelCompletable("SkySportsOne"));
+
+        assertEquals(new Channel("SkyOne"), first.get());
+        assertEquals(new Channel("SkySportsOne"), second.get());
+        assertEquals(1, bulkhead.peakInFlight());
+    }
+
+    private static CompletableFuture<String> failed(Throwable error) {
+        CompletableFuture<String> failed = new CompletableFuture<>();
+        failed.completeExceptionally(error);
+        return failed;
+    }
+}
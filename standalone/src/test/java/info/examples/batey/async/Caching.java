@@ -0,0 +1,168 @@
+package info.examples.batey.async;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheStats;
+import info.examples.batey.async.cache.AsyncCache;
+import info.examples.batey.async.cache.CachingChannelService;
+import info.examples.batey.async.thirdparty.Channel;
+import info.examples.batey.async.thirdparty.ChannelService;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+public class Caching {
+
+    private FakeTicker ticker = new FakeTicker();
+
+    // Created outside the timed test so starting the shared scheduler isn't timed
+    private ChannelService channelService = ChannelService.channelService();
+
+    private AtomicInteger loads = new AtomicInteger();
+    private Map<String, CompletableFuture<String>> backend = new ConcurrentHashMap<>();
+
+    // Each load gets a fresh future the test completes when it likes
+    private Function<String, CompletableFuture<String>> loader = key -> {
+        loads.incrementAndGet();
+        CompletableFuture<String> value = new CompletableFuture<>();
+        backend.put(key, value);
+        return value;
+    };
+
+    @Test
+    public void second_lookup_is_a_hit() throws Exception {
+        AsyncCache<String, String> cache = AsyncCache.<String, String>newBuilder().build(loader);
+
+        CompletableFuture<String> first = cache.get("chbatey");
+        backend.get("chbatey").complete("Christopher");
+
+        assertEquals("Christopher", first.get());
+        assertEquals("Christopher", cache.get("chbatey").get());
+        assertEquals(1, loads.get());
+
+        CacheStats stats = cache.stats();
+        assertEquals(1, stats.hitCount());
+        assertEquals(1, stats.missCount());
+        assertEquals(1, stats.loadSuccessCount());
+    }
+
+    @Test
+    public void concurrent_misses_share_one_load() throws Exception {
+        AsyncCache<String, String> cache = AsyncCache.<String, String>newBuilder().build(loader);
+
+        CompletableFuture<String> first = cache.get("chbatey");
+        CompletableFuture<String> second = cache.get("chbatey");
+        backend.get("chbatey").complete("Christopher");
+
+        assertEquals("Christopher", first.get());
+        assertEquals("Christopher", second.get());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void entries_expire_after_ttl() throws Exception {
+        AsyncCache<String, String> cache = AsyncCache.<String, String>newBuilder()
+                .expireAfterWrite(1, TimeUnit.MINUTES)
+                .ticker(ticker)
+                .build(loader);
+        cache.get("chbatey");
+        backend.get("chbatey").complete("Christopher");
+
+        ticker.advance(2, TimeUnit.MINUTES);
+        CompletableFuture<String> afterExpiry = cache.get("chbatey");
+
+        assertFalse("Expected a new load", afterExpiry.isDone());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void hot_keys_are_refreshed_before_they_expire() throws Exception {
+        AsyncCache<String, String> cache = AsyncCache.<String, String>newBuilder()
+                .expireAfterWrite(1, TimeUnit.MINUTES)
+                .refreshAfterWrite(30, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .build(loader);
+        cache.get("chbatey");
+        backend.get("chbatey").complete("Christopher");
+
+        ticker.advance(45, TimeUnit.SECONDS);
+        CompletableFuture<String> duringRefresh = cache.get("chbatey");
+
+        assertEquals("Old value returned straight away", "Christopher", duringRefresh.get());
+        assertEquals(2, loads.get());
+        backend.get("chbatey").complete("Chris");
+
+        ticker.advance(20, TimeUnit.SECONDS);
+        assertEquals("Refreshed value outlives the original ttl", "Chris", cache.get("chbatey").get());
+        assertEquals(1, cache.refreshCount());
+    }
+
+    @Test
+    public void size_bound_evicts() throws Exception {
+        AsyncCache<String, String> cache = AsyncCache.<String, String>newBuilder()
+                .maximumSize(1)
+                .build(key -> CompletableFuture.completedFuture(key.toUpperCase()));
+
+        cache.get("chbatey");
+        cache.get("trevor");
+
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.stats().evictionCount());
+    }
+
+    @Test
+    public void weight_bound_evicts() throws Exception {
+        AsyncCache<String, String> cache = AsyncCache.<String, String>newBuilder()
+                .maximumWeight(10, (key, value) -> value.length())
+                .build(key -> CompletableFuture.completedFuture(key.toUpperCase()));
+
+        cache.get("chbatey");
+        cache.get("trevor");
+
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void failures_are_not_cached() throws Exception {
+        AsyncCache<String, String> cache = AsyncCache.<String, String>newBuilder().build(loader);
+
+        CompletableFuture<String> failed = cache.get("chbatey");
+        backend.get("chbatey").completeExceptionally(new RuntimeException("Backend down"));
+
+        assertTrue(failed.isCompletedExceptionally());
+        cache.get("chbatey");
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.stats().loadExceptionCount());
+    }
+
+    @Test(timeout = 1200)
+    public void caching_channel_service() throws Exception {
+        CachingChannelService channels = CachingChannelService.cachingChannelService(channelService);
+
+        assertEquals(new Channel("SkySportsOne"), channels.lookupChannelCompletable("SkySportsOne").get());
+        CompletableFuture<Channel> cached = channels.lookupChannelCompletable("SkySportsOne");
+
+        assertTrue("Expected no delay the second time", cached.isDone());
+        assertEquals(1, channels.stats().hitCount());
+    }
+
+    private static class FakeTicker extends Ticker {
+        private final AtomicLong nanos = new AtomicLong();
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+
+        void advance(long time, TimeUnit unit) {
+            nanos.addAndGet(unit.toNanos(time));
+        }
+    }
+}
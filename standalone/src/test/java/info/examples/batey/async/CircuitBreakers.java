@@ -0,0 +1,173 @@
+package info.examples.batey.async;
+
+import info.examples.batey.async.circuitbreaker.CallNotPermittedException;
+import info.examples.batey.async.circuitbreaker.CircuitBreaker;
+import info.examples.batey.async.circuitbreaker.CircuitBreakerPolicy;
+import info.examples.batey.async.latency.LatencyModels;
+import info.examples.batey.async.scheduling.Scheduler;
+import info.examples.batey.async.thirdparty.Config;
+import info.examples.batey.async.thirdparty.User;
+import info.examples.batey.async.thirdparty.UserService;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakers {
+
+    private PendingCalls<String> calls = new PendingCalls<>();
+
+    // Opens when half of the last 4 calls fail or are slower than 100ms,
+    // probes with 2 calls after 100ms
+    private CircuitBreaker breaker = new CircuitBreaker("channels",
+            new CircuitBreakerPolicy(4, 4, 0.5, 0.5, 100, 100, TimeUnit.MILLISECONDS, 2));
+
+    @After
+    public void resetLatency() {
+        Config.resetLatency();
+    }
+
+    @Test
+    public void stays_closed_while_calls_succeed() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            callSucceeds();
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    public void opens_once_failure_rate_crosses_threshold() throws Exception {
+        callSucceeds();
+        callSucceeds();
+        callFails();
+        assertEquals("Not enough calls to judge", CircuitBreaker.State.CLOSED, breaker.state());
+        callFails();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertNotPermitted(breaker.call(calls::call));
+        assertEquals("Open circuit doesn't call the backend", 4, calls.size());
+        assertEquals(1, breaker.notPermitted());
+    }
+
+    @Test(timeout = 1000)
+    public void opens_when_too_many_calls_are_slow() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            callSucceeds();
+        }
+        for (int i = 0; i < 2; i++) {
+            CompletableFuture<String> slow = breaker.call(calls::call);
+            Thread.sleep(150);
+            calls.last().complete("SkyOne");
+            slow.get();
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+
+    @Test(timeout = 1000)
+    public void opens_when_calls_hang() throws Exception {
+        callSucceeds();
+        callSucceeds();
+        breaker.call(calls::call);
+        breaker.call(calls::call);
+
+        while (breaker.state() != CircuitBreaker.State.OPEN) {
+            Thread.sleep(10);
+        }
+        assertNotPermitted(breaker.call(calls::call));
+        assertEquals("Hung calls never answered", 4, calls.size());
+    }
+
+    @Test(timeout = 1000)
+    public void closes_again_when_probes_succeed() throws Exception {
+        open();
+        Thread.sleep(150);
+
+        CompletableFuture<String> probe = breaker.call(calls::call);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        breaker.call(calls::call);
+        assertNotPermitted(breaker.call(calls::call));
+        calls.get(calls.size() - 2).complete("SkyOne");
+        calls.last().complete("SkySportsOne");
+
+        assertEquals("SkyOne", probe.get());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test(timeout = 1000)
+    public void opens_again_when_probes_fail() throws Exception {
+        open();
+        Thread.sleep(150);
+
+        callFails();
+        callFails();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+
+    @Test(timeout = 1000)
+    public void cancelled_probes_are_handed_back() throws Exception {
+        open();
+        Thread.sleep(150);
+
+        breaker.call(calls::call).cancel(false);
+        callSucceeds();
+        callSucceeds();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test(timeout = 5000)
+    public void fails_fast_when_backend_is_down() throws Exception {
+        Config.setLatency(LatencyModels.withFailures(LatencyModels.fixed(10), 1.0));
+        UserService users = UserService.userService(Scheduler.shared());
+        CircuitBreaker userBreaker = new CircuitBreaker("users",
+                new CircuitBreakerPolicy(10, 5, 0.5, 1.0, 1, 10, TimeUnit.SECONDS, 1));
+
+        for (int i = 0; i < 5; i++) {
+            CompletableFuture<User> user = userBreaker.call(() -> users.lookupUserCompletable("chbatey"));
+            assertTrue(waitForFailure(user) != null);
+        }
+        CompletableFuture<User> rejected = userBreaker.call(() -> users.lookupUserCompletable("chbatey"));
+
+        assertTrue("Expected to fail without waiting", rejected.isCompletedExceptionally());
+        assertNotPermitted(rejected);
+    }
+
+    private void callSucceeds() throws Exception {
+        CompletableFuture<String> result = breaker.call(calls::call);
+        calls.last().complete("SkyOne");
+        result.get();
+    }
+
+    private void callFails() {
+        breaker.call(calls::call);
+        calls.last().completeExceptionally(new RuntimeException("Channel service down"));
+    }
+
+    private void open() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            callFails();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+
+    private Throwable waitForFailure(CompletableFuture<?> future) throws InterruptedException {
+        try {
+            future.get();
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+    }
+
+    private void assertNotPermitted(CompletableFuture<?> future) throws InterruptedException {
+        Throwable cause = waitForFailure(future);
+        assertTrue(String.valueOf(cause), cause instanceof CallNotPermittedException);
+    }
+}
@@ -0,0 +1,96 @@
+package info.examples.batey.async;
+
+import info.examples.batey.async.limit.AimdLimiter;
+import info.examples.batey.async.scheduling.Scheduler;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ConcurrencyLimits {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(5);
+
+    private AimdLimiter limiter = new AimdLimiter("async", 4, 2, 6, 0.5, 1, TimeUnit.SECONDS);
+
+    @Test
+    public void requests_over_the_limit_are_rejected() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+
+        assertFalse(limiter.tryAcquire());
+        assertEquals(4, limiter.inFlight());
+        assertEquals(1, limiter.rejected());
+    }
+
+    @Test
+    public void limit_grows_while_requests_are_fast_and_the_limit_is_used() throws Exception {
+        acquire(4);
+
+        limiter.release(FAST, false);
+        limiter.release(FAST, false);
+
+        assertEquals(6, limiter.limit());
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void limit_stays_put_when_mostly_idle() throws Exception {
+        acquire(1);
+
+        limiter.release(FAST, false);
+
+        assertEquals(4, limiter.limit());
+    }
+
+    @Test
+    public void limit_backs_off_on_slow_or_dropped_requests() throws Exception {
+        acquire(2);
+
+        limiter.release(SLOW, false);
+        assertEquals(2, limiter.limit());
+        limiter.release(FAST, true);
+
+        assertEquals("Never goes below the minimum", 2, limiter.limit());
+        assertEquals(0, limiter.inFlight());
+    }
+
+    @Test(timeout = 1000)
+    public void permits_held_too_long_are_released_as_dropped() throws Exception {
+        AimdLimiter.Permit hung = limiter.tryAcquire(Scheduler.shared(), 50, TimeUnit.MILLISECONDS);
+        assertEquals(1, limiter.inFlight());
+
+        while (limiter.inFlight() > 0) {
+            Thread.sleep(10);
+        }
+
+        assertEquals("Backed off", 2, limiter.limit());
+        assertFalse("Already released", hung.release(false));
+        assertEquals(0, limiter.inFlight());
+    }
+
+    @Test(timeout = 1000)
+    public void permits_released_in_time_are_only_released_once() throws Exception {
+        AimdLimiter.Permit permit = limiter.tryAcquire(Scheduler.shared(), 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(permit.release(false));
+        Thread.sleep(100);
+
+        assertEquals(0, limiter.inFlight());
+        assertEquals(4, limiter.limit());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void minimum_must_be_below_initial_limit() throws Exception {
+        new AimdLimiter("async", 4, 5, 6, 0.5, 1, TimeUnit.SECONDS);
+    }
+
+    private void acquire(int permits) {
+        for (int i = 0; i < permits; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+    }
+}
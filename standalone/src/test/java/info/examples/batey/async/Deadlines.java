@@ -0,0 +1,118 @@
+package info.examples.batey.async;
+
+import info.examples.batey.async.deadline.Deadline;
+import info.examples.batey.async.deadline.DeadlineExceededException;
+import info.examples.batey.async.latency.LatencyModels;
+import info.examples.batey.async.scheduling.Scheduler;
+import info.examples.batey.async.thirdparty.*;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class Deadlines {
+
+    private Scheduler scheduler = Scheduler.shared();
+    private UserService users = UserService.userService(scheduler);
+    private PermissionsService permissions = PermissionsService.permissionsService(scheduler);
+    private ChannelService channels = ChannelService.channelService(scheduler);
+
+    @After
+    public void resetLatency() {
+        Config.resetLatency();
+    }
+
+    @Test(timeout = 1200)
+    public void lookups_within_budget_complete() throws Exception {
+        Deadline deadline = Deadline.after(1000, TimeUnit.MILLISECONDS, scheduler);
+
+        assertEquals(new Channel("SkySportsOne"), channels.lookupChannelCompletable("SkySportsOne", deadline).get());
+    }
+
+    @Test(timeout = 200)
+    public void lookups_that_cannot_finish_in_time_are_skipped() throws Exception {
+        Deadline deadline = Deadline.after(100, TimeUnit.MILLISECONDS, scheduler);
+
+        CompletableFuture<User> cUser = users.lookupUserCompletable("chbatey", deadline);
+
+        assertTrue("Expected to fail without waiting", cUser.isCompletedExceptionally());
+        assertDeadlineExceeded(cUser);
+    }
+
+    @Test(timeout = 1200)
+    public void outstanding_work_is_dropped_when_deadline_passes() throws Exception {
+        AtomicBoolean ran = new AtomicBoolean();
+        Deadline deadline = Deadline.after(50, TimeUnit.MILLISECONDS, scheduler);
+
+        CompletableFuture<Boolean> slow = deadline.track(scheduler.schedule(() -> {
+            ran.set(true);
+            return true;
+        }, 300, TimeUnit.MILLISECONDS));
+
+        assertDeadlineExceeded(slow);
+        Thread.sleep(400);
+        assertFalse("Expected the scheduled work never to run", ran.get());
+        assertFalse("Nothing can start once it has passed", deadline.allows(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(timeout = 1200)
+    public void whole_pipeline_fails_at_the_deadline() throws Exception {
+        Deadline deadline = Deadline.after(700, TimeUnit.MILLISECONDS, scheduler);
+
+        CompletableFuture<Permissions> cPermissions = users.lookupUserCompletable("chbatey", deadline)
+                .thenCompose(user -> permissions.permissionsCompletable(user.getUserId(), deadline));
+        CompletableFuture<Channel> cChannel = channels.lookupChannelCompletable("SkySportsOne", deadline);
+        CompletableFuture<Result> cResult = deadline.track(cPermissions.thenCombine(cChannel, (p, c) -> new Result(c, p)));
+
+        assertDeadlineExceeded(cResult);
+        assertEquals("Channel lookup has time to finish", new Channel("SkySportsOne"), cChannel.get());
+    }
+
+    @Test(timeout = 1200)
+    public void lookups_that_might_finish_in_time_are_started() throws Exception {
+        Config.setUserLatency(LatencyModels.uniform(10, 990));
+        Deadline deadline = Deadline.after(200, TimeUnit.MILLISECONDS, scheduler);
+
+        CompletableFuture<User> cUser = users.lookupUserCompletable("chbatey", deadline);
+
+        assertFalse("Expected to start though slower than expected on average", cUser.isDone());
+        deadline.complete();
+    }
+
+    @Test(timeout = 1200)
+    public void watch_channel_budget_is_exceeded_at_the_default_delays() throws Exception {
+        Deadline deadline = Deadline.after(Config.WATCH_CHANNEL_BUDGET, TimeUnit.MILLISECONDS, scheduler);
+
+        CompletableFuture<Permissions> cPermissions = users.lookupUserCompletable("chbatey", deadline)
+                .thenCompose(user -> permissions.permissionsCompletable(user.getUserId(), deadline));
+        CompletableFuture<Channel> cChannel = channels.lookupChannelCompletable("SkySportsOne", deadline);
+
+        assertDeadlineExceeded(deadline.track(cPermissions.thenCombine(cChannel, (p, c) -> new Result(c, p))));
+    }
+
+    @Test
+    public void remaining_budget() throws Exception {
+        Deadline deadline = Deadline.after(1, TimeUnit.HOURS, scheduler);
+
+        assertTrue(deadline.remaining(TimeUnit.MINUTES) >= 59);
+        assertTrue(deadline.allows(500, TimeUnit.MILLISECONDS));
+        assertFalse(deadline.allows(2, TimeUnit.HOURS));
+        assertTrue("No minimum", deadline.allows(0, TimeUnit.MILLISECONDS));
+        assertFalse(deadline.isExpired());
+        deadline.complete();
+    }
+
+    private void assertDeadlineExceeded(CompletableFuture<?> future) throws InterruptedException {
+        try {
+            future.get();
+            fail("Expected the deadline to be exceeded");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().toString(), e.getCause() instanceof DeadlineExceededException);
+        }
+    }
+}
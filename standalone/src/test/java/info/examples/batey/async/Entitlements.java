@@ -0,0 +1,95 @@
+package info.examples.batey.async;
+
+import com.codahale.metrics.MetricRegistry;
+import info.examples.batey.async.entitlement.EntitlementService;
+import info.examples.batey.async.latency.LatencyModels;
+import info.examples.batey.async.scheduling.Scheduler;
+import info.examples.batey.async.thirdparty.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+public class Entitlements {
+
+    private static final String LOOKUP_CHANNEL = MetricRegistry.name(ChannelService.class, "lookupChannelCompletable");
+    private static final String PERMISSIONS = MetricRegistry.name(PermissionsService.class, "permissionsCompletable");
+
+    private MetricRegistry registry = new MetricRegistry();
+    private EntitlementService entitlements = EntitlementService.entitlementService(
+            UserService.userService(),
+            PermissionsService.permissionsService(Scheduler.shared()).instrumented(registry),
+            ChannelService.channelService(Scheduler.shared()).instrumented(registry));
+
+    @Before
+    public void fastServices() {
+        Config.setLatency(LatencyModels.fixed(10));
+    }
+
+    @After
+    public void resetLatency() {
+        Config.resetLatency();
+    }
+
+    @Test(timeout = 1000)
+    public void chbatey_can_watch_sky_sports() throws Exception {
+        assertTrue(entitlements.canWatch("chbatey", "SPORTS", "SkySportsOne").get());
+    }
+
+    @Test(timeout = 1000)
+    public void trevor_has_no_sports() throws Exception {
+        assertFalse(entitlements.canWatch("trevor", "SPORTS", "SkySportsOne").get());
+    }
+
+    @Test(timeout = 1000)
+    public void unknown_user_is_denied_not_an_error() throws Exception {
+        assertFalse(entitlements.canWatch("nobody", "SPORTS", "SkySportsOne").get());
+
+        assertEquals("No permissions lookup for a user that doesn't exist",
+                0, registry.timer(PERMISSIONS + ".latency").getCount());
+    }
+
+    @Test(timeout = 1000)
+    public void unknown_channel_is_denied_without_waiting_for_user() throws Exception {
+        Config.setUserLatency(LatencyModels.fixed(5000));
+
+        assertFalse(entitlements.canWatch("chbatey", "SPORTS", "BBCOne").get());
+    }
+
+    @Test(timeout = 1000)
+    public void channel_lookup_is_skipped_once_permissions_deny() throws Exception {
+        Config.setChannelLatency(LatencyModels.fixed(5000));
+
+        assertFalse(entitlements.canWatch("trevor", "SPORTS", "SkySportsOne").get());
+
+        assertEquals(0, registry.counter(LOOKUP_CHANNEL + ".in-flight").getCount());
+        assertEquals("Cancelled before it was made", 0, registry.timer(LOOKUP_CHANNEL + ".latency").getCount());
+    }
+
+    @Test(timeout = 1000)
+    public void backend_failure_fails_the_check() throws Exception {
+        Config.setPermissionLatency(LatencyModels.withFailures(LatencyModels.fixed(10), 1.0));
+
+        try {
+            entitlements.canWatch("chbatey", "SPORTS", "SkySportsOne").get();
+            fail("Expected the check to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BackendException);
+        }
+    }
+
+    @Test(timeout = 1000)
+    public void cancelling_the_check_cancels_the_lookups() throws Exception {
+        Config.setLatency(LatencyModels.fixed(5000));
+
+        CompletableFuture<Boolean> check = entitlements.canWatch("chbatey", "SPORTS", "SkySportsOne");
+        assertEquals(1, registry.counter(LOOKUP_CHANNEL + ".in-flight").getCount());
+        check.cancel(false);
+
+        assertEquals(0, registry.counter(LOOKUP_CHANNEL + ".in-flight").getCount());
+    }
+}
@@ -0,0 +1,81 @@
+package info.examples.batey.async;
+
+import com.codahale.metrics.MetricRegistry;
+import info.examples.batey.async.fused.WatchChannelChecker;
+import info.examples.batey.async.latency.LatencyModels;
+import info.examples.batey.async.scheduling.Scheduler;
+import info.examples.batey.async.thirdparty.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+public class FusedChecks {
+
+    private MetricRegistry registry = new MetricRegistry();
+    private PermissionsService permissions = PermissionsService.permissionsService(Scheduler.shared()).instrumented(registry);
+    private WatchChannelChecker checker = WatchChannelChecker.watchChannelChecker(
+            UserService.userService(), permissions, ChannelService.channelService());
+
+    @Before
+    public void fastServices() {
+        Config.setLatency(LatencyModels.fixed(10));
+    }
+
+    @After
+    public void resetLatency() {
+        Config.resetLatency();
+    }
+
+    @Test(timeout = 1000)
+    public void chbatey_can_watch_sky_sports() throws Exception {
+        assertTrue(canWatch("chbatey", "SPORTS", "SkySportsOne").get());
+    }
+
+    @Test(timeout = 1000)
+    public void trevor_has_no_sports() throws Exception {
+        assertFalse(canWatch("trevor", "SPORTS", "SkySportsOne").get());
+    }
+
+    @Test(timeout = 1000)
+    public void unknown_channel_cant_be_watched() throws Exception {
+        assertFalse(canWatch("chbatey", "SPORTS", "BBCOne").get());
+    }
+
+    @Test(timeout = 1000)
+    public void unknown_user_is_answered_without_permissions_lookup() throws Exception {
+        assertFalse(canWatch("nobody", "SPORTS", "SkySportsOne").get());
+
+        String hasPermission = MetricRegistry.name(PermissionsService.class, "hasPermissionCallback");
+        assertEquals(0, registry.timer(hasPermission + ".latency").getCount());
+        assertEquals(0, registry.counter(hasPermission + ".in-flight").getCount());
+    }
+
+    @Test(timeout = 1000)
+    public void backend_failure_is_the_answer() throws Exception {
+        Config.setChannelLatency(LatencyModels.withFailures(LatencyModels.fixed(10), 1.0));
+
+        try {
+            canWatch("chbatey", "SPORTS", "SkySportsOne").get();
+            fail("Expected the check to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BackendException);
+        }
+    }
+
+    private CompletableFuture<Boolean> canWatch(String userName, String permission, String channel) {
+        CompletableFuture<Boolean> answer = new CompletableFuture<>();
+        checker.canWatch(userName, permission, channel, (result, error) -> {
+            if (error != null) {
+                answer.completeExceptionally(error);
+            } else {
+                answer.complete(result);
+            }
+        });
+        return answer;
+    }
+}
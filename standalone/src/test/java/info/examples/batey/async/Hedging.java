@@ -0,0 +1,139 @@
+package info.examples.batey.async;
+
+import info.examples.batey.async.hedging.Hedger;
+import info.examples.batey.async.hedging.HedgingPolicy;
+import info.examples.batey.async.hedging.LatencyHistogram;
+import info.examples.batey.async.scheduling.Scheduler;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+public class Hedging {
+
+    private Scheduler scheduler = Scheduler.shared();
+
+    private PendingCalls<String> attempts = new PendingCalls<>();
+    private Function<String, CompletableFuture<String>> lookup = key -> attempts.call();
+
+    // Every request pays for a hedge, after 50ms
+    private HedgingPolicy alwaysHedge = new HedgingPolicy(0.95, 1.0, 50, TimeUnit.MILLISECONDS, 100);
+
+    @Test(timeout = 1000)
+    public void slow_lookups_are_hedged_and_first_answer_wins() throws Exception {
+        Hedger<String, String> hedger = new Hedger<>(lookup, alwaysHedge, scheduler);
+
+        CompletableFuture<String> result = hedger.get("SkySportsOne");
+        waitForAttempts(2);
+        attempts.get(1).complete("from the hedge");
+
+        assertEquals("from the hedge", result.get());
+        assertTrue("Loser is cancelled", attempts.get(0).isCancelled());
+        assertEquals(1, hedger.hedgesSent());
+    }
+
+    @Test(timeout = 1000)
+    public void fast_lookups_are_not_hedged() throws Exception {
+        Hedger<String, String> hedger = new Hedger<>(key -> CompletableFuture.completedFuture(key), alwaysHedge, scheduler);
+
+        assertEquals("SkySportsOne", hedger.get("SkySportsOne").get());
+        Thread.sleep(100);
+
+        assertEquals(0, hedger.hedgesSent());
+    }
+
+    @Test(timeout = 1000)
+    public void extra_load_is_capped() throws Exception {
+        HedgingPolicy noBudget = new HedgingPolicy(0.95, 0.0, 10, TimeUnit.MILLISECONDS, 100);
+        Hedger<String, String> hedger = new Hedger<>(lookup, noBudget, scheduler);
+
+        hedger.get("SkySportsOne");
+        Thread.sleep(100);
+
+        assertEquals(0, hedger.hedgesSent());
+        assertEquals(1, attempts.size());
+    }
+
+    @Test(timeout = 1000)
+    public void failure_of_only_attempt_fails_lookup() throws Exception {
+        Hedger<String, String> hedger = new Hedger<>(lookup, alwaysHedge, scheduler);
+
+        CompletableFuture<String> result = hedger.get("SkySportsOne");
+        attempts.get(0).completeExceptionally(new RuntimeException("Channel service down"));
+
+        try {
+            result.get();
+            fail("Expected lookup to fail");
+        } catch (ExecutionException e) {
+            assertEquals("Channel service down", e.getCause().getMessage());
+        }
+    }
+
+    @Test(timeout = 1000)
+    public void failed_attempt_waits_for_other_attempt() throws Exception {
+        Hedger<String, String> hedger = new Hedger<>(lookup, alwaysHedge, scheduler);
+
+        CompletableFuture<String> result = hedger.get("SkySportsOne");
+        waitForAttempts(2);
+        attempts.get(0).completeExceptionally(new RuntimeException("Channel service down"));
+        assertFalse(result.isDone());
+        attempts.get(1).complete("from the hedge");
+
+        assertEquals("from the hedge", result.get());
+    }
+
+    @Test
+    public void hedge_delay_adapts_to_observed_latency() throws Exception {
+        HedgingPolicy policy = new HedgingPolicy(0.9, 0.05, 1, TimeUnit.SECONDS, 10);
+        Hedger<String, String> hedger = new Hedger<>(key -> CompletableFuture.completedFuture(key), policy, scheduler);
+
+        assertEquals("Initial delay until we have samples", 1000, hedger.hedgeDelay(TimeUnit.MILLISECONDS));
+        for (int i = 0; i < 10; i++) {
+            hedger.get("SkyOne").get();
+        }
+
+        assertTrue(hedger.hedgeDelay(TimeUnit.MILLISECONDS) < 1000);
+    }
+
+    @Test(timeout = 1000)
+    public void first_attempts_that_lose_still_count_towards_hedge_delay() throws Exception {
+        HedgingPolicy policy = new HedgingPolicy(0.5, 1.0, 50, TimeUnit.MILLISECONDS, 1);
+        Hedger<String, String> hedger = new Hedger<>(lookup, policy, scheduler);
+
+        CompletableFuture<String> result = hedger.get("SkySportsOne");
+        waitForAttempts(2);
+        attempts.get(1).complete("from the hedge");
+        result.get();
+
+        assertTrue("Slow first attempt is a sample, not just the fast hedge",
+                hedger.hedgeDelay(TimeUnit.MILLISECONDS) >= 50);
+    }
+
+    @Test
+    public void histogram_percentiles() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i, TimeUnit.MILLISECONDS);
+        }
+
+        assertEquals(100, histogram.count());
+        assertWithin(50, histogram.percentile(0.5, TimeUnit.MILLISECONDS));
+        assertWithin(95, histogram.percentile(0.95, TimeUnit.MILLISECONDS));
+        assertWithin(100, histogram.percentile(1.0, TimeUnit.MILLISECONDS));
+    }
+
+    private void assertWithin(long expected, long actual) {
+        assertTrue("Expected about " + expected + " but was " + actual,
+                actual >= expected && actual <= expected * 1.07);
+    }
+
+    private void waitForAttempts(int count) throws InterruptedException {
+        while (attempts.size() < count) {
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package info.examples.batey.async;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import info.examples.batey.async.latency.LatencyModels;
+import info.examples.batey.async.metrics.CallMetrics;
+import info.examples.batey.async.metrics.LatencyReservoir;
+import info.examples.batey.async.scheduling.Scheduler;
+import info.examples.batey.async.thirdparty.*;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class Instrumentation {
+
+    private static final String LOOKUP_USER_COMPLETABLE = MetricRegistry.name(UserService.class, "lookupUserCompletable");
+
+    private MetricRegistry registry = new MetricRegistry();
+    private UserService users = UserService.userService(Scheduler.shared()).instrumented(registry);
+
+    @After
+    public void resetLatency() {
+        Config.resetLatency();
+    }
+
+    @Test(timeout = 2000)
+    public void completable_lookups_are_timed() throws Exception {
+        CompletableFuture<User> cUser = users.lookupUserCompletable("chbatey");
+        assertEquals(1, registry.counter(LOOKUP_USER_COMPLETABLE + ".in-flight").getCount());
+
+        cUser.get();
+
+        Timer latency = registry.timer(LOOKUP_USER_COMPLETABLE + ".latency");
+        waitForCount(latency, 1);
+        assertTrue(latency.getSnapshot().getMax() >= TimeUnit.MILLISECONDS.toNanos(Config.DELAY));
+        assertEquals(0, registry.counter(LOOKUP_USER_COMPLETABLE + ".in-flight").getCount());
+        assertEquals(0, registry.meter(LOOKUP_USER_COMPLETABLE + ".errors").getCount());
+    }
+
+    @Test(timeout = 2000)
+    public void failures_are_counted() throws Exception {
+        Config.setUserLatency(LatencyModels.withFailures(LatencyModels.fixed(10), 1.0));
+
+        try {
+            users.lookupUser("chbatey");
+            fail("Expected the lookup to fail");
+        } catch (BackendException e) {
+            // expected
+        }
+
+        String lookupUser = MetricRegistry.name(UserService.class, "lookupUser");
+        assertEquals(1, registry.meter(lookupUser + ".errors").getCount());
+        assertEquals(0, registry.counter(lookupUser + ".in-flight").getCount());
+    }
+
+    @Test(timeout = 2000)
+    public void cancelled_lookups_leave_in_flight_without_an_error() throws Exception {
+        users.lookupUserCompletable("chbatey").cancel(false);
+
+        assertEquals(0, registry.counter(LOOKUP_USER_COMPLETABLE + ".in-flight").getCount());
+        assertEquals(0, registry.meter(LOOKUP_USER_COMPLETABLE + ".errors").getCount());
+        assertEquals(0, registry.timer(LOOKUP_USER_COMPLETABLE + ".latency").getCount());
+    }
+
+    @Test(timeout = 2000)
+    public void cancelling_a_listenable_lookup_cancels_it() throws Exception {
+        String lookupUserListenable = MetricRegistry.name(UserService.class, "lookupUserListenable");
+
+        users.lookupUserListenable("chbatey").cancel(false);
+
+        assertEquals(0, registry.counter(lookupUserListenable + ".in-flight").getCount());
+        assertEquals(0, registry.timer(lookupUserListenable + ".latency").getCount());
+    }
+
+    @Test(timeout = 3000)
+    public void instances_of_the_same_service_share_metrics() throws Exception {
+        UserService other = UserService.userService(Scheduler.shared()).instrumented(registry);
+
+        users.lookupUserCompletable("chbatey").get();
+        other.lookupUserCompletable("trevor").get();
+
+        waitForCount(registry.timer(LOOKUP_USER_COMPLETABLE + ".latency"), 2);
+    }
+
+    @Test(timeout = 3000)
+    public void prefixed_instances_keep_their_own_metrics() throws Exception {
+        UserService sync = UserService.userService(Scheduler.shared()).instrumented(registry, "sync");
+        UserService async = UserService.userService(Scheduler.shared()).instrumented(registry, "async");
+
+        sync.lookupUserCompletable("chbatey").get();
+        async.lookupUserCompletable("trevor").get();
+        async.lookupUserCompletable("chbatey").get();
+
+        waitForCount(registry.timer("sync." + LOOKUP_USER_COMPLETABLE + ".latency"), 1);
+        waitForCount(registry.timer("async." + LOOKUP_USER_COMPLETABLE + ".latency"), 2);
+        assertEquals(1, registry.timer("sync." + LOOKUP_USER_COMPLETABLE + ".latency").getCount());
+        assertEquals(0, registry.timer(LOOKUP_USER_COMPLETABLE + ".latency").getCount());
+    }
+
+    @Test
+    public void disabled_metrics_do_nothing() throws Exception {
+        CallMetrics disabled = CallMetrics.callMetrics(null, UserService.class, "lookupUser");
+
+        assertFalse(disabled.isEnabled());
+        assertNull(disabled.listener());
+        disabled.failure(disabled.start());
+    }
+
+    @Test
+    public void reservoir_percentiles() throws Exception {
+        LatencyReservoir reservoir = new LatencyReservoir();
+        for (int i = 1; i <= 100; i++) {
+            reservoir.update(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(100, snapshot.size());
+        assertWithin(TimeUnit.MILLISECONDS.toNanos(50), (long) snapshot.getMedian());
+        assertWithin(TimeUnit.MILLISECONDS.toNanos(99), (long) snapshot.get99thPercentile());
+        assertWithin(TimeUnit.MILLISECONDS.toNanos(1), snapshot.getMin());
+        assertWithin(TimeUnit.MILLISECONDS.toNanos(100), snapshot.getMax());
+        assertEquals(100, snapshot.getValues().length);
+    }
+
+    @Test
+    public void reservoir_forgets_old_windows() throws Exception {
+        LatencyReservoir reservoir = new LatencyReservoir(50, TimeUnit.MILLISECONDS);
+        reservoir.update(TimeUnit.SECONDS.toNanos(1));
+
+        Thread.sleep(120);
+        reservoir.update(TimeUnit.MILLISECONDS.toNanos(1));
+
+        assertEquals(1, reservoir.size());
+        assertWithin(TimeUnit.MILLISECONDS.toNanos(1), reservoir.getSnapshot().getMax());
+    }
+
+    // Metrics are recorded just after the future completes
+    private void waitForCount(Timer timer, long count) throws InterruptedException {
+        while (timer.getCount() < count) {
+            Thread.sleep(5);
+        }
+    }
+
+    private void assertWithin(long expected, long actual) {
+        assertTrue("Expected about " + expected + " but was " + actual,
+                actual >= expected && actual <= expected * 1.07);
+    }
+}
@@ -0,0 +1,142 @@
+package info.examples.batey.async;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import info.examples.batey.async.metrics.InstrumentedExecutorService;
+import info.examples.batey.async.scheduling.Scheduler;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class InstrumentedExecutors {
+
+    private MetricRegistry registry = new MetricRegistry();
+    private ExecutorService pool = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1));
+    private InstrumentedExecutorService executor = InstrumentedExecutorService.instrument(pool, registry, "fan-out");
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test(timeout = 1000)
+    public void counts_queued_and_active_tasks() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        executor.execute(() -> {
+            running.countDown();
+            await(release);
+        });
+        Future<?> waiting = executor.submit(() -> { });
+        running.await();
+
+        assertEquals(1, executor.active());
+        assertEquals(1, executor.queued());
+        assertEquals(1, registry.getGauges().get("fan-out.queued").getValue());
+        release.countDown();
+        waiting.get();
+
+        assertEquals(0, executor.queued());
+        assertEquals(1, registry.getGauges().get("fan-out.pool-size").getValue());
+    }
+
+    @Test(timeout = 1000)
+    public void times_wait_and_run_separately() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> await(release));
+        Future<?> waiting = executor.submit(() -> { });
+        Thread.sleep(100);
+        release.countDown();
+        waiting.get();
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+
+        assertEquals(2, registry.timer("fan-out.wait").getCount());
+        assertEquals(2, registry.timer("fan-out.run").getCount());
+        assertTrue("Second task waited for the first",
+                registry.timer("fan-out.wait").getSnapshot().getMax() >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test(timeout = 1000)
+    public void counts_rejections() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        executor.execute(() -> {
+            running.countDown();
+            await(release);
+        });
+        executor.execute(() -> { });
+        running.await();
+
+        try {
+            executor.execute(() -> { });
+            fail("Expected the pool to be full");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        assertEquals(1, registry.meter("fan-out.rejected").getCount());
+        assertEquals(1, executor.queued());
+        release.countDown();
+    }
+
+    @Test(timeout = 1000)
+    public void scheduler_reports_pending_tasks() throws Exception {
+        try (Scheduler scheduler = new Scheduler("services", 1, TimeUnit.MILLISECONDS, 512, 1, registry)) {
+            CompletableFuture<Void> later = scheduler.schedule(() -> { }, 1, TimeUnit.HOURS);
+            assertEquals(1, scheduler.pending());
+            later.cancel(false);
+            assertEquals(0, scheduler.pending());
+
+            scheduler.schedule(() -> "SkyOne", 1, TimeUnit.MILLISECONDS).get();
+            assertEquals(0, scheduler.pending());
+            assertTrue(registry.getTimers().containsKey("services.scheduler.event-loop.run"));
+        }
+    }
+
+    @Test(timeout = 1000)
+    public void shutdown_now_hands_back_the_tasks_as_submitted() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        executor.execute(() -> {
+            running.countDown();
+            await(release);
+        });
+        Runnable neverRuns = () -> { };
+        executor.execute(neverRuns);
+        running.await();
+
+        List<Runnable> neverRan = executor.shutdownNow();
+
+        assertEquals(Collections.singletonList(neverRuns), neverRan);
+        assertEquals(0, executor.queued());
+    }
+
+    @Test(timeout = 1000)
+    public void scheduler_times_its_own_tasks() throws Exception {
+        try (Scheduler scheduler = new Scheduler("services", 1, TimeUnit.MILLISECONDS, 512, 1, registry)) {
+            scheduler.schedule(() -> "SkyOne", 1, TimeUnit.MILLISECONDS).get();
+            CompletableFuture.runAsync(() -> { }, scheduler.executor()).get();
+
+            Timer run = registry.timer("services.scheduler.event-loop.run");
+            while (run.getCount() < 2) {
+                Thread.sleep(5);
+            }
+            assertEquals(2, registry.timer("services.scheduler.event-loop.wait").getCount());
+            assertEquals(0, registry.getGauges().get("services.scheduler.event-loop.queued").getValue());
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package info.examples.batey.async;
+
+import info.examples.batey.async.latency.LatencyModel;
+import info.examples.batey.async.latency.LatencyModels;
+import info.examples.batey.async.scheduling.Scheduler;
+import info.examples.batey.async.thirdparty.BackendException;
+import info.examples.batey.async.thirdparty.Channel;
+import info.examples.batey.async.thirdparty.ChannelService;
+import info.examples.batey.async.thirdparty.Config;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+public class Latencies {
+
+    private ChannelService channels = ChannelService.channelService(Scheduler.shared());
+
+    @After
+    public void reset() {
+        Config.resetLatency();
+    }
+
+    @Test
+    public void uniform_stays_within_bounds() throws Exception {
+        LatencyModel uniform = LatencyModels.uniform(10, 20);
+
+        for (int i = 0; i < 1000; i++) {
+            long delay = uniform.nextDelayMillis();
+            assertTrue("Out of bounds: " + delay, delay >= 10 && delay <= 20);
+        }
+        assertEquals(15, uniform.expectedMillis());
+        assertEquals(10, uniform.minimumMillis());
+    }
+
+    @Test
+    public void log_normal_has_a_long_tail() throws Exception {
+        LatencyModel logNormal = LatencyModels.logNormal(10, 100);
+
+        long[] delays = new long[10000];
+        for (int i = 0; i < delays.length; i++) {
+            delays[i] = logNormal.nextDelayMillis();
+        }
+        Arrays.sort(delays);
+
+        assertWithin(10, delays[5000], 0.2);
+        assertWithin(100, delays[9900], 0.3);
+        assertTrue("Mean is pulled up by the tail", logNormal.expectedMillis() > 10);
+    }
+
+    @Test
+    public void histogram_replay_only_uses_recorded_buckets() throws Exception {
+        LatencyModel replay = LatencyModels.fromHistogram(new long[]{5, 10, 100}, new long[]{0, 10, 0});
+
+        for (int i = 0; i < 1000; i++) {
+            long delay = replay.nextDelayMillis();
+            assertTrue("Out of bucket: " + delay, delay >= 5 && delay <= 10);
+        }
+    }
+
+    @Test
+    public void histogram_replay_skips_empty_buckets_between_recorded_ones() throws Exception {
+        LatencyModel replay = LatencyModels.fromHistogram(new long[]{10, 1000, 2000}, new long[]{5, 0, 5});
+
+        for (int i = 0; i < 10_000; i++) {
+            long delay = replay.nextDelayMillis();
+            assertTrue("In the empty bucket: " + delay, delay <= 10 || delay >= 1000);
+        }
+    }
+
+    @Test
+    public void histogram_minimum_is_the_first_recorded_bucket() throws Exception {
+        LatencyModel replay = LatencyModels.fromHistogram(new long[]{10, 20, 30}, new long[]{0, 0, 5});
+
+        assertEquals(20, replay.minimumMillis());
+        assertEquals(20, LatencyModels.withStalls(replay, 0.1, 100).minimumMillis());
+    }
+
+    @Test
+    public void stalls_add_to_the_delay() throws Exception {
+        LatencyModel stalling = LatencyModels.withStalls(LatencyModels.fixed(1), 1.0, 100);
+
+        assertEquals(101, stalling.nextDelayMillis());
+        assertEquals("Stalls are the exception so don't change expectations", 1, stalling.expectedMillis());
+    }
+
+    @Test(timeout = 1000)
+    public void latency_can_be_changed_at_runtime() throws Exception {
+        Config.setChannelLatency(LatencyModels.fixed(0));
+
+        long start = System.nanoTime();
+        assertEquals(new Channel("SkyOne"), channels.lookupChannelCompletable("SkyOne").get());
+
+        assertTrue((System.nanoTime() - start) < 400_000_000L);
+    }
+
+    @Test(timeout = 1000)
+    public void injected_failures_fail_the_lookup() throws Exception {
+        Config.setChannelLatency(LatencyModels.withFailures(LatencyModels.fixed(1), 1.0));
+
+        try {
+            channels.lookupChannelCompletable("SkyOne").get();
+            fail("Expected the lookup to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BackendException);
+        }
+        try {
+            channels.lookupChannelListenable("SkyOne").get();
+            fail("Expected the lookup to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BackendException);
+        }
+    }
+
+    private void assertWithin(long expected, long actual, double tolerance) {
+        assertTrue("Expected about " + expected + " but was " + actual,
+                Math.abs(actual - expected) <= expected * tolerance);
+    }
+}
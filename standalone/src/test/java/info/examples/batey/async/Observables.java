@@ -1,14 +1,28 @@
 package info.examples.batey.async;
 
-import info.examples.batey.async.thirdparty.Channel;
-import info.examples.batey.async.thirdparty.Permissions;
-import info.examples.batey.async.thirdparty.User;
+import info.examples.batey.async.thirdparty.*;
+import org.junit.Before;
 import org.junit.Test;
+import rx.Observable;
+
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 public class Observables {
+
+    private UserService users = UserService.userService();
+    private ChannelService channels = ChannelService.channelService();
+    private PermissionsService permissions = PermissionsService.permissionsService();
+
+    private Result result;
+
+    @Before
+    public void setup() {
+        result = null;
+    }
+
       /**
      * Scenario:
      * A web request comes in asking if chbatey has the SPORTS permission
@@ -19,7 +33,11 @@ public class Observables {
      */
     @Test
     public void chbatey_has_sports() throws Exception {
-        boolean hasSportsPermission = false;
+        Observable<Permissions> oPermissions = users.lookupUserObservable("chbatey")
+                .flatMap(user -> permissions.permissionsObservable(user.getUserId()));
+
+        // Block only at the end, the test needs an answer
+        boolean hasSportsPermission = oPermissions.toBlocking().single().hasPermission("SPORTS");
 
         assertTrue(hasSportsPermission);
     }
@@ -34,7 +52,11 @@ public class Observables {
      */
     @Test
     public void chbatey_has_sports_callbcaks_or_transforms() throws Exception {
-        boolean hasSportsPermission = false;
+        Observable<Boolean> oHasSports = users.lookupUserObservable("chbatey")
+                .flatMap(user -> permissions.permissionsObservable(user.getUserId()))
+                .map(p -> p.hasPermission("SPORTS"));
+
+        boolean hasSportsPermission = oHasSports.toBlocking().single();
 
         assertTrue(hasSportsPermission);
     }
@@ -48,14 +70,19 @@ public class Observables {
      * - Is chbatey a valid user?
      * - Does chbatey have the permissions to watch Sports?
      */
-    @Test
+    @Test(timeout = 1200)
     public void chbatey_watch_sky_sports_one() throws Exception {
-        User user = null;
-        Channel channel = null;
-        Permissions permissions = null;
+        // cache so zipping and the final assertion share one user lookup
+        Observable<User> oUser = users.lookupUserObservable("chbatey").cache();
+        Observable<Permissions> oPermissions = oUser.flatMap(u -> permissions.permissionsObservable(u.getUserId()));
+        Observable<Channel> oChannel = channels.lookupChannelObservable("SkySportsOne");
+
+        // zip subscribes to both at once so the channel lookup runs alongside
+        result = Observable.zip(oChannel, oPermissions, Result::new).toBlocking().single();
+        User user = oUser.toBlocking().single();
 
-        assertNotNull(channel);
-        assertTrue(permissions.hasPermission("SPORTS"));
+        assertNotNull(result.channel);
+        assertTrue(result.permissions.hasPermission("SPORTS"));
         assertNotNull(user);
     }
 
@@ -66,13 +93,19 @@ public class Observables {
      */
     @Test
     public void chbatey_watch_sky_sports_one_timeout() throws Exception {
-        User user = null;
-        Channel channel = null;
-        Permissions permissions = null;
+        Observable<User> oUser = users.lookupUserObservable("chbatey").cache();
+        Observable<Permissions> oPermissions = oUser.flatMap(u -> permissions.permissionsObservable(u.getUserId()));
+        Observable<Channel> oChannel = channels.lookupChannelObservable("SkySportsOne");
 
+        // As with the CompletableFuture version the timeout is generous so the
+        // test passes. Timing out unsubscribes which cancels outstanding lookups.
+        result = Observable.zip(oChannel, oPermissions, Result::new)
+                .timeout(3000, TimeUnit.MILLISECONDS)
+                .toBlocking().single();
+        User user = oUser.toBlocking().single();
 
-        assertNotNull(channel);
-        assertTrue(permissions.hasPermission("SPORTS"));
+        assertNotNull(result.channel);
+        assertTrue(result.permissions.hasPermission("SPORTS"));
         assertNotNull(user);
 
     }
@@ -1,4 +1,138 @@
 package info.examples.batey.async;
 
+import info.examples.batey.async.latency.LatencyModel;
+import info.examples.batey.async.latency.LatencyModels;
+import info.examples.batey.async.rx.RxFutures;
+import info.examples.batey.async.thirdparty.Channel;
+import info.examples.batey.async.thirdparty.ChannelService;
+import info.examples.batey.async.thirdparty.Config;
+import info.examples.batey.async.thirdparty.PermissionsService;
+import info.examples.batey.async.thirdparty.UserService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import rx.Observable;
+import rx.Subscription;
+import rx.observers.TestSubscriber;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
 public class Observables101 {
+
+    private ChannelService channels = ChannelService.channelService();
+    private UserService users = UserService.userService();
+    private PermissionsService permissions = PermissionsService.permissionsService();
+
+    private AtomicInteger lookups = new AtomicInteger();
+
+    @Before
+    public void fastLookups() {
+        Config.setLatency(LatencyModels.fixed(10));
+    }
+
+    @After
+    public void reset() {
+        Config.resetLatency();
+    }
+
+    @Test
+    public void nothing_happens_until_subscribe() throws Exception {
+        Observable<String> lookup = RxFutures.observable(this::neverCompletes);
+
+        assertEquals(0, lookups.get());
+        lookup.subscribe();
+        lookup.subscribe();
+
+        assertEquals("Each subscription does its own lookup", 2, lookups.get());
+    }
+
+    @Test
+    public void unsubscribing_cancels_the_lookup() throws Exception {
+        CompletableFuture<String> lookup = new CompletableFuture<>();
+
+        Subscription subscription = RxFutures.observable(() -> lookup).subscribe();
+        subscription.unsubscribe();
+
+        assertTrue(lookup.isCancelled());
+    }
+
+    @Test(timeout = 1000)
+    public void bulk_lookups_keep_order() throws Exception {
+        List<Channel> found = channels.lookupChannelsObservable(Observable.just("SkyOne", "Dave", "SkySportsOne"), 2)
+                .toList()
+                .toBlocking().single();
+
+        assertEquals(Arrays.asList(new Channel("SkyOne"), null, new Channel("SkySportsOne")), found);
+    }
+
+    @Test(timeout = 2000)
+    public void slow_subscribers_hold_back_user_lookups() throws Exception {
+        assertDemandLimitsLookups(ids -> users.lookupUsersObservable(ids.map(i -> "chbatey"), 4));
+    }
+
+    @Test(timeout = 2000)
+    public void slow_subscribers_hold_back_permissions_lookups() throws Exception {
+        assertDemandLimitsLookups(ids -> permissions.permissionsObservable(ids, 4));
+    }
+
+    @Test(timeout = 2000)
+    public void slow_subscribers_hold_back_channel_lookups() throws Exception {
+        assertDemandLimitsLookups(ids -> channels.lookupChannelsObservable(ids.map(i -> "SkyOne"), 4));
+    }
+
+    /**
+     * Lookups complete, but with nothing requested no more than
+     * maxConcurrent, 4, start until the subscriber asks for more.
+     */
+    private void assertDemandLimitsLookups(Function<Observable<Integer>, Observable<?>> bulkLookup) throws Exception {
+        Config.setLatency(countingLookups());
+        TestSubscriber<Object> subscriber = new TestSubscriber<>(0);
+
+        bulkLookup.apply(Observable.range(1, 100)).subscribe(subscriber);
+        awaitLookups(4);
+        Thread.sleep(100);
+
+        assertEquals("Only maxConcurrent lookups started", 4, lookups.get());
+        subscriber.assertNoValues();
+
+        subscriber.requestMore(2);
+        awaitLookups(6);
+        Thread.sleep(100);
+
+        assertEquals("One more lookup per result taken", 6, lookups.get());
+        subscriber.assertValueCount(2);
+        subscriber.unsubscribe();
+    }
+
+    private LatencyModel countingLookups() {
+        return new LatencyModel() {
+            @Override
+            public long nextDelayMillis() {
+                lookups.incrementAndGet();
+                return 10;
+            }
+
+            @Override
+            public long expectedMillis() {
+                return 10;
+            }
+        };
+    }
+
+    private void awaitLookups(int started) throws InterruptedException {
+        while (lookups.get() < started) {
+            Thread.sleep(5);
+        }
+    }
+
+    private CompletableFuture<String> neverCompletes() {
+        lookups.incrementAndGet();
+        return new CompletableFuture<>();
+    }
 }
@@ -0,0 +1,150 @@
+package info.examples.batey.async;
+
+import info.examples.batey.async.latency.LatencyModels;
+import info.examples.batey.async.scheduling.Scheduler;
+import info.examples.batey.async.store.IntBitsetTable;
+import info.examples.batey.async.thirdparty.*;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class OffHeapTables {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void reset() {
+        Config.resetLatency();
+    }
+
+    @Test
+    public void put_and_get() throws Exception {
+        IntBitsetTable table = IntBitsetTable.allocate(10, 2);
+
+        table.put(1, new long[]{0b101, 1});
+        table.put(-7, new long[]{0b10});
+
+        assertArrayEquals(new long[]{0b101, 1}, table.get(1));
+        assertTrue(table.hasBit(1, 0));
+        assertFalse(table.hasBit(1, 1));
+        assertTrue(table.hasBit(1, 64));
+        assertTrue(table.hasBit(-7, 1));
+        assertNull(table.get(2));
+        assertFalse(table.hasBit(2, 0));
+        assertEquals(2, table.size());
+    }
+
+    @Test
+    public void many_keys_with_collisions() throws Exception {
+        IntBitsetTable table = IntBitsetTable.allocate(100_000, 1);
+
+        for (int userId = 0; userId < 100_000; userId++) {
+            table.put(userId * 1024, new long[]{userId});
+        }
+
+        assertEquals(100_000, table.size());
+        for (int userId = 0; userId < 100_000; userId++) {
+            assertEquals(userId, table.get(userId * 1024)[0]);
+        }
+        assertFalse(table.containsKey(1));
+    }
+
+    @Test
+    public void replacing_does_not_grow() throws Exception {
+        IntBitsetTable table = IntBitsetTable.allocate(1, 1);
+
+        table.put(1, new long[]{1});
+        table.put(1, new long[]{2});
+
+        assertEquals(1, table.size());
+        assertArrayEquals(new long[]{2}, table.get(1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void full_tables_reject_new_keys() throws Exception {
+        IntBitsetTable table = IntBitsetTable.allocate(1, 1);
+
+        for (int userId = 0; userId < 10; userId++) {
+            table.put(userId, new long[]{1});
+        }
+    }
+
+    @Test
+    public void snapshot_round_trip() throws Exception {
+        Map<Integer, Permissions> permissions = new HashMap<>();
+        for (int userId = 1; userId <= 1000; userId++) {
+            permissions.put(userId, userId % 2 == 0 ? Permissions.permissions("SPORTS") : Permissions.permissions("ENTS"));
+        }
+        Path file = folder.getRoot().toPath().resolve("permissions.snapshot");
+
+        PermissionsSnapshot.write(file, PermissionsSnapshot.toTable(permissions));
+        IntBitsetTable loaded = PermissionsSnapshot.load(file);
+
+        assertEquals(1000, loaded.size());
+        assertEquals(Permissions.permissions("SPORTS"), Permissions.fromBits(loaded.get(2)));
+        assertEquals(Permissions.permissions("ENTS"), Permissions.fromBits(loaded.get(3)));
+    }
+
+    @Test
+    public void snapshot_table_starts_8_byte_aligned() throws Exception {
+        Map<Integer, Permissions> permissions = new HashMap<>();
+        permissions.put(1, Permissions.permissions("SPORTS"));
+        Path file = folder.getRoot().toPath().resolve("permissions.snapshot");
+
+        // Each name grows the header by a different amount, so they can't all land on a boundary by luck
+        for (String name : new String[]{"A", "BB", "CCC"}) {
+            Permissions.permissions(name);
+            IntBitsetTable table = PermissionsSnapshot.toTable(permissions);
+            PermissionsSnapshot.write(file, table);
+
+            long headerBytes = Files.size(file) - table.asReadOnlyBuffer().remaining();
+            assertEquals(0, headerBytes % Long.BYTES);
+            assertEquals(Permissions.permissions("SPORTS"), Permissions.fromBits(PermissionsSnapshot.load(file).get(1)));
+        }
+    }
+
+    @Test(timeout = 1000)
+    public void service_from_snapshot() throws Exception {
+        Config.setPermissionLatency(LatencyModels.fixed(0));
+        Map<Integer, Permissions> permissions = new HashMap<>();
+        permissions.put(42, Permissions.permissions("SPORTS", "ENTS"));
+        Path file = folder.getRoot().toPath().resolve("permissions.snapshot");
+        PermissionsSnapshot.write(file, PermissionsSnapshot.toTable(permissions));
+
+        PermissionsService service = PermissionsService.permissionsService(file, Scheduler.shared());
+
+        assertEquals(Permissions.permissions("SPORTS", "ENTS"), service.permissionsCompletable(42).get());
+        assertNull(service.permissions(43));
+        assertTrue(service.hasPermission(42, PermissionDictionary.ordinal("SPORTS")));
+        assertFalse(service.hasPermission(43, PermissionDictionary.ordinal("SPORTS")));
+    }
+
+    @Test(timeout = 1000)
+    public void users_with_the_same_permissions_share_one_instance() throws Exception {
+        Config.setPermissionLatency(LatencyModels.fixed(0));
+        Map<Integer, Permissions> permissions = new HashMap<>();
+        for (int userId = 1; userId <= 1000; userId++) {
+            permissions.put(userId, userId % 2 == 0 ? Permissions.permissions("SPORTS") : Permissions.permissions("SPORTS", "ENTS"));
+        }
+        IntBitsetTable table = PermissionsSnapshot.toTable(permissions);
+        PermissionsService service = PermissionsService.permissionsService(() -> table, Scheduler.shared());
+
+        Permissions sports = service.permissions(2);
+
+        assertEquals(Permissions.permissions("SPORTS"), sports);
+        assertSame("Decoded once, not per lookup", sports, service.permissions(4));
+        assertSame(sports, service.permissions(1000));
+        assertEquals(Permissions.permissions("SPORTS", "ENTS"), service.permissions(1));
+        assertSame(service.permissions(1), service.permissions(999));
+        assertNotSame(sports, service.permissions(1));
+    }
+}
@@ -0,0 +1,32 @@
+package info.examples.batey.async;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Calls to a backend that only complete when the test says so, in the
+ * order they were made.
+ */
+class PendingCalls<T> {
+
+    private final List<CompletableFuture<T>> calls = new CopyOnWriteArrayList<>();
+
+    CompletableFuture<T> call() {
+        CompletableFuture<T> call = new CompletableFuture<>();
+        calls.add(call);
+        return call;
+    }
+
+    CompletableFuture<T> get(int index) {
+        return calls.get(index);
+    }
+
+    CompletableFuture<T> last() {
+        return calls.get(calls.size() - 1);
+    }
+
+    int size() {
+        return calls.size();
+    }
+}
@@ -0,0 +1,62 @@
+package info.examples.batey.async;
+
+import info.examples.batey.async.thirdparty.PermissionDictionary;
+import info.examples.batey.async.thirdparty.Permissions;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PermissionBitsets {
+
+    @Test
+    public void checks_by_name_and_ordinal() throws Exception {
+        Permissions permissions = Permissions.permissions("SPORTS", "ENTS");
+        int sports = PermissionDictionary.ordinal("SPORTS");
+
+        assertTrue(permissions.hasPermission("SPORTS"));
+        assertTrue(permissions.hasPermission(sports));
+        assertFalse(permissions.hasPermission("MOVIES"));
+    }
+
+    @Test
+    public void unknown_permissions_are_not_interned() throws Exception {
+        Permissions sports = Permissions.permissions("SPORTS");
+        int size = PermissionDictionary.size();
+
+        assertFalse(sports.hasPermission("NOT_A_REAL_PERMISSION"));
+
+        assertEquals(PermissionDictionary.UNKNOWN, PermissionDictionary.ordinal("NOT_A_REAL_PERMISSION"));
+        assertEquals(size, PermissionDictionary.size());
+    }
+
+    @Test
+    public void equal_regardless_of_order() throws Exception {
+        assertEquals(Permissions.permissions("SPORTS", "ENTS"), Permissions.permissions("ENTS", "SPORTS"));
+        assertEquals(Permissions.permissions("SPORTS", "ENTS").hashCode(), Permissions.permissions("ENTS", "SPORTS").hashCode());
+        assertNotEquals(Permissions.permissions("SPORTS"), Permissions.permissions());
+    }
+
+    @Test
+    public void more_than_sixty_four_permissions() throws Exception {
+        String[] names = new String[130];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "CHANNEL_PACK_" + i;
+        }
+
+        Permissions permissions = Permissions.permissions(names);
+
+        for (String name : names) {
+            assertTrue(name, permissions.hasPermission(name));
+        }
+        assertEquals(permissions, Permissions.fromBits(permissions.toBits()));
+        assertFalse(permissions.hasPermission("SPORTS"));
+    }
+
+    @Test
+    public void trailing_empty_words_do_not_affect_equality() throws Exception {
+        Permissions sports = Permissions.permissions("SPORTS");
+        long[] padded = new long[]{sports.toBits()[0], 0, 0};
+
+        assertEquals(sports, Permissions.fromBits(padded));
+    }
+}
@@ -0,0 +1,95 @@
+package info.examples.batey.async;
+
+import info.examples.batey.async.scheduling.Scheduler;
+import info.examples.batey.async.thirdparty.UserService;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class Scheduling {
+
+    private Scheduler scheduler = new Scheduler("test", 1, TimeUnit.MILLISECONDS, 64, 2);
+
+    @After
+    public void close() {
+        scheduler.close();
+    }
+
+    @Test(timeout = 1000)
+    public void runs_after_delay_on_event_loop() throws Exception {
+        long start = System.nanoTime();
+
+        String thread = scheduler.schedule(() -> Thread.currentThread().getName(), 50, TimeUnit.MILLISECONDS).get();
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 50);
+        assertTrue(thread, thread.startsWith("test-loop-"));
+    }
+
+    @Test(timeout = 1000)
+    public void no_delay_skips_the_wheel() throws Exception {
+        try (Scheduler slowWheel = new Scheduler("slow-wheel", 10, TimeUnit.SECONDS, 64, 1)) {
+            String thread = slowWheel.schedule(() -> Thread.currentThread().getName(), 0, TimeUnit.MILLISECONDS).get();
+
+            assertTrue("Still answered on the event loop", thread.startsWith("slow-wheel-loop-"));
+            assertEquals(0, slowWheel.pending());
+        }
+    }
+
+    @Test(timeout = 1000)
+    public void cancelled_tasks_never_run() throws Exception {
+        AtomicBoolean ran = new AtomicBoolean();
+
+        CompletableFuture<Void> task = scheduler.schedule(() -> ran.set(true), 50, TimeUnit.MILLISECONDS);
+        assertTrue(task.cancel(false));
+        Thread.sleep(100);
+
+        assertFalse(ran.get());
+    }
+
+    @Test(timeout = 1000)
+    public void failures_complete_the_future_exceptionally() throws Exception {
+        CompletableFuture<String> task = scheduler.schedule(() -> {
+            throw new IllegalStateException("Oh dear");
+        }, 1, TimeUnit.MILLISECONDS);
+
+        try {
+            task.join();
+            fail("Expected the task to fail");
+        } catch (Exception e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test(timeout = 1000)
+    public void callers_can_answer_before_the_task_does() throws Exception {
+        AtomicBoolean ran = new AtomicBoolean();
+        CompletableFuture<String> task = scheduler.schedule(() -> {
+            ran.set(true);
+            return "from the task";
+        }, 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(task.complete("fallback"));
+
+        assertEquals("fallback", task.get());
+        assertEquals("Taken off the wheel", 0, scheduler.pending());
+        Thread.sleep(100);
+        assertFalse(ran.get());
+    }
+
+    @Test(timeout = 2000)
+    public void more_services_do_not_mean_more_threads() throws Exception {
+        UserService.userService(scheduler).lookupUserCompletable("chbatey").get();
+        int threads = Thread.activeCount();
+
+        for (int i = 0; i < 50; i++) {
+            UserService.userService(scheduler).lookupUserCompletable("chbatey");
+        }
+
+        assertEquals(threads, Thread.activeCount());
+    }
+}
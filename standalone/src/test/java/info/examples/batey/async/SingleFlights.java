@@ -0,0 +1,105 @@
+package info.examples.batey.async;
+
+import info.examples.batey.async.singleflight.SingleFlight;
+import info.examples.batey.async.singleflight.SingleFlightChannelService;
+import info.examples.batey.async.thirdparty.Channel;
+import info.examples.batey.async.thirdparty.ChannelService;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+public class SingleFlights {
+
+    private AtomicInteger calls = new AtomicInteger();
+    private Map<String, CompletableFuture<String>> backend = new ConcurrentHashMap<>();
+
+    private Function<String, CompletableFuture<String>> lookup = key -> {
+        calls.incrementAndGet();
+        CompletableFuture<String> value = new CompletableFuture<>();
+        backend.put(key, value);
+        return value;
+    };
+
+    @Test
+    public void concurrent_lookups_share_one_call() throws Exception {
+        SingleFlight<String, String> flights = new SingleFlight<>(lookup);
+
+        List<CompletableFuture<String>> lookups = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            lookups.add(flights.get("SkySportsOne"));
+        }
+        backend.get("SkySportsOne").complete("Sky Sports 1");
+
+        for (CompletableFuture<String> channel : lookups) {
+            assertEquals("Sky Sports 1", channel.get());
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void different_keys_are_separate_calls() throws Exception {
+        SingleFlight<String, String> flights = new SingleFlight<>(lookup);
+
+        flights.get("SkySportsOne");
+        flights.get("SkyOne");
+
+        assertEquals(2, calls.get());
+        assertEquals(2, flights.inFlight());
+    }
+
+    @Test
+    public void key_is_forgotten_once_complete() throws Exception {
+        SingleFlight<String, String> flights = new SingleFlight<>(lookup);
+
+        CompletableFuture<String> first = flights.get("SkySportsOne");
+        backend.get("SkySportsOne").complete("Sky Sports 1");
+        first.get();
+        flights.get("SkySportsOne");
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void failures_are_shared_then_forgotten() throws Exception {
+        SingleFlight<String, String> flights = new SingleFlight<>(lookup);
+
+        CompletableFuture<String> first = flights.get("SkySportsOne");
+        CompletableFuture<String> second = flights.get("SkySportsOne");
+        backend.get("SkySportsOne").completeExceptionally(new RuntimeException("Channel service down"));
+
+        assertTrue(first.isCompletedExceptionally());
+        assertTrue(second.isCompletedExceptionally());
+        assertEquals(0, flights.inFlight());
+    }
+
+    @Test
+    public void one_caller_cancelling_does_not_affect_others() throws Exception {
+        SingleFlight<String, String> flights = new SingleFlight<>(lookup);
+
+        CompletableFuture<String> impatient = flights.get("SkySportsOne");
+        CompletableFuture<String> patient = flights.get("SkySportsOne");
+        impatient.cancel(false);
+        backend.get("SkySportsOne").complete("Sky Sports 1");
+
+        assertEquals("Sky Sports 1", patient.get());
+    }
+
+    @Test(timeout = 1200)
+    public void single_flight_channel_service() throws Exception {
+        SingleFlightChannelService channels = SingleFlightChannelService.singleFlightChannelService(ChannelService.channelService());
+
+        CompletableFuture<Channel> first = channels.lookupChannelCompletable("SkySportsOne");
+        CompletableFuture<Channel> second = channels.lookupChannelCompletable("SkySportsOne");
+
+        assertEquals(new Channel("SkySportsOne"), first.get());
+        assertEquals(new Channel("SkySportsOne"), second.get());
+    }
+}
@@ -0,0 +1,131 @@
+package info.examples.batey.async;
+
+import com.google.common.collect.ImmutableMap;
+import info.examples.batey.async.latency.LatencyModels;
+import info.examples.batey.async.scheduling.Scheduler;
+import info.examples.batey.async.snapshot.CatalogueWriter;
+import info.examples.batey.async.snapshot.Codec;
+import info.examples.batey.async.snapshot.MappedCatalogue;
+import info.examples.batey.async.thirdparty.*;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class Snapshots {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void reset() {
+        Config.resetLatency();
+    }
+
+    @Test
+    public void catalogue_round_trip_across_chunks() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("names.catalogue");
+        // Small chunks so records have to be padded to chunk boundaries
+        try (CatalogueWriter<String> writer = new CatalogueWriter<>(file, new StringCodec(), 256)) {
+            for (int i = 0; i < 10_000; i++) {
+                writer.add("user-" + i, "User number " + i);
+            }
+            writer.commit();
+        }
+
+        MappedCatalogue<String> catalogue = MappedCatalogue.open(file, new StringCodec());
+
+        assertEquals(10_000, catalogue.size());
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals("User number " + i, catalogue.get("user-" + i));
+        }
+        assertNull(catalogue.get("user-10000"));
+        assertNull(catalogue.get(""));
+    }
+
+    @Test
+    public void empty_catalogue() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("empty.catalogue");
+        try (CatalogueWriter<String> writer = new CatalogueWriter<>(file, new StringCodec())) {
+            writer.commit();
+        }
+
+        assertNull(MappedCatalogue.open(file, new StringCodec()).get("chbatey"));
+    }
+
+    @Test
+    public void failed_write_leaves_the_old_catalogue_in_place() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        Snapshot.write(directory,
+                ImmutableMap.of("chbatey", new User("Christopher Batey", "chbatey", 1)),
+                ImmutableMap.of(1, Permissions.permissions("ENTS")),
+                ImmutableMap.of("SkyOne", new Channel("SkyOne")));
+
+        try (CatalogueWriter<User> writer = Snapshot.userWriter(directory)) {
+            writer.add("trevor", new User("Trevor Sinclair", "trevor", 2));
+            writer.add("nobody", new User(null, "nobody", 3));
+            writer.commit();
+            fail("Expected a user with no name to fail");
+        } catch (NullPointerException e) {
+            // expected
+        }
+
+        Snapshot snapshot = Snapshot.open(directory);
+        assertEquals(new User("Christopher Batey", "chbatey", 1), snapshot.users().get("chbatey"));
+        assertNull(snapshot.users().get("trevor"));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertFalse("Partial file is thrown away", files.anyMatch(f -> f.toString().endsWith(".tmp")));
+        }
+    }
+
+    @Test(timeout = 1000)
+    public void services_see_a_swapped_snapshot() throws Exception {
+        Config.setLatency(LatencyModels.fixed(0));
+        Path first = folder.newFolder("first").toPath();
+        Path second = folder.newFolder("second").toPath();
+        Snapshot.write(first,
+                ImmutableMap.of("chbatey", new User("Christopher Batey", "chbatey", 1)),
+                ImmutableMap.of(1, Permissions.permissions("ENTS")),
+                ImmutableMap.of("SkyOne", new Channel("SkyOne")));
+        Snapshot.write(second,
+                ImmutableMap.of("chbatey", new User("Christopher Batey", "chbatey", 1)),
+                ImmutableMap.of(1, Permissions.permissions("ENTS", "SPORTS")),
+                ImmutableMap.of("SkySportsOne", new Channel("SkySportsOne")));
+
+        LiveSnapshot live = new LiveSnapshot(Snapshot.open(first));
+        UserService users = live.userService(Scheduler.shared());
+        PermissionsService permissions = live.permissionsService(Scheduler.shared());
+        ChannelService channels = live.channelService(Scheduler.shared());
+
+        assertEquals(new User("Christopher Batey", "chbatey", 1), users.lookupUserCompletable("chbatey").get());
+        assertFalse(permissions.permissionsCompletable(1).get().hasPermission("SPORTS"));
+        assertNull(channels.lookupChannelCompletable("SkySportsOne").get());
+
+        live.swap(Snapshot.open(second));
+
+        assertTrue(permissions.permissionsCompletable(1).get().hasPermission("SPORTS"));
+        assertEquals(new Channel("SkySportsOne"), channels.lookupChannelCompletable("SkySportsOne").get());
+    }
+
+    private static class StringCodec implements Codec<String> {
+        @Override
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(ByteBuffer bytes) {
+            byte[] value = new byte[bytes.remaining()];
+            bytes.get(value);
+            return new String(value, StandardCharsets.UTF_8);
+        }
+    }
+}